@@ -0,0 +1,105 @@
+package com.example.android.wearable.watchface.benchmark;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.android.wearable.watchface.mobvoi.AssetCache;
+import com.example.android.wearable.watchface.mobvoi.AssetPack;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * 对比两种加载全部表盘图片的方式：
+ * <pre>
+ * ./gradlew :Wearable:testDebugUnitTest -Pbenchmark --tests '*AssetLoadingBenchmark'
+ * </pre>
+ * png 为原来的 AssetManager.open + BitmapFactory 逐个解码，
+ * pack 为映射图片包（计入打开和读取索引的耗时）+ copyPixelsFromBuffer。
+ * 每次迭代都重新打开、解码 assets/face 下的全部图片，相当于表盘冷启动时的加载，
+ * 但文件已在系统的页缓存中，不包含读盘的时间
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AssetLoadingBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    public void loadAllFaceImages() throws IOException {
+        Context context = RuntimeEnvironment.getApplication();
+        String[] names = getFaceImageNames(context);
+        if (AssetPack.open(context, AssetPack.DEFAULT_PACK) == null) {
+            System.out.println("No asset pack, skip AssetLoading");
+            return;
+        }
+
+        long[] pngNanos = new long[ITERATIONS];
+        long[] packNanos = new long[ITERATIONS];
+        for (int i = -WARMUP_ITERATIONS; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            for (String name : names) {
+                recycle(decodePng(context, name));
+            }
+            long pngTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            AssetPack pack = AssetPack.open(context, AssetPack.DEFAULT_PACK);
+            for (String name : names) {
+                recycle(pack.decode(name));
+            }
+            long packTime = System.nanoTime() - start;
+
+            if (i >= 0) {
+                pngNanos[i] = pngTime;
+                packNanos[i] = packTime;
+            }
+        }
+
+        String benchmark = "AssetLoading[" + names.length + " images]";
+        BenchmarkReport.printResult(benchmark + ".png", "ss", pngNanos, 1e6, "ms/op");
+        BenchmarkReport.printResult(benchmark + ".pack", "ss", packNanos, 1e6, "ms/op");
+    }
+
+    /**
+     * assets/face 下的 png，不带后缀，与图片包中的名字相同
+     */
+    private static String[] getFaceImageNames(Context context) throws IOException {
+        ArrayList<String> names = new ArrayList<>();
+        String[] files = context.getAssets().list(AssetCache.ASSETS_FACES);
+        if (files != null) {
+            for (String file : files) {
+                if (file.endsWith(AssetCache.PNG_SUFFIX)) {
+                    names.add(file.substring(0, file.length() - AssetCache.PNG_SUFFIX.length()));
+                }
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    private static Bitmap decodePng(Context context, String name) {
+        String path = AssetCache.ASSETS_FACES + "/" + name + AssetCache.PNG_SUFFIX;
+        try (InputStream is = context.getAssets().open(path)) {
+            return BitmapFactory.decodeResourceStream(context.getResources(), null, is,
+                    null, null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void recycle(Bitmap bitmap) {
+        if (bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+}
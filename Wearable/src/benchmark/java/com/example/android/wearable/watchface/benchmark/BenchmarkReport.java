@@ -0,0 +1,90 @@
+package com.example.android.wearable.watchface.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 按 JMH 的列格式输出基准测试结果，方便在不同提交之间 diff，
+ * 另外提供当前线程分配字节数和 GC 次数的计数
+ */
+final class BenchmarkReport {
+    // 正态分布 99.9% 置信区间，与 JMH 的 Error 列一致
+    private static final double Z_999 = 3.291;
+
+    private static boolean sHeaderPrinted;
+
+    private BenchmarkReport() {
+    }
+
+    /**
+     * 输出平均值及误差，再附上 p50/p90/p99 分位数
+     *
+     * @param mode      JMH 的模式，avgt 为多次迭代的平均值，ss 为每次单独计时
+     * @param unitNanos 输出单位对应的纳秒数
+     */
+    static void printResult(String benchmark, String mode, long[] samples, double unitNanos,
+                            String units) {
+        int count = samples.length;
+        double sum = 0;
+        for (long nanos : samples) {
+            sum += nanos;
+        }
+        double mean = sum / count;
+        double variance = 0;
+        for (long nanos : samples) {
+            variance += (nanos - mean) * (nanos - mean);
+        }
+        double error = count > 1 ? Z_999 * Math.sqrt(variance / (count - 1) / count) : 0;
+        printLine(benchmark, mode, count, mean / unitNanos, error / unitNanos, units);
+
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        printLine(benchmark + ":p0.50", mode, count, percentile(sorted, 0.5) / unitNanos, 0,
+                units);
+        printLine(benchmark + ":p0.90", mode, count, percentile(sorted, 0.9) / unitNanos, 0,
+                units);
+        printLine(benchmark + ":p0.99", mode, count, percentile(sorted, 0.99) / unitNanos, 0,
+                units);
+    }
+
+    static synchronized void printLine(String benchmark, String mode, int count, double score,
+                                       double error, String units) {
+        if (!sHeaderPrinted) {
+            sHeaderPrinted = true;
+            System.out.println(String.format(Locale.US, "%-64s %5s %5s %12s   %10s %6s",
+                    "Benchmark", "Mode", "Cnt", "Score", "Error", "Units"));
+        }
+        System.out.println(String.format(Locale.US, "%-64s %5s %5d %12.3f ± %10.3f %6s",
+                benchmark, mode, count, score, error, units));
+    }
+
+    /**
+     * 当前线程累计分配的字节数，HotSpot 之外的虚拟机取不到时返回 0
+     */
+    static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * 所有垃圾回收器的累计回收次数
+     */
+    static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.wearable.watchface.benchmark;
+
+import android.content.Context;
+
+import com.example.android.wearable.watchface.mobvoi.TimeUtil;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Calendar;
+
+/**
+ * 对比 {@link TimeUtil} 中 String.format 和写入 buffer 两种格式化方式：
+ * <pre>
+ * ./gradlew :Wearable:testDebugUnitTest -Pbenchmark --tests '*TimeUtilFormatBenchmark'
+ * </pre>
+ * 每个样本是 {@link #OPS_PER_SAMPLE} 次调用的总耗时，输出每次调用的耗时和分配的字节数。
+ * getMonthEN 需要读取资源，所以在 Robolectric 中运行
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TimeUtilFormatBenchmark {
+    private static final int WARMUP_SAMPLES = 5;
+    private static final int SAMPLES = 20;
+    private static final int OPS_PER_SAMPLE = 1000;
+
+    // 累加格式化结果的长度，避免结果没有被使用
+    private static volatile int sSink;
+
+    private final StringBuilder mBuffer = new StringBuilder(32);
+
+    private interface FormatOp {
+        CharSequence format(int i);
+    }
+
+    @Test
+    public void paddingSingleNumber() {
+        run("paddingSingleNumber.format", i -> TimeUtil.paddingSingleNumber(i % 60));
+        run("paddingSingleNumber.buffer", i -> {
+            mBuffer.setLength(0);
+            return TimeUtil.appendTwoDigits(mBuffer, i % 60);
+        });
+    }
+
+    @Test
+    public void getDistance() {
+        run("getDistance.format", i -> TimeUtil.getDistance(i * 7, i % 2 == 0));
+        run("getDistance.buffer", i -> {
+            mBuffer.setLength(0);
+            return TimeUtil.appendDistance(mBuffer, i * 7, i % 2 == 0, 2);
+        });
+    }
+
+    @Test
+    public void getDistanceOne() {
+        run("getDistanceOne.format", i -> TimeUtil.getDistanceOne(i * 7, i % 2 == 0));
+        run("getDistanceOne.buffer", i -> {
+            mBuffer.setLength(0);
+            return TimeUtil.appendDistance(mBuffer, i * 7, i % 2 == 0, 1);
+        });
+    }
+
+    @Test
+    public void getWeek() {
+        run("getWeek.format", i -> TimeUtil.getWeek(i % 7 + 1, null));
+        run("getWeek.buffer", i -> {
+            mBuffer.setLength(0);
+            return TimeUtil.appendWeek(mBuffer, i % 7 + 1, null);
+        });
+    }
+
+    @Test
+    public void getMonthEN() {
+        Context context = RuntimeEnvironment.getApplication();
+        Calendar calendar = Calendar.getInstance();
+        run("getMonthEN.format", i -> TimeUtil.getMonthEN(calendar, context));
+        run("getMonthEN.buffer", i -> {
+            mBuffer.setLength(0);
+            return TimeUtil.appendMonthEN(mBuffer, calendar, context);
+        });
+    }
+
+    private static void run(String name, FormatOp op) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP_SAMPLES * OPS_PER_SAMPLE; i++) {
+            sink += op.format(i).length();
+        }
+        long[] sampleNanos = new long[SAMPLES];
+        long allocatedBytes = BenchmarkReport.getAllocatedBytes();
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < OPS_PER_SAMPLE; i++) {
+                sink += op.format(i).length();
+            }
+            sampleNanos[sample] = System.nanoTime() - start;
+        }
+        allocatedBytes = BenchmarkReport.getAllocatedBytes() - allocatedBytes;
+        sSink += sink;
+
+        String benchmark = "TimeUtil." + name;
+        // 按每次调用输出纳秒
+        BenchmarkReport.printResult(benchmark, "avgt", sampleNanos, OPS_PER_SAMPLE, "ns/op");
+        BenchmarkReport.printLine(benchmark + ":·gc.alloc.rate.norm", "avgt", SAMPLES,
+                (double) allocatedBytes / (SAMPLES * OPS_PER_SAMPLE), 0, "B/op");
+    }
+}
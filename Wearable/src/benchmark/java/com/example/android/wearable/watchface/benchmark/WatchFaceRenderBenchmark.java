@@ -0,0 +1,129 @@
+package com.example.android.wearable.watchface.benchmark;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.support.wearable.watchface.CanvasWatchFaceService;
+import android.view.SurfaceHolder;
+
+import com.example.android.wearable.watchface.demo.AnimateService;
+import com.example.android.wearable.watchface.demo.NumberWatchFaceService;
+import com.example.android.wearable.watchface.demo.PropertyAnimateService;
+import com.example.android.wearable.watchface.demo.WatchFacePointerService;
+import com.example.android.wearable.watchface.watchface.AnalogComplicationWatchFaceService;
+import com.example.android.wearable.watchface.watchface.DigitalWatchFaceService;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 表盘绘制性能基准，不需要设备：
+ * <pre>
+ * ./gradlew :Wearable:testDebugUnitTest -Pbenchmark --tests '*WatchFaceRenderBenchmark'
+ * </pre>
+ * 在 Robolectric 中创建表盘的 Engine，走一遍 onCreate、onSurfaceChanged、onVisibilityChanged，
+ * 再把 onDraw 绘制到与 surface 同尺寸的离屏画布上。NATIVE 图形模式下画布由桌面版 Skia 真实光栅化，
+ * 先预热再计时，输出每帧耗时、每帧分配的字节数和期间的 GC 次数。
+ * 数值来自 JVM 而不是 ART，只用于同一台机器上不同提交之间的对比
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class WatchFaceRenderBenchmark {
+    // 常见的圆屏分辨率
+    private static final int SURFACE_SIZE = 454;
+    // 等待后台解码图片、加载字体的时间
+    private static final long SETTLE_MS = 2000;
+    private static final int WARMUP_FRAMES = 100;
+    private static final int MEASURE_FRAMES = 500;
+
+    @Test
+    public void digital() throws Exception {
+        run(DigitalWatchFaceService.class);
+    }
+
+    @Test
+    public void analogComplication() throws Exception {
+        run(AnalogComplicationWatchFaceService.class);
+    }
+
+    @Test
+    public void number() throws Exception {
+        run(NumberWatchFaceService.class);
+    }
+
+    @Test
+    public void pointer() throws Exception {
+        run(WatchFacePointerService.class);
+    }
+
+    @Test
+    public void animate() throws Exception {
+        run(AnimateService.class);
+    }
+
+    @Test
+    public void propertyAnimate() throws Exception {
+        run(PropertyAnimateService.class);
+    }
+
+    private static void run(Class<? extends CanvasWatchFaceService> serviceClass)
+            throws InterruptedException {
+        CanvasWatchFaceService service = Robolectric.setupService(serviceClass);
+        CanvasWatchFaceService.Engine engine =
+                (CanvasWatchFaceService.Engine) service.onCreateEngine();
+        SurfaceHolder holder = engine.getSurfaceHolder();
+        engine.onCreate(holder);
+        engine.onSurfaceChanged(holder, PixelFormat.RGBA_8888, SURFACE_SIZE, SURFACE_SIZE);
+        engine.onVisibilityChanged(true);
+        settle();
+
+        Bitmap bitmap = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Rect bounds = new Rect(0, 0, SURFACE_SIZE, SURFACE_SIZE);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            engine.onDraw(canvas, bounds);
+            // 处理绘制期间 post 到主线程的消息，例如解码完成的回调
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+
+        long[] frameNanos = new long[MEASURE_FRAMES];
+        long gcCount = BenchmarkReport.getGcCount();
+        long allocatedBytes = BenchmarkReport.getAllocatedBytes();
+        for (int i = 0; i < MEASURE_FRAMES; i++) {
+            long start = System.nanoTime();
+            engine.onDraw(canvas, bounds);
+            frameNanos[i] = System.nanoTime() - start;
+        }
+        allocatedBytes = BenchmarkReport.getAllocatedBytes() - allocatedBytes;
+        gcCount = BenchmarkReport.getGcCount() - gcCount;
+
+        engine.onVisibilityChanged(false);
+        engine.onDestroy();
+        bitmap.recycle();
+
+        String benchmark = serviceClass.getSimpleName() + ".onDraw@" + SURFACE_SIZE + "x"
+                + SURFACE_SIZE;
+        BenchmarkReport.printResult(benchmark, "avgt", frameNanos, 1e3, "us/op");
+        BenchmarkReport.printLine(benchmark + ":·gc.alloc.rate.norm", "avgt", MEASURE_FRAMES,
+                (double) allocatedBytes / MEASURE_FRAMES, 0, "B/op");
+        BenchmarkReport.printLine(benchmark + ":·gc.count", "avgt", MEASURE_FRAMES, gcCount, 0,
+                "counts");
+    }
+
+    private static void settle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SETTLE_MS;
+        while (System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+    }
+}
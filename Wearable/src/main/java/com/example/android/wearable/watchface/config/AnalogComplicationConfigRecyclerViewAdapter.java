@@ -53,6 +53,7 @@ import com.example.android.wearable.watchface.model.AnalogComplicationConfigData
 import com.example.android.wearable.watchface.model.AnalogComplicationConfigData.MoreOptionsConfigItem;
 import com.example.android.wearable.watchface.model.AnalogComplicationConfigData.PreviewAndComplicationsConfigItem;
 import com.example.android.wearable.watchface.model.AnalogComplicationConfigData.UnreadNotificationConfigItem;
+import com.example.android.wearable.watchface.util.ComplicationLayout;
 import com.example.android.wearable.watchface.watchface.AnalogComplicationWatchFaceService;
 
 import java.util.ArrayList;
@@ -83,9 +84,9 @@ public class AnalogComplicationConfigRecyclerViewAdapter
     private static final String TAG = "CompConfigAdapter";
 
     /**
-     * Used by associated watch face ({@link AnalogComplicationWatchFaceService}) to let this
-     * adapter know which complication locations are supported, their ids, and supported
-     * complication data types.
+     * Location names used by the slots of the associated watch face's {@link ComplicationLayout}
+     * ({@link AnalogComplicationWatchFaceService#getComplicationLayout(Context)}), which holds
+     * their ids and supported complication data types.
      */
     public enum ComplicationLocation {
         BACKGROUND,
@@ -111,6 +112,9 @@ public class AnalogComplicationConfigRecyclerViewAdapter
 
     SharedPreferences mSharedPref;
 
+    // Complication slots of the watch face, shared with AnalogComplicationWatchFaceService.
+    private ComplicationLayout mComplicationLayout;
+
     // Selected complication id by user.
     private int mSelectedComplicationId;
 
@@ -137,14 +141,12 @@ public class AnalogComplicationConfigRecyclerViewAdapter
         // Default value is invalid (only changed when user taps to change complication).
         mSelectedComplicationId = -1;
 
-        mBackgroundComplicationId =
-                AnalogComplicationWatchFaceService.getComplicationId(
-                        ComplicationLocation.BACKGROUND);
+        mComplicationLayout = AnalogComplicationWatchFaceService.getComplicationLayout(context);
+
+        mBackgroundComplicationId = getComplicationId(ComplicationLocation.BACKGROUND);
 
-        mLeftComplicationId =
-                AnalogComplicationWatchFaceService.getComplicationId(ComplicationLocation.LEFT);
-        mRightComplicationId =
-                AnalogComplicationWatchFaceService.getComplicationId(ComplicationLocation.RIGHT);
+        mLeftComplicationId = getComplicationId(ComplicationLocation.LEFT);
+        mRightComplicationId = getComplicationId(ComplicationLocation.RIGHT);
 
         mSharedPref =
                 context.getSharedPreferences(
@@ -330,6 +332,29 @@ public class AnalogComplicationConfigRecyclerViewAdapter
         mProviderInfoRetriever.release();
     }
 
+    // Returns the id of the watch face's complication slot at the location, or -1 if the watch
+    // face doesn't support it.
+    private int getComplicationId(ComplicationLocation complicationLocation) {
+        ComplicationLayout.Slot slot =
+                mComplicationLayout.findSlotByLocation(complicationLocation.name());
+        return slot != null ? slot.getId() : -1;
+    }
+
+    // Launches the helper class, so user can choose the complication data provider for the
+    // selected complication.
+    private void launchProviderChooser(Activity currentActivity) {
+        int[] supportedTypes =
+                mComplicationLayout.findSlotById(mSelectedComplicationId).getSupportedTypes();
+
+        ComponentName watchFace =
+                new ComponentName(currentActivity, AnalogComplicationWatchFaceService.class);
+
+        currentActivity.startActivityForResult(
+                ComplicationHelperActivity.createProviderChooserHelperIntent(
+                        currentActivity, watchFace, mSelectedComplicationId, supportedTypes),
+                AnalogComplicationConfigActivity.COMPLICATION_CONFIG_REQUEST_CODE);
+    }
+
     public void updatePreviewColors() {
         Log.d(TAG, "updatePreviewColors(): " + mPreviewAndComplicationsViewHolder);
 
@@ -439,28 +464,12 @@ public class AnalogComplicationConfigRecyclerViewAdapter
         private void launchComplicationHelperActivity(
                 Activity currentActivity, ComplicationLocation complicationLocation) {
 
-            mSelectedComplicationId =
-                    AnalogComplicationWatchFaceService.getComplicationId(complicationLocation);
+            mSelectedComplicationId = getComplicationId(complicationLocation);
 
             mBackgroundComplicationEnabled = false;
 
             if (mSelectedComplicationId >= 0) {
-
-                int[] supportedTypes =
-                        AnalogComplicationWatchFaceService.getSupportedComplicationTypes(
-                                complicationLocation);
-
-                ComponentName watchFace =
-                        new ComponentName(
-                                currentActivity, AnalogComplicationWatchFaceService.class);
-
-                currentActivity.startActivityForResult(
-                        ComplicationHelperActivity.createProviderChooserHelperIntent(
-                                currentActivity,
-                                watchFace,
-                                mSelectedComplicationId,
-                                supportedTypes),
-                        AnalogComplicationConfigActivity.COMPLICATION_CONFIG_REQUEST_CODE);
+                launchProviderChooser(currentActivity);
 
             } else {
                 Log.d(TAG, "Complication not supported by watch face.");
@@ -564,7 +573,7 @@ public class AnalogComplicationConfigRecyclerViewAdapter
                     .getBackground()
                     .setColorFilter(backgroundColorFilter);
 
-            final int[] complicationIds = AnalogComplicationWatchFaceService.getComplicationIds();
+            final int[] complicationIds = mComplicationLayout.getComplicationIds();
 
             mProviderInfoRetriever.retrieveProviderInfo(
                     new OnProviderInfoReceivedCallback() {
@@ -770,27 +779,10 @@ public class AnalogComplicationConfigRecyclerViewAdapter
 
             Activity currentActivity = (Activity) view.getContext();
 
-            mSelectedComplicationId =
-                    AnalogComplicationWatchFaceService.getComplicationId(
-                            ComplicationLocation.BACKGROUND);
+            mSelectedComplicationId = mBackgroundComplicationId;
 
             if (mSelectedComplicationId >= 0) {
-
-                int[] supportedTypes =
-                        AnalogComplicationWatchFaceService.getSupportedComplicationTypes(
-                                ComplicationLocation.BACKGROUND);
-
-                ComponentName watchFace =
-                        new ComponentName(
-                                currentActivity, AnalogComplicationWatchFaceService.class);
-
-                currentActivity.startActivityForResult(
-                        ComplicationHelperActivity.createProviderChooserHelperIntent(
-                                currentActivity,
-                                watchFace,
-                                mSelectedComplicationId,
-                                supportedTypes),
-                        AnalogComplicationConfigActivity.COMPLICATION_CONFIG_REQUEST_CODE);
+                launchProviderChooser(currentActivity);
 
             } else {
                 Log.d(TAG, "Complication not supported by watch face.");
@@ -2,22 +2,14 @@ package com.example.android.wearable.watchface.demo;
 
 import android.graphics.Canvas;
 import android.graphics.Rect;
-import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
-import android.text.TextUtils;
-import android.util.Log;
 import android.view.SurfaceHolder;
 
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
+import com.example.android.wearable.watchface.mobvoi.AssetCache;
+import com.example.android.wearable.watchface.mobvoi.DecodeExecutor;
+import com.example.android.wearable.watchface.mobvoi.FrameScheduler;
+import com.example.android.wearable.watchface.mobvoi.SpriteAnimation;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.lang.ref.WeakReference;
 import java.util.concurrent.TimeUnit;
 
 
@@ -25,12 +17,9 @@ import java.util.concurrent.TimeUnit;
  * 如何实现表盘动画
  */
 public class AnimateService extends CanvasWatchFaceService {
-    private static final String PNG_SUFFIX = ".png";
-    private static final String ASSETS_FACES = "face";
-    private static final String PREFIX_ASSETS = "assets:///";
-    private static final int MSG_UPDATE_TIME = 0;
-    private static final int MSG_ANIMATE = 1;
+    private static final long UPDATE_TIME_INTERVAL = TimeUnit.SECONDS.toMillis(1);
     private static final long ANIMATION_INTERVAL = 300L;    //动画总是长
+    private static final int FRAME_SIZE = 456;    //帧图的设计尺寸
     private static final String[] frameDrawable = new String[]{"frame1", "frame2", "frame3",
             "frame4", "frame5", "frame6"};
 
@@ -44,38 +33,45 @@ public class AnimateService extends CanvasWatchFaceService {
         return new MyEngine();
     }
 
-    class MyEngine extends Engine {
-        protected Handler mAsyncHandler;
-        private EngineHandler mHandler;
-        private final long mUpdateRateMillis = TimeUnit.SECONDS.toMillis(1);
-        private Drawable[] mDrawables;
-        private AnimationInfo mAnimationInfo;
+    class MyEngine extends Engine implements FrameScheduler.Host {
+        private AssetCache mAssetCache;
+        private DecodeExecutor.Scope mScope;
+        private FrameScheduler mFrameScheduler;
+        private SpriteAnimation mSpriteAnimation;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
-            HandlerThread asyncThread = new HandlerThread("WatchFaceAsync");
-            asyncThread.start();
-            mAsyncHandler = new Handler(asyncThread.getLooper());
-            mAsyncHandler.post(() -> {
-                mDrawables = new Drawable[frameDrawable.length];
-                for (int i = 0; i < frameDrawable.length; i++) {
-                    mDrawables[i] = getAssetDrawable(null, frameDrawable[i]);
-                }
-            });
-            mAnimationInfo = new AnimationInfo();
-            mHandler = new EngineHandler(this);
-            mHandler.sendEmptyMessageDelayed(MSG_ANIMATE, ANIMATION_INTERVAL);
+            mAssetCache = AssetCache.getInstance(getApplicationContext());
+            //后台任务都提交到共享线程池，onDestroy 时一起取消
+            mScope = DecodeExecutor.getInstance().newScope("AnimateService");
+            String[] framePaths = new String[frameDrawable.length];
+            for (int i = 0; i < frameDrawable.length; i++) {
+                framePaths[i] = AssetCache.getFacePath(frameDrawable[i]);
+            }
+            mSpriteAnimation = new SpriteAnimation(mAssetCache, mScope, framePaths);
+            mSpriteAnimation.setFrameDuration(ANIMATION_INTERVAL);
+            //走时和动画两个周期由同一个调度器合并刷新
+            mFrameScheduler = new FrameScheduler(this);
+            mFrameScheduler.register(UPDATE_TIME_INTERVAL, null);
+            mFrameScheduler.register(mSpriteAnimation.getMinFrameDuration(),
+                    mSpriteAnimation::advance);
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            //帧图按设计尺寸铺满表盘，图集按屏幕宽度缩放，第一帧解码完成后就开始显示
+            int frameSize = (int) (FRAME_SIZE * width / getBaseSize());
+            mSpriteAnimation.load(frameSize, frameSize, this::invalidate);
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
             super.onDraw(canvas, bounds);
             //背景图
-            if (mDrawables != null && mDrawables[mAnimationInfo.currentIndex] != null
-                    && !isInAmbientMode()) {
-                drawImage(canvas, mDrawables[mAnimationInfo.currentIndex],
-                        0.5f, 0.5f, 0, 1);
+            if (!isInAmbientMode()) {
+                mSpriteAnimation.draw(canvas, canvas.getWidth() * 0.5f, canvas.getWidth() * 0.5f);
             }
         }
 
@@ -83,160 +79,26 @@ public class AnimateService extends CanvasWatchFaceService {
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
             invalidate();   //需要刷新，避免显示空白
-            updateTimer();
-            changeAnimation();
+            mFrameScheduler.onStateChanged();
         }
 
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
-            changeAnimation();
-        }
-
-        private void changeAnimation() {
-            mHandler.removeCallbacksAndMessages(null);
-            if (shouldAnimationBeRunning()) {
-                mHandler.sendEmptyMessage(MSG_ANIMATE);
-            }
-        }
-
-        private boolean shouldAnimationBeRunning() {
-            return isVisible() && !isInAmbientMode();
-        }
-
-        protected void drawImage(@NonNull Canvas canvas, @Nullable Drawable drawable,
-                                 float positionX, float positionY, float degree, float scale) {
-            if (drawable == null) {
-                return;
-            }
-            int width = canvas.getWidth();
-            int height = canvas.getWidth();
-            float drawableWidth = getDrawableWidth(drawable, width) * scale;
-            float drawableHeight = getDrawableHeight(drawable, height) * scale;
-            canvas.save();
-            canvas.translate(width * positionX - drawableWidth / 2, height * positionY - drawableHeight / 2);
-            if (degree != 0) {
-                canvas.rotate(degree, drawableWidth / 2, drawableHeight / 2);
-            }
-            drawable.setBounds(0, 0, (int) drawableWidth, (int) drawableHeight);
-            drawable.draw(canvas);
-            canvas.restore();
-        }
-
-        protected Drawable getAssetDrawable(String path, String name) {
-            if (TextUtils.isEmpty(name)) {
-                return null;
-            } else if (path == null) {
-                return getDrawableFromPath(PREFIX_ASSETS + getFaceResourceDir() + File.separator + name + PNG_SUFFIX);
-            } else if (path.startsWith(PREFIX_ASSETS)) {
-                path = path.replace(PREFIX_ASSETS, "");
-                return getDrawableFromPath(PREFIX_ASSETS + getFaceResourceDir() + File.separator + path + PNG_SUFFIX);
-            }
-            return getDrawableFromPath(path);
-        }
-
-        private Drawable getDrawableFromAssets(String path) {
-            if (path != null && path.startsWith(PREFIX_ASSETS)) {
-                path = path.replace(PREFIX_ASSETS, "");
-                InputStream is = null;
-                try {
-                    is = getApplicationContext().getAssets().open(path);
-                    return Drawable.createFromResourceStream(getResources(), null, is, null);
-                } catch (IOException e) {
-                    Log.w("Manley", "Error get drawable from assets path = " + path);
-                } finally {
-                    if (is != null) {
-                        try {
-                            is.close();
-                        } catch (IOException ignored) {
-                        }
-                    }
-                }
-            }
-            return null;
-        }
-
-        private String getFaceResourceDir() {
-            return ASSETS_FACES;
-        }
-
-        protected Drawable getDrawableFromPath(String path) {
-            if (TextUtils.isEmpty(path)) {
-                return null;
-            }
-            if (path.startsWith(PREFIX_ASSETS)) {
-                return getDrawableFromAssets(path);
-            }
-            return Drawable.createFromPath(path);
-        }
-
-        private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = mUpdateRateMillis
-                        - (timeMs % mUpdateRateMillis);
-                mHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
-        }
-
-        private boolean shouldTimerBeRunning() {
-            return isVisible() && !isInAmbientMode();
-        }
-
-        private void updateTimer() {
-            mHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
-        }
-
-        private class AnimationInfo {
-            private int currentIndex;
-
-            private void setCurrentIndex(int currentIndex) {
-                this.currentIndex = currentIndex;
-            }
-        }
-    }
-
-    private static class EngineHandler extends Handler {
-        private final WeakReference<MyEngine> mWeakReference;
-
-        public EngineHandler(MyEngine reference) {
-            mWeakReference = new WeakReference<>(reference);
+            super.onAmbientModeChanged(inAmbientMode);
+            mSpriteAnimation.setAmbient(inAmbientMode);
+            mFrameScheduler.onStateChanged();
         }
 
         @Override
-        public void handleMessage(Message msg) {
-            MyEngine engine = mWeakReference.get();
-            if (engine == null) {
-                removeCallbacksAndMessages(null);
-                sendEmptyMessageDelayed(0, ANIMATION_INTERVAL);
-                return;
-            }
-            if (msg.what == MSG_UPDATE_TIME) {
-                engine.handleUpdateTimeMessage();
-            } else if (msg.what == MSG_ANIMATE) {
-                if (engine.mAnimationInfo.currentIndex == frameDrawable.length-1) {
-                    engine.mAnimationInfo.setCurrentIndex(0);
-                } else {
-                    engine.mAnimationInfo.setCurrentIndex(engine.mAnimationInfo.currentIndex + 1);
-                }
-                engine.invalidate();
-                sendEmptyMessageDelayed(MSG_ANIMATE, ANIMATION_INTERVAL);
-            }
+        public void onDestroy() {
+            mFrameScheduler.release();
+            mSpriteAnimation.release();
+            mScope.close();
+            super.onDestroy();
         }
     }
 
     private float getBaseSize() {
         return 456;
     }
-
-    protected float getDrawableWidth(Drawable drawable, int canvasWidth) {
-        return drawable.getIntrinsicWidth() * canvasWidth / getBaseSize();
-    }
-
-    protected float getDrawableHeight(Drawable drawable, int canvasHeight) {
-        return drawable.getIntrinsicHeight() * canvasHeight / getBaseSize();
-    }
 }
@@ -1,27 +1,30 @@
 package com.example.android.wearable.watchface.demo;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
+import android.os.Bundle;
 import android.support.wearable.watchface.CanvasWatchFaceService;
-import android.text.TextUtils;
-import android.util.Log;
 import android.view.SurfaceHolder;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.example.android.wearable.watchface.R;
+import com.example.android.wearable.watchface.mobvoi.AmbientFrameRenderer;
+import com.example.android.wearable.watchface.mobvoi.AssetCache;
+import com.example.android.wearable.watchface.mobvoi.BackgroundLayer;
+import com.example.android.wearable.watchface.mobvoi.DecodeExecutor;
+import com.example.android.wearable.watchface.mobvoi.FrameScheduler;
+import com.example.android.wearable.watchface.mobvoi.HandCompositor;
 import com.example.android.wearable.watchface.mobvoi.TimeUtil;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.lang.ref.WeakReference;
-import java.util.Calendar;
 import java.util.concurrent.TimeUnit;
 
 
@@ -29,10 +32,12 @@ import java.util.concurrent.TimeUnit;
  * 问问组件，如何添加
  */
 public class MobvoiComplicationWatchFaceService extends CanvasWatchFaceService {
-    private static final String PNG_SUFFIX = ".png";
-    private static final String ASSETS_FACES = "face";
-    private static final String PREFIX_ASSETS = "assets:///";
-    private static final int MSG_UPDATE_TIME = 0;
+    private static final long UPDATE_TIME_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * 阴影相对指针的偏移，阴影图片本身已经带有偏移
+     */
+    private static final float SHADOW_OFFSET_X = 0;
+    private static final float SHADOW_OFFSET_Y = 0;
 
     @Override
     public void onCreate() {
@@ -44,38 +49,73 @@ public class MobvoiComplicationWatchFaceService extends CanvasWatchFaceService {
         return new MyEngine();
     }
 
-    class MyEngine extends Engine {
-        protected Handler mAsyncHandler;
-        Drawable drawableHour;
-        Drawable drawableMinute;
-        Drawable drawableSecond;
-        Drawable drawableHourShadow;
-        Drawable drawableMinuteShadow;
-        Drawable drawableSecondShadow;
-        private EngineHandler mHandler;
-        private final long mUpdateRateMillis = TimeUnit.SECONDS.toMillis(1);
+    class MyEngine extends Engine implements BackgroundLayer.Renderer,
+            FrameScheduler.Host {
+        private AssetCache mAssetCache;
+        // 阴影和指针合成后、按 surface 尺寸缩放好的图片
+        Bitmap bitmapHour;
+        Bitmap bitmapMinute;
+        Bitmap bitmapSecond;
+        private final Paint mHandPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private DecodeExecutor.Scope mScope;
+        private final DecodeExecutor.Request<?>[] mHandRequests = new DecodeExecutor.Request<?>[3];
+        private FrameScheduler mFrameScheduler;
+        private final float[] mHandDegrees = new float[3];
+        private boolean mRegisteredTimeZoneReceiver;
+        private final BackgroundLayer mBackgroundLayer = new BackgroundLayer(this);
+        private AmbientFrameRenderer mAmbientFrameRenderer;
+
+        private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                TimeUtil.invalidateTimeZone();
+                mAmbientFrameRenderer.invalidate();
+                invalidate();
+            }
+        };
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
-            HandlerThread asyncThread = new HandlerThread("WatchFaceAsync");
-            asyncThread.start();
-            mAsyncHandler = new Handler(asyncThread.getLooper());
-            mAsyncHandler.post(() -> {
-                drawableHour = getAssetDrawable(null, "poi_hour");
-                drawableMinute = getAssetDrawable(null, "poi_minute");
-                drawableSecond = getAssetDrawable(null, "poi_second");
-                drawableHourShadow = getAssetDrawable(null, "shadow_poi_hour");
-                drawableMinuteShadow = getAssetDrawable(null, "shadow_poi_minute");
-                drawableSecondShadow = getAssetDrawable(null, "shadow_poi_second");
-            });
-            mHandler = new EngineHandler(this);
+            mAssetCache = AssetCache.getInstance(getApplicationContext());
+            //后台任务都提交到共享线程池，onDestroy 时一起取消
+            mScope = DecodeExecutor.getInstance().newScope("MobvoiComplicationWatchFaceService");
+            mAmbientFrameRenderer = new AmbientFrameRenderer(mAssetCache, getBaseSize(),
+                    "amb_bg", "amb_poi_hour", "amb_poi_minute");
+            //微光图片暂时用不到，排在指针之后
+            mScope.submit(DecodeExecutor.PRIORITY_LOW, () -> {
+                mAmbientFrameRenderer.load();
+                return null;
+            }, null);
+            mFrameScheduler = new FrameScheduler(this);
+            mFrameScheduler.register(UPDATE_TIME_INTERVAL, null);
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
             super.onDraw(canvas, bounds);
+            long now = System.currentTimeMillis();
+            //微光模式下直接绘制每分钟合成一次的缓存帧
+            if (isInAmbientMode() && mAmbientFrameRenderer.draw(canvas, now)) {
+                return;
+            }
             //背景图
+            mBackgroundLayer.draw(canvas);
+            TimeUtil.calculateHandDegrees(now, mHandDegrees);
+            float hourDegree = mHandDegrees[TimeUtil.INDEX_HOUR];
+            float minuteDegree = mHandDegrees[TimeUtil.INDEX_MINUTE];
+            float secondDegree = mHandDegrees[TimeUtil.INDEX_SECOND];
+            //时针及其阴影
+            drawHand(canvas, bitmapHour, hourDegree);
+            //分针及其阴影
+            drawHand(canvas, bitmapMinute, minuteDegree);
+            //秒针及其阴影
+            drawHand(canvas, bitmapSecond, secondDegree);
+        }
+
+        @Override
+        public void onRenderBackground(@NonNull Canvas canvas, int width, int height,
+                                       boolean ambient) {
             Drawable image = getDrawable(R.drawable.bg2);
             if (image == null) {
                 return;
@@ -89,140 +129,144 @@ public class MobvoiComplicationWatchFaceService extends CanvasWatchFaceService {
                 ratio = getBaseSize() / rawHeight;
             }
             drawImage(canvas, image, 0.5f, 0.5f, 0, ratio);
-            //时指针阴影
-            drawImage(canvas, drawableHourShadow, 0.5f, 0.5f,
-                    TimeUtil.calculateHourDegree(Calendar.getInstance()), 1);
-            //时针
-            drawImage(canvas, drawableHour, 0.5f, 0.5f,
-                    TimeUtil.calculateHourDegree(Calendar.getInstance()), 1);
-            //分指针阴影
-            drawImage(canvas, drawableMinuteShadow, 0.5f, 0.5f,
-                    TimeUtil.calculateMinuteDegree(Calendar.getInstance()), 1);
-            //分针
-            drawImage(canvas, drawableMinute, 0.5f, 0.5f,
-                    TimeUtil.calculateMinuteDegree(Calendar.getInstance()), 1);
-            //秒指针阴影
-            drawImage(canvas, drawableSecondShadow, 0.5f, 0.5f,
-                    TimeUtil.calculateSecondDegree(Calendar.getInstance()), 1);
-            //秒针
-            drawImage(canvas, drawableSecond, 0.5f, 0.5f,
-                    TimeUtil.calculateSecondDegree(Calendar.getInstance()), 1);
         }
 
         @Override
-        public void onVisibilityChanged(boolean visible) {
-            super.onVisibilityChanged(visible);
-            invalidate();   //需要刷新，避免显示空白
-            updateTimer();
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            mBackgroundLayer.setSurfaceSize(width, height);
+            mAmbientFrameRenderer.setSurfaceSize(width, height);
+            //按 surface 尺寸并行合成、缩放指针，尺寸不变时直接取缓存，每根完成后立即绘制
+            cancelHandRequests();
+            HandCompositor compositor = new HandCompositor(mAssetCache);
+            compositor.setShadowOffset(SHADOW_OFFSET_X, SHADOW_OFFSET_Y);
+            mHandRequests[TimeUtil.INDEX_HOUR] = loadHand(compositor, "poi_hour",
+                    "shadow_poi_hour", width, bitmap -> bitmapHour = bitmap);
+            mHandRequests[TimeUtil.INDEX_MINUTE] = loadHand(compositor, "poi_minute",
+                    "shadow_poi_minute", width, bitmap -> bitmapMinute = bitmap);
+            mHandRequests[TimeUtil.INDEX_SECOND] = loadHand(compositor, "poi_second",
+                    "shadow_poi_second", width, bitmap -> bitmapSecond = bitmap);
         }
 
-        protected void drawImage(@NonNull Canvas canvas, @Nullable Drawable drawable,
-                                 float positionX, float positionY, float degree, float scale) {
-            if (drawable == null) {
-                return;
-            }
-            int width = canvas.getWidth();
-            int height = canvas.getWidth();
-            float drawableWidth = getDrawableWidth(drawable, width) * scale;
-            float drawableHeight = getDrawableHeight(drawable, height) * scale;
-            canvas.save();
-            canvas.translate(width * positionX - drawableWidth / 2, height * positionY - drawableHeight / 2);
-            if (degree != 0) {
-                canvas.rotate(degree, drawableWidth / 2, drawableHeight / 2);
-            }
-            drawable.setBounds(0, 0, (int) drawableWidth, (int) drawableHeight);
-            drawable.draw(canvas);
-            canvas.restore();
+        private DecodeExecutor.Request<Bitmap> loadHand(HandCompositor compositor,
+                                                        String handName, String shadowName,
+                                                        int width,
+                                                        DecodeExecutor.Callback<Bitmap> setter) {
+            return mScope.submit(DecodeExecutor.PRIORITY_CRITICAL,
+                    () -> compositor.compose(handName, shadowName, width, getBaseSize()),
+                    bitmap -> {
+                        setter.onComplete(bitmap);
+                        invalidate();
+                    });
         }
 
-        protected Drawable getAssetDrawable(String path, String name) {
-            if (TextUtils.isEmpty(name)) {
-                return null;
-            } else if (path == null) {
-                return getDrawableFromPath(PREFIX_ASSETS + getFaceResourceDir() + File.separator + name + PNG_SUFFIX);
-            } else if (path.startsWith(PREFIX_ASSETS)) {
-                path = path.replace(PREFIX_ASSETS, "");
-                return getDrawableFromPath(PREFIX_ASSETS + getFaceResourceDir() + File.separator + path + PNG_SUFFIX);
+        private void cancelHandRequests() {
+            for (int i = 0; i < mHandRequests.length; i++) {
+                if (mHandRequests[i] != null) {
+                    mHandRequests[i].cancel();
+                    mHandRequests[i] = null;
+                }
             }
-            return getDrawableFromPath(path);
         }
 
-        private Drawable getDrawableFromAssets(String path) {
-            if (path != null && path.startsWith(PREFIX_ASSETS)) {
-                path = path.replace(PREFIX_ASSETS, "");
-                InputStream is = null;
-                try {
-                    is = getApplicationContext().getAssets().open(path);
-                    return Drawable.createFromResourceStream(getResources(), null, is, null);
-                } catch (IOException e) {
-                    Log.w("Manley", "Error get drawable from assets path = " + path);
-                } finally {
-                    if (is != null) {
-                        try {
-                            is.close();
-                        } catch (IOException ignored) {
-                        }
-                    }
-                }
-            }
-            return null;
+        @Override
+        public void onPropertiesChanged(Bundle properties) {
+            super.onPropertiesChanged(properties);
+            mAmbientFrameRenderer.setProperties(
+                    properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false),
+                    properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false));
         }
 
-        private String getFaceResourceDir() {
-            return ASSETS_FACES;
+        @Override
+        public void onTimeTick() {
+            super.onTimeTick();
+            //微光模式下每分钟刷新一次
+            invalidate();
         }
 
-        protected Drawable getDrawableFromPath(String path) {
-            if (TextUtils.isEmpty(path)) {
-                return null;
-            }
-            if (path.startsWith(PREFIX_ASSETS)) {
-                return getDrawableFromAssets(path);
-            }
-            return Drawable.createFromPath(path);
+        @Override
+        public void onAmbientModeChanged(boolean inAmbientMode) {
+            super.onAmbientModeChanged(inAmbientMode);
+            mBackgroundLayer.setAmbient(inAmbientMode);
+            mFrameScheduler.onStateChanged();
         }
 
-        private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = mUpdateRateMillis
-                        - (timeMs % mUpdateRateMillis);
-                mHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
+        @Override
+        public void onDestroy() {
+            mScope.close();
+            mFrameScheduler.release();
+            mBackgroundLayer.release();
+            mAmbientFrameRenderer.release();
+            super.onDestroy();
         }
 
-        private boolean shouldTimerBeRunning() {
-            return isVisible() && !isInAmbientMode();
+        @Override
+        public void onVisibilityChanged(boolean visible) {
+            super.onVisibilityChanged(visible);
+            if (visible) {
+                registerReceiver();
+                // 不可见期间时区可能已经变化
+                TimeUtil.invalidateTimeZone();
+            } else {
+                unregisterReceiver();
+            }
+            invalidate();   //需要刷新，避免显示空白
+            mFrameScheduler.onStateChanged();
         }
 
-        private void updateTimer() {
-            mHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+        private void registerReceiver() {
+            if (mRegisteredTimeZoneReceiver) {
+                return;
             }
+            mRegisteredTimeZoneReceiver = true;
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            MobvoiComplicationWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
         }
-    }
 
-    private static class EngineHandler extends Handler {
-        private final WeakReference<MyEngine> mWeakReference;
+        private void unregisterReceiver() {
+            if (!mRegisteredTimeZoneReceiver) {
+                return;
+            }
+            mRegisteredTimeZoneReceiver = false;
+            MobvoiComplicationWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
+        }
 
-        public EngineHandler(MyEngine reference) {
-            mWeakReference = new WeakReference<>(reference);
+        /**
+         * 以表盘中心为中心绘制已经缩放好的指针，只旋转不缩放
+         */
+        private void drawHand(@NonNull Canvas canvas, @Nullable Bitmap bitmap, float degree) {
+            if (bitmap == null) {
+                return;
+            }
+            float center = canvas.getWidth() * 0.5f;
+            canvas.save();
+            canvas.rotate(degree, center, center);
+            canvas.drawBitmap(bitmap, center - bitmap.getWidth() / 2f,
+                    center - bitmap.getHeight() / 2f, mHandPaint);
+            canvas.restore();
         }
 
-        @Override
-        public void handleMessage(Message msg) {
-            MyEngine engine = mWeakReference.get();
-            if (engine == null) {
+        protected void drawImage(@NonNull Canvas canvas, @Nullable Drawable drawable,
+                                 float positionX, float positionY, float degree, float scale) {
+            if (drawable == null) {
                 return;
             }
-            if (msg.what == MSG_UPDATE_TIME) {
-                engine.handleUpdateTimeMessage();
+            int width = canvas.getWidth();
+            int height = canvas.getWidth();
+            float drawableWidth = getDrawableWidth(drawable, width) * scale;
+            float drawableHeight = getDrawableHeight(drawable, height) * scale;
+            canvas.save();
+            canvas.translate(width * positionX - drawableWidth / 2, height * positionY - drawableHeight / 2);
+            if (degree != 0) {
+                canvas.rotate(degree, drawableWidth / 2, drawableHeight / 2);
             }
+            drawable.setBounds(0, 0, (int) drawableWidth, (int) drawableHeight);
+            drawable.draw(canvas);
+            canvas.restore();
         }
     }
 
+
     private float getBaseSize() {
         return 400;
     }
@@ -1,20 +1,30 @@
 package com.example.android.wearable.watchface.demo;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.os.Handler;
-import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.text.format.DateFormat;
 import android.view.SurfaceHolder;
 
-import java.lang.ref.WeakReference;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.android.wearable.watchface.mobvoi.DigitAtlas;
+import com.example.android.wearable.watchface.mobvoi.DirtyRegionRenderer;
+import com.example.android.wearable.watchface.mobvoi.FrameScheduler;
+import com.example.android.wearable.watchface.mobvoi.TimeUtil;
+import com.example.android.wearable.watchface.mobvoi.TypefaceRegistry;
+
 import java.util.Calendar;
 import java.util.Locale;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -22,64 +32,206 @@ import java.util.concurrent.TimeUnit;
  * 如何加载字体
  */
 public class NumberWatchFaceService extends CanvasWatchFaceService {
-    private static final int MSG_UPDATE_TIME = 0;
+    private static final long UPDATE_TIME_INTERVAL = TimeUnit.SECONDS.toMillis(1);
     private final static String FONT_NAME = "BITSUMISHI.TTF";
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        //Engine 创建之前就开始在后台加载字体
+        TypefaceRegistry.getInstance(this).preload(FONT_NAME);
+    }
+
     @Override
     public Engine onCreateEngine() {
         return new MyEngine();
     }
 
-    class MyEngine extends CanvasWatchFaceService.Engine {
+    class MyEngine extends CanvasWatchFaceService.Engine implements FrameScheduler.Host,
+            TypefaceRegistry.Callback {
         private Paint mPaint;
         private Paint mBackgroundPaint;
-        private EngineHandler mHandler;
-        private final long mUpdateRateMillis = TimeUnit.SECONDS.toMillis(1);
+        private FrameScheduler mFrameScheduler;
+        private final Calendar mCalendar = Calendar.getInstance();
+        //时分与秒的字号不同，各用一个图集
+        private final DigitAtlas mTimeAtlas = new DigitAtlas();
+        private final DigitAtlas mSecondAtlas = new DigitAtlas();
+        private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+        private final DirtyRegionRenderer mDirtyRegionRenderer = new DirtyRegionRenderer();
+        private boolean mRegisteredTimeZoneReceiver;
+
+        private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                mCalendar.setTimeZone(TimeZone.getDefault());
+                TimeUtil.invalidateTimeZone();
+                mDirtyRegionRenderer.invalidate();
+                invalidate();
+            }
+        };
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
-            mHandler = new EngineHandler(this);
+            mFrameScheduler = new FrameScheduler(this);
+            mFrameScheduler.register(UPDATE_TIME_INTERVAL, null);
             mBackgroundPaint = new Paint();
             mBackgroundPaint.setColor(Color.parseColor("black"));
             mPaint = new Paint();
-            new Thread(() ->
-                    mPaint.setTypeface(Typeface.createFromAsset(
-                            getAssets(), "font/" + FONT_NAME))
-            ).start();
+            mDirtyRegionRenderer.addElement(new BackgroundElement());
+            mDirtyRegionRenderer.addElement(new TimeElement());
+            mDirtyRegionRenderer.addElement(new SecondElement());
+            //已经加载过时立即回调，否则加载完成后在主线程回调
+            TypefaceRegistry.getInstance(getApplicationContext()).load(FONT_NAME, this);
+        }
+
+        @Override
+        public void onTypefaceReady(@NonNull String name, @Nullable Typeface typeface) {
+            if (typeface == null) {
+                return;
+            }
+            mPaint.setTypeface(typeface);
+            //字体变化后缓存的时分也要重绘
+            mDirtyRegionRenderer.invalidate();
+            invalidate();
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            //清除上次绘制
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            //另一种方式
-//            canvas.drawColor(Color.BLACK);
-
-            int width = canvas.getWidth();
-            Calendar mCalendar = Calendar.getInstance();
-            //time without second
+            long now = System.currentTimeMillis();
+            mCalendar.setTimeInMillis(now);
+            //背景、时分、秒分别缓存，每秒只重绘秒所在的区域
+            mDirtyRegionRenderer.draw(canvas, now);
+        }
+
+        /**
+         * 背景，只在整体重绘时绘制
+         */
+        private class BackgroundElement implements DirtyRegionRenderer.Element {
+            @Override
+            public long getPeriod(boolean ambient) {
+                return DirtyRegionRenderer.PERIOD_STATIC;
+            }
+
+            @Override
+            public void getBounds(long timeMs, int width, int height, boolean ambient,
+                                  @NonNull Rect outBounds) {
+                outBounds.set(0, 0, width, height);
+            }
+
+            @Override
+            public void draw(@NonNull Canvas canvas, long timeMs, boolean ambient) {
+                //清除上次绘制
+                canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mBackgroundPaint);
+                //另一种方式
+//                canvas.drawColor(Color.BLACK);
+            }
+        }
+
+        /**
+         * 时分，每分钟变化一次
+         */
+        private class TimeElement implements DirtyRegionRenderer.Element {
+            @Override
+            public long getPeriod(boolean ambient) {
+                return DirtyRegionRenderer.PERIOD_MINUTE;
+            }
+
+            @Override
+            public void getBounds(long timeMs, int width, int height, boolean ambient,
+                                  @NonNull Rect outBounds) {
+                setTimePaint(width);
+                float x = 57 / getBaseSize() * width;
+                float y = 150 / getBaseSize() * width;
+                int hour = getHour(mCalendar, shouldShowAmPm());
+                float right = x + mTimeAtlas.getTwoDigitsWidth(hour, mPaint)
+                        + mTimeAtlas.getColonWidth(mPaint)
+                        + mTimeAtlas.getTwoDigitsWidth(mCalendar.get(Calendar.MINUTE), mPaint);
+                setTextBounds(x, y, right, outBounds);
+            }
+
+            @Override
+            public void draw(@NonNull Canvas canvas, long timeMs, boolean ambient) {
+                int width = canvas.getWidth();
+                //time without second
+                setTimePaint(width);
+                float x = 57 / getBaseSize() * width;
+                float y = 150 / getBaseSize() * width;
+                int hour = getHour(mCalendar, shouldShowAmPm());
+                x = mTimeAtlas.drawTwoDigits(canvas, hour, x, y, mPaint);
+                x = mTimeAtlas.drawColon(canvas, x, y, mPaint);
+                mTimeAtlas.drawTwoDigits(canvas, mCalendar.get(Calendar.MINUTE), x, y, mPaint);
+            }
+        }
+
+        /**
+         * 秒，每秒变化一次
+         */
+        private class SecondElement implements DirtyRegionRenderer.Element {
+            @Override
+            public long getPeriod(boolean ambient) {
+                return DirtyRegionRenderer.PERIOD_SECOND;
+            }
+
+            @Override
+            public void getBounds(long timeMs, int width, int height, boolean ambient,
+                                  @NonNull Rect outBounds) {
+                setSecondPaint(width);
+                float x = 255 / getBaseSize() * width;
+                float y = 130 / getBaseSize() * width;
+                float right = x + mSecondAtlas.getColonWidth(mPaint)
+                        + mSecondAtlas.getTwoDigitsWidth(mCalendar.get(Calendar.SECOND), mPaint);
+                setTextBounds(x, y, right, outBounds);
+            }
+
+            @Override
+            public void draw(@NonNull Canvas canvas, long timeMs, boolean ambient) {
+                int width = canvas.getWidth();
+                //Second
+                setSecondPaint(width);
+                float x = 255 / getBaseSize() * width;
+                float y = 130 / getBaseSize() * width;
+                x = mSecondAtlas.drawColon(canvas, x, y, mPaint);
+                mSecondAtlas.drawTwoDigits(canvas, mCalendar.get(Calendar.SECOND), x, y, mPaint);
+            }
+        }
+
+        private void setTimePaint(int width) {
             mPaint.setAntiAlias(true);
             mPaint.setColor(Color.WHITE);
             mPaint.setStyle(Paint.Style.FILL);
             mPaint.setTextAlign(Paint.Align.LEFT);
             mPaint.setTextSize(58 / getBaseSize() * width);
-            canvas.drawText(getTimeString(mCalendar, ":", shouldShowAmPm()),
-                    57 / getBaseSize() * width, 150 / getBaseSize() * width, mPaint);
-            //Second
+        }
+
+        private void setSecondPaint(int width) {
             mPaint.setAntiAlias(true);
             mPaint.setColor(Color.WHITE);
             mPaint.setStyle(Paint.Style.FILL);
             mPaint.setTextAlign(Paint.Align.LEFT);
             mPaint.setTextSize(38 / getBaseSize() * width);
-            int second = mCalendar.get(Calendar.SECOND);
-            String secondStr;
-            if(second<10) {
-                secondStr = ":0" + second;
-            } else{
-                secondStr = ":" + second;
-            }
-            canvas.drawText(secondStr, 255 / getBaseSize() * width, 130 / getBaseSize() * width, mPaint);
+        }
+
+        /**
+         * 按当前 mPaint 的字体计算一行文字的区域，四周留出与 {@link DigitAtlas} 相同的余量
+         */
+        private void setTextBounds(float left, float baseline, float right, Rect outBounds) {
+            mPaint.getFontMetrics(mFontMetrics);
+            int padding = (int) Math.ceil(mPaint.getTextSize() * 0.1f) + 1;
+            outBounds.set((int) Math.floor(left) - padding,
+                    (int) Math.floor(baseline + mFontMetrics.top) - padding,
+                    (int) Math.ceil(right) + padding,
+                    (int) Math.ceil(baseline + mFontMetrics.bottom) + padding);
+        }
+
+        @Override
+        public void onDestroy() {
+            TypefaceRegistry.getInstance(getApplicationContext()).removeCallback(this);
+            mFrameScheduler.release();
+            mDirtyRegionRenderer.release();
+            mTimeAtlas.release();
+            mSecondAtlas.release();
+            super.onDestroy();
         }
 
         @Override
@@ -88,31 +240,43 @@ public class NumberWatchFaceService extends CanvasWatchFaceService {
             invalidate();
         }
 
-        private void handleUpdateTimeMessage() {
+        @Override
+        public void onAmbientModeChanged(boolean inAmbientMode) {
+            super.onAmbientModeChanged(inAmbientMode);
+            mDirtyRegionRenderer.setAmbient(inAmbientMode);
             invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = mUpdateRateMillis
-                        - (timeMs % mUpdateRateMillis);
-                mHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
+            mFrameScheduler.onStateChanged();
         }
 
-        private boolean shouldTimerBeRunning() {
-            return isVisible() && !isInAmbientMode();
+        @Override
+        public void onVisibilityChanged(boolean visible) {
+            super.onVisibilityChanged(visible);
+            if (visible) {
+                registerReceiver();
+                // 不可见期间时区可能已经变化
+                mCalendar.setTimeZone(TimeZone.getDefault());
+                TimeUtil.invalidateTimeZone();
+            } else {
+                unregisterReceiver();
+            }
+            mFrameScheduler.onStateChanged();
         }
 
-        private void updateTimer() {
-            mHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+        private void registerReceiver() {
+            if (mRegisteredTimeZoneReceiver) {
+                return;
             }
+            mRegisteredTimeZoneReceiver = true;
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            NumberWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
         }
 
-        @Override
-        public void onVisibilityChanged(boolean visible) {
-            super.onVisibilityChanged(visible);
-            updateTimer();
+        private void unregisterReceiver() {
+            if (!mRegisteredTimeZoneReceiver) {
+                return;
+            }
+            mRegisteredTimeZoneReceiver = false;
+            NumberWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
         }
 
     }
@@ -158,22 +322,4 @@ public class NumberWatchFaceService extends CanvasWatchFaceService {
         return DateFormat.is24HourFormat(context);
     }
 
-    private static class EngineHandler extends Handler {
-        private final WeakReference<MyEngine> mWeakReference;
-
-        public EngineHandler(MyEngine reference) {
-            mWeakReference = new WeakReference<>(reference);
-        }
-
-        @Override
-        public void handleMessage(Message msg) {
-            MyEngine engine = mWeakReference.get();
-            if (engine == null) {
-                return;
-            }
-            if (msg.what == MSG_UPDATE_TIME) {
-                engine.handleUpdateTimeMessage();
-            }
-        }
-    }
 }
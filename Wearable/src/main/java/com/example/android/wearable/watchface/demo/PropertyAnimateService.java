@@ -2,27 +2,22 @@ package com.example.android.wearable.watchface.demo;
 
 import android.animation.Animator;
 import android.animation.ValueAnimator;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Message;
 import android.support.wearable.view.SimpleAnimatorListener;
 import android.support.wearable.watchface.CanvasWatchFaceService;
-import android.text.TextUtils;
-import android.util.Log;
 import android.view.SurfaceHolder;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
+import com.example.android.wearable.watchface.mobvoi.AssetCache;
+import com.example.android.wearable.watchface.mobvoi.DecodeExecutor;
+
 import java.lang.ref.WeakReference;
 import java.util.concurrent.TimeUnit;
 
@@ -31,9 +26,6 @@ import java.util.concurrent.TimeUnit;
  * 如何实现属性动画
  */
 public class PropertyAnimateService extends CanvasWatchFaceService {
-    private static final String PNG_SUFFIX = ".png";
-    private static final String ASSETS_FACES = "face";
-    private static final String PREFIX_ASSETS = "assets:///";
     private static final float POSITION_STYLE[][] = new float[][]{{72, 165}, {70, 238}, {98, 252},
             {99, 312}, {160, 326}, {245, 340}, {273, 303}, {328, 235}, {317, 255}};
 
@@ -43,36 +35,60 @@ public class PropertyAnimateService extends CanvasWatchFaceService {
     }
 
     class MyEngine extends Engine {
-        protected Handler mAsyncHandler;
+        private AssetCache mAssetCache;
+        private DecodeExecutor.Scope mScope;
         private ValueAnimator mValueAnimator;
         private IconState[] mStyleDrawables = new IconState[POSITION_STYLE.length];
         private int mCurrentDrawposition;
         private final float[] START_POSITION = new float[]{200, -100};
-        private boolean mDrawableInited;
         private float mValue;
+        private final DecodeExecutor.Request<?>[] mRequests =
+                new DecodeExecutor.Request<?>[POSITION_STYLE.length];
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
-            HandlerThread asyncThread = new HandlerThread("WatchFaceAsync");
-            asyncThread.start();
-            mAsyncHandler = new Handler(asyncThread.getLooper());
-            mAsyncHandler.post(() -> {
-                for (int i = 0; i < mStyleDrawables.length; i++) {
-                    mStyleDrawables[i] = new IconState();
-                    mStyleDrawables[i].drawable = getAssetDrawable(null, String.format("style_%d", i + 1));
-                    mStyleDrawables[i].targetPositionX = POSITION_STYLE[i][0];
-                    mStyleDrawables[i].targetPositionY = POSITION_STYLE[i][1];
+            mAssetCache = AssetCache.getInstance(getApplicationContext());
+            //后台任务都提交到共享线程池，onDestroy 时一起取消
+            mScope = DecodeExecutor.getInstance().newScope("PropertyAnimateService");
+            for (int i = 0; i < mStyleDrawables.length; i++) {
+                mStyleDrawables[i] = new IconState();
+                mStyleDrawables[i].targetPositionX = POSITION_STYLE[i][0];
+                mStyleDrawables[i].targetPositionY = POSITION_STYLE[i][1];
+            }
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            //按 surface 尺寸解码到最终绘制的像素尺寸，尺寸不变时直接取缓存。
+            //图标按飞入的顺序排队并行解码，第一个优先，每解码完一个就可以绘制
+            cancelRequests();
+            for (int i = 0; i < mStyleDrawables.length; i++) {
+                IconState iconState = mStyleDrawables[i];
+                String path = AssetCache.getFacePath(String.format("style_%d", i + 1));
+                int priority = i == 0 ? DecodeExecutor.PRIORITY_CRITICAL
+                        : DecodeExecutor.PRIORITY_NORMAL;
+                mRequests[i] = mScope.submit(priority,
+                        () -> mAssetCache.getScaledBitmap(path, width, getBaseSize()),
+                        bitmap -> {
+                            iconState.bitmap = bitmap;
+                            invalidate();
+                        });
+            }
+        }
+
+        private void cancelRequests() {
+            for (int i = 0; i < mRequests.length; i++) {
+                if (mRequests[i] != null) {
+                    mRequests[i].cancel();
+                    mRequests[i] = null;
                 }
-                mDrawableInited = true;
-            });
+            }
         }
 
         private void resetPosition() {
             mCurrentDrawposition = 0;
-            if (!mDrawableInited) {
-                return;
-            }
             for (IconState iconState : mStyleDrawables) {
                 iconState.positionX = START_POSITION[0];
                 iconState.positionY = START_POSITION[1];
@@ -83,19 +99,19 @@ public class PropertyAnimateService extends CanvasWatchFaceService {
         public void onDraw(Canvas canvas, Rect bounds) {
             super.onDraw(canvas, bounds);
             canvas.drawColor(Color.BLACK);
-            if (!isInAmbientMode() && mDrawableInited) {
+            if (!isInAmbientMode()) {
                 for (int i = 0; i < mStyleDrawables.length; i++) {
                     if (mCurrentDrawposition > i) {
-                        drawImage(canvas, mStyleDrawables[i].drawable, mStyleDrawables[i].targetPositionX / getBaseSize(),
-                                mStyleDrawables[i].targetPositionY / getBaseSize(), 0,1);
+                        drawImage(canvas, mStyleDrawables[i].bitmap, mStyleDrawables[i].targetPositionX / getBaseSize(),
+                                mStyleDrawables[i].targetPositionY / getBaseSize());
                     } else if (mCurrentDrawposition == i) {
                         mStyleDrawables[i].positionX = (mStyleDrawables[i].targetPositionX - START_POSITION[0]) * mValue + START_POSITION[0];
                         mStyleDrawables[i].positionY = (mStyleDrawables[i].targetPositionY - START_POSITION[1]) * mValue + START_POSITION[1];
                         if (mStyleDrawables[i].positionX == mStyleDrawables[i].targetPositionX) {
                             continue;
                         }
-                        drawImage(canvas, mStyleDrawables[i].drawable, mStyleDrawables[i].positionX / getBaseSize(),
-                                mStyleDrawables[i].positionY / getBaseSize(), 0,1);
+                        drawImage(canvas, mStyleDrawables[i].bitmap, mStyleDrawables[i].positionX / getBaseSize(),
+                                mStyleDrawables[i].positionY / getBaseSize());
                     }
                 }
             }
@@ -164,76 +180,27 @@ public class PropertyAnimateService extends CanvasWatchFaceService {
 
         @Override
         public void onDestroy() {
-            for (IconState mStyle1Drawable : mStyleDrawables) {
-                recycleDrawable(mStyle1Drawable.drawable);
+            // 图片由 AssetCache 在进程内共享，这里只取消解码并释放引用，不能 recycle
+            stopAnim();
+            mScope.close();
+            for (int i = 0; i < mStyleDrawables.length; i++) {
+                mStyleDrawables[i] = null;
             }
             super.onDestroy();
         }
 
-        protected void drawImage(@NonNull Canvas canvas, @Nullable Drawable drawable,
-                                 float positionX, float positionY, float degree, float scale) {
-            if (drawable == null) {
+        /**
+         * 图片已经按 surface 尺寸缩放好，对齐到整像素 1:1 绘制，不需要过滤
+         */
+        protected void drawImage(@NonNull Canvas canvas, @Nullable Bitmap bitmap,
+                                 float positionX, float positionY) {
+            if (bitmap == null) {
                 return;
             }
             int width = canvas.getWidth();
             int height = canvas.getWidth();
-            float drawableWidth = getDrawableWidth(drawable, width) * scale;
-            float drawableHeight = getDrawableHeight(drawable, height) * scale;
-            canvas.save();
-            canvas.translate(width * positionX - drawableWidth / 2, height * positionY - drawableHeight / 2);
-            if (degree != 0) {
-                canvas.rotate(degree, drawableWidth / 2, drawableHeight / 2);
-            }
-            drawable.setBounds(0, 0, (int) drawableWidth, (int) drawableHeight);
-            drawable.draw(canvas);
-            canvas.restore();
-        }
-
-        protected Drawable getAssetDrawable(String path, String name) {
-            if (TextUtils.isEmpty(name)) {
-                return null;
-            } else if (path == null) {
-                return getDrawableFromPath(PREFIX_ASSETS + getFaceResourceDir() + File.separator + name + PNG_SUFFIX);
-            } else if (path.startsWith(PREFIX_ASSETS)) {
-                path = path.replace(PREFIX_ASSETS, "");
-                return getDrawableFromPath(PREFIX_ASSETS + getFaceResourceDir() + File.separator + path + PNG_SUFFIX);
-            }
-            return getDrawableFromPath(path);
-        }
-
-        private Drawable getDrawableFromAssets(String path) {
-            if (path != null && path.startsWith(PREFIX_ASSETS)) {
-                path = path.replace(PREFIX_ASSETS, "");
-                InputStream is = null;
-                try {
-                    is = getApplicationContext().getAssets().open(path);
-                    return Drawable.createFromResourceStream(getResources(), null, is, null);
-                } catch (IOException e) {
-                    Log.w("Manley", "Error get drawable from assets path = " + path);
-                } finally {
-                    if (is != null) {
-                        try {
-                            is.close();
-                        } catch (IOException ignored) {
-                        }
-                    }
-                }
-            }
-            return null;
-        }
-
-        private String getFaceResourceDir() {
-            return ASSETS_FACES;
-        }
-
-        protected Drawable getDrawableFromPath(String path) {
-            if (TextUtils.isEmpty(path)) {
-                return null;
-            }
-            if (path.startsWith(PREFIX_ASSETS)) {
-                return getDrawableFromAssets(path);
-            }
-            return Drawable.createFromPath(path);
+            canvas.drawBitmap(bitmap, Math.round(width * positionX - bitmap.getWidth() / 2f),
+                    Math.round(height * positionY - bitmap.getHeight() / 2f), null);
         }
 
         private class IconState {
@@ -241,27 +208,11 @@ public class PropertyAnimateService extends CanvasWatchFaceService {
             private float positionY;
             private float targetPositionX;
             private float targetPositionY;
-            private Drawable drawable;
-        }
-
-        protected void recycleDrawable(Drawable drawable) {
-            if (drawable != null) {
-                if (drawable instanceof BitmapDrawable) {
-                    ((BitmapDrawable) drawable).getBitmap().recycle();
-                }
-            }
+            private Bitmap bitmap;
         }
     }
 
     private float getBaseSize() {
         return 400;
     }
-
-    protected float getDrawableWidth(Drawable drawable, int canvasWidth) {
-        return drawable.getIntrinsicWidth() * canvasWidth / getBaseSize();
-    }
-
-    protected float getDrawableHeight(Drawable drawable, int canvasHeight) {
-        return drawable.getIntrinsicHeight() * canvasHeight / getBaseSize();
-    }
 }
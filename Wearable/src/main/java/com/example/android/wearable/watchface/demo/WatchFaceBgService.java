@@ -6,7 +6,10 @@ import android.graphics.drawable.Drawable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.view.SurfaceHolder;
 
+import androidx.annotation.NonNull;
+
 import com.example.android.wearable.watchface.R;
+import com.example.android.wearable.watchface.mobvoi.BackgroundLayer;
 
 
 /**
@@ -25,7 +28,9 @@ public class WatchFaceBgService extends CanvasWatchFaceService {
         return new MyEngine();
     }
 
-    class MyEngine extends CanvasWatchFaceService.Engine {
+    class MyEngine extends CanvasWatchFaceService.Engine implements BackgroundLayer.Renderer {
+        private final BackgroundLayer mBackgroundLayer = new BackgroundLayer(this);
+
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
@@ -35,6 +40,12 @@ public class WatchFaceBgService extends CanvasWatchFaceService {
         public void onDraw(Canvas canvas, Rect bounds) {
             super.onDraw(canvas, bounds);
             //背景图
+            mBackgroundLayer.draw(canvas);
+        }
+
+        @Override
+        public void onRenderBackground(@NonNull Canvas canvas, int width, int height,
+                                       boolean ambient) {
             Drawable image = getDrawable(R.drawable.avatar);
             if (image == null) {
                 return;
@@ -47,17 +58,33 @@ public class WatchFaceBgService extends CanvasWatchFaceService {
             } else {
                 ratio = getBaseSize() / rawHeight;
             }
-            int width = canvas.getWidth();
-            int height = canvas.getWidth();
             float drawableWidth = getDrawableWidth(image, width) * ratio;
-            float drawableHeight = getDrawableHeight(image, height) * ratio;
+            float drawableHeight = getDrawableHeight(image, width) * ratio;
             canvas.save();
-            canvas.translate(width * 0.5f - drawableWidth / 2, height * 0.5f - drawableHeight / 2);
+            canvas.translate(width * 0.5f - drawableWidth / 2, width * 0.5f - drawableHeight / 2);
             image.setBounds(0, 0, (int) drawableWidth, (int) drawableHeight);
             image.draw(canvas);
             canvas.restore();
         }
 
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            mBackgroundLayer.setSurfaceSize(width, height);
+        }
+
+        @Override
+        public void onAmbientModeChanged(boolean inAmbientMode) {
+            super.onAmbientModeChanged(inAmbientMode);
+            mBackgroundLayer.setAmbient(inAmbientMode);
+        }
+
+        @Override
+        public void onDestroy() {
+            mBackgroundLayer.release();
+            super.onDestroy();
+        }
+
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
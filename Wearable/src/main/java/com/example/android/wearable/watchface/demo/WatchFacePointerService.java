@@ -1,27 +1,32 @@
 package com.example.android.wearable.watchface.demo;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
+import android.os.Bundle;
 import android.support.wearable.watchface.CanvasWatchFaceService;
-import android.text.TextUtils;
-import android.util.Log;
 import android.view.SurfaceHolder;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.example.android.wearable.watchface.R;
+import com.example.android.wearable.watchface.mobvoi.AmbientFrameRenderer;
+import com.example.android.wearable.watchface.mobvoi.AssetCache;
+import com.example.android.wearable.watchface.mobvoi.BackgroundLayer;
+import com.example.android.wearable.watchface.mobvoi.DecodeExecutor;
+import com.example.android.wearable.watchface.mobvoi.DirtyRegionRenderer;
+import com.example.android.wearable.watchface.mobvoi.FrameScheduler;
+import com.example.android.wearable.watchface.mobvoi.HandCompositor;
+import com.example.android.wearable.watchface.mobvoi.HandSpriteCache;
 import com.example.android.wearable.watchface.mobvoi.TimeUtil;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.lang.ref.WeakReference;
-import java.util.Calendar;
 import java.util.concurrent.TimeUnit;
 
 
@@ -29,10 +34,17 @@ import java.util.concurrent.TimeUnit;
  * 如何实现时分秒指针，及其阴影
  */
 public class WatchFacePointerService extends CanvasWatchFaceService {
-    private static final String PNG_SUFFIX = ".png";
-    private static final String ASSETS_FACES = "face";
-    private static final String PREFIX_ASSETS = "assets:///";
-    private static final int MSG_UPDATE_TIME = 0;
+    private static final long UPDATE_TIME_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * 指针缓存的量化角度，秒针每秒 6°，时针每分钟 0.5°
+     */
+    private static final float HAND_ANGLE_STEP = 0.5f;
+    private static final long HAND_CACHE_MAX_BYTES = 8 * 1024 * 1024;
+    /**
+     * 阴影相对指针的偏移，阴影图片本身已经带有偏移
+     */
+    private static final float SHADOW_OFFSET_X = 0;
+    private static final float SHADOW_OFFSET_Y = 0;
 
     @Override
     public void onCreate() {
@@ -44,38 +56,151 @@ public class WatchFacePointerService extends CanvasWatchFaceService {
         return new MyEngine();
     }
 
-    class MyEngine extends Engine {
-        protected Handler mAsyncHandler;
-        Drawable drawableHour;
-        Drawable drawableMinute;
-        Drawable drawableSecond;
-        Drawable drawableHourShadow;
-        Drawable drawableMinuteShadow;
-        Drawable drawableSecondShadow;
-        private EngineHandler mHandler;
-        private final long mUpdateRateMillis = TimeUnit.SECONDS.toMillis(1);
+    class MyEngine extends Engine implements BackgroundLayer.Renderer,
+            FrameScheduler.Host {
+        private DecodeExecutor.Scope mScope;
+        private AssetCache mAssetCache;
+        private FrameScheduler mFrameScheduler;
+        private final float[] mHandDegrees = new float[3];
+        private boolean mRegisteredTimeZoneReceiver;
+        private final BackgroundLayer mBackgroundLayer = new BackgroundLayer(this);
+        private final DirtyRegionRenderer mDirtyRegionRenderer = new DirtyRegionRenderer();
+        private HandSpriteCache mHandSpriteCache;
+        private AmbientFrameRenderer mAmbientFrameRenderer;
+
+        private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                TimeUtil.invalidateTimeZone();
+                mDirtyRegionRenderer.invalidate();
+                mAmbientFrameRenderer.invalidate();
+                invalidate();
+            }
+        };
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
-            HandlerThread asyncThread = new HandlerThread("WatchFaceAsync");
-            asyncThread.start();
-            mAsyncHandler = new Handler(asyncThread.getLooper());
-            mAsyncHandler.post(() -> {
-                drawableHour = getAssetDrawable(null, "poi_hour");
-                drawableMinute = getAssetDrawable(null, "poi_minute");
-                drawableSecond = getAssetDrawable(null, "poi_second");
-                drawableHourShadow = getAssetDrawable(null, "shadow_poi_hour");
-                drawableMinuteShadow = getAssetDrawable(null, "shadow_poi_minute");
-                drawableSecondShadow = getAssetDrawable(null, "shadow_poi_second");
-            });
-            mHandler = new EngineHandler(this);
+            mAssetCache = AssetCache.getInstance(getApplicationContext());
+            //后台任务都提交到共享线程池，onDestroy 时一起取消
+            mScope = DecodeExecutor.getInstance().newScope("WatchFacePointerService");
+            mHandSpriteCache = new HandSpriteCache(mScope, getBaseSize(),
+                    HAND_CACHE_MAX_BYTES);
+            mAmbientFrameRenderer = new AmbientFrameRenderer(mAssetCache, getBaseSize(),
+                    "amb_bg", "amb_poi_hour", "amb_poi_minute");
+            HandElement hourHand = new HandElement(TimeUtil.INDEX_HOUR,
+                    DirtyRegionRenderer.PERIOD_MINUTE, HAND_ANGLE_STEP);
+            HandElement minuteHand = new HandElement(TimeUtil.INDEX_MINUTE,
+                    DirtyRegionRenderer.PERIOD_SECOND, HAND_ANGLE_STEP);
+            HandElement secondHand = new HandElement(TimeUtil.INDEX_SECOND,
+                    DirtyRegionRenderer.PERIOD_SECOND, 6);
+            //指针优先并行合成，每根合成完成后立即整体重绘一次；微光图片最后加载
+            HandCompositor compositor = new HandCompositor(mAssetCache);
+            compositor.setShadowOffset(SHADOW_OFFSET_X, SHADOW_OFFSET_Y);
+            loadHand(compositor, "poi_hour", "shadow_poi_hour", hourHand);
+            loadHand(compositor, "poi_minute", "shadow_poi_minute", minuteHand);
+            loadHand(compositor, "poi_second", "shadow_poi_second", secondHand);
+            mScope.submit(DecodeExecutor.PRIORITY_LOW, () -> {
+                mAmbientFrameRenderer.load();
+                return null;
+            }, null);
+            mDirtyRegionRenderer.addElement(new BackgroundElement());
+            mDirtyRegionRenderer.addElement(hourHand);
+            mDirtyRegionRenderer.addElement(minuteHand);
+            mDirtyRegionRenderer.addOverlay(secondHand);
+            mFrameScheduler = new FrameScheduler(this);
+            mFrameScheduler.register(UPDATE_TIME_INTERVAL, null);
+        }
+
+        private void loadHand(HandCompositor compositor, String handName, String shadowName,
+                              HandElement hand) {
+            mScope.submit(DecodeExecutor.PRIORITY_CRITICAL,
+                    () -> compositor.compose(handName, shadowName),
+                    bitmap -> {
+                        hand.setDrawable(toDrawable(bitmap));
+                        mDirtyRegionRenderer.invalidate();
+                        invalidate();
+                    });
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
             super.onDraw(canvas, bounds);
-            //背景图
+            long now = System.currentTimeMillis();
+            //微光模式下直接绘制每分钟合成一次的缓存帧
+            if (isInAmbientMode() && mAmbientFrameRenderer.draw(canvas, now)) {
+                return;
+            }
+            TimeUtil.calculateHandDegrees(now, mHandDegrees);
+            //背景和时针、分针缓存在合成图中，秒针每秒都扫过大片区域，直接绘制在最上层
+            mDirtyRegionRenderer.draw(canvas, now);
+        }
+
+        /**
+         * 背景图，只在整体重绘时绘制
+         */
+        private class BackgroundElement implements DirtyRegionRenderer.Element {
+            @Override
+            public long getPeriod(boolean ambient) {
+                return DirtyRegionRenderer.PERIOD_STATIC;
+            }
+
+            @Override
+            public void getBounds(long timeMs, int width, int height, boolean ambient,
+                                  @NonNull Rect outBounds) {
+                outBounds.set(0, 0, width, height);
+            }
+
+            @Override
+            public void draw(@NonNull Canvas canvas, long timeMs, boolean ambient) {
+                mBackgroundLayer.draw(canvas);
+            }
+        }
+
+        /**
+         * 一根指针及其阴影，已由 {@link HandCompositor} 合成为一张图，
+         * 通过 {@link HandSpriteCache} 绘制
+         */
+        private class HandElement implements DirtyRegionRenderer.Element {
+            private final int mIndex;
+            private final long mPeriod;
+            private final HandSpriteCache.Hand mHand;
+
+            /**
+             * @param index  {@link TimeUtil#INDEX_HOUR} 等
+             * @param period 指针角度变化的周期，时针每分钟、分针每秒变化一次
+             * @param prefetchDegrees 每个周期指针转过的角度，用于预取下一帧的缓存
+             */
+            HandElement(int index, long period, float prefetchDegrees) {
+                mIndex = index;
+                mPeriod = period;
+                mHand = mHandSpriteCache.addHand(HAND_ANGLE_STEP, prefetchDegrees);
+            }
+
+            void setDrawable(Drawable hand) {
+                mHand.setDrawable(hand);
+            }
+
+            @Override
+            public long getPeriod(boolean ambient) {
+                return mPeriod;
+            }
+
+            @Override
+            public void getBounds(long timeMs, int width, int height, boolean ambient,
+                                  @NonNull Rect outBounds) {
+                mHand.getBounds(mHandDegrees[mIndex], outBounds);
+            }
+
+            @Override
+            public void draw(@NonNull Canvas canvas, long timeMs, boolean ambient) {
+                mHand.draw(canvas, mHandDegrees[mIndex]);
+            }
+        }
+
+        @Override
+        public void onRenderBackground(@NonNull Canvas canvas, int width, int height,
+                                       boolean ambient) {
             Drawable image = getDrawable(R.drawable.bg2);
             if (image == null) {
                 return;
@@ -89,31 +214,84 @@ public class WatchFacePointerService extends CanvasWatchFaceService {
                 ratio = getBaseSize() / rawHeight;
             }
             drawImage(canvas, image, 0.5f, 0.5f, 0, ratio);
-            //时指针阴影
-            drawImage(canvas, drawableHourShadow, 0.5f, 0.5f,
-                    TimeUtil.calculateHourDegree(Calendar.getInstance()), 1);
-            //时针
-            drawImage(canvas, drawableHour, 0.5f, 0.5f,
-                    TimeUtil.calculateHourDegree(Calendar.getInstance()), 1);
-            //分指针阴影
-            drawImage(canvas, drawableMinuteShadow, 0.5f, 0.5f,
-                    TimeUtil.calculateMinuteDegree(Calendar.getInstance()), 1);
-            //分针
-            drawImage(canvas, drawableMinute, 0.5f, 0.5f,
-                    TimeUtil.calculateMinuteDegree(Calendar.getInstance()), 1);
-            //秒指针阴影
-            drawImage(canvas, drawableSecondShadow, 0.5f, 0.5f,
-                    TimeUtil.calculateSecondDegree(Calendar.getInstance()), 1);
-            //秒针
-            drawImage(canvas, drawableSecond, 0.5f, 0.5f,
-                    TimeUtil.calculateSecondDegree(Calendar.getInstance()), 1);
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            mBackgroundLayer.setSurfaceSize(width, height);
+            mHandSpriteCache.setSurfaceSize(width);
+            mAmbientFrameRenderer.setSurfaceSize(width, height);
+        }
+
+        @Override
+        public void onPropertiesChanged(Bundle properties) {
+            super.onPropertiesChanged(properties);
+            mAmbientFrameRenderer.setProperties(
+                    properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false),
+                    properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false));
+        }
+
+        @Override
+        public void onTimeTick() {
+            super.onTimeTick();
+            //微光模式下每分钟刷新一次
+            invalidate();
+        }
+
+        @Override
+        public void onAmbientModeChanged(boolean inAmbientMode) {
+            super.onAmbientModeChanged(inAmbientMode);
+            mBackgroundLayer.setAmbient(inAmbientMode);
+            mDirtyRegionRenderer.setAmbient(inAmbientMode);
+            mFrameScheduler.onStateChanged();
+        }
+
+        @Override
+        public void onDestroy() {
+            mScope.close();
+            mFrameScheduler.release();
+            mBackgroundLayer.release();
+            mDirtyRegionRenderer.release();
+            mHandSpriteCache.release();
+            mAmbientFrameRenderer.release();
+            super.onDestroy();
         }
 
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
+            if (visible) {
+                registerReceiver();
+                // 不可见期间时区可能已经变化
+                TimeUtil.invalidateTimeZone();
+            } else {
+                unregisterReceiver();
+            }
             invalidate();   //需要刷新，避免显示空白
-            updateTimer();
+            mFrameScheduler.onStateChanged();
+        }
+
+        private void registerReceiver() {
+            if (mRegisteredTimeZoneReceiver) {
+                return;
+            }
+            mRegisteredTimeZoneReceiver = true;
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            WatchFacePointerService.this.registerReceiver(mTimeZoneReceiver, filter);
+        }
+
+        private void unregisterReceiver() {
+            if (!mRegisteredTimeZoneReceiver) {
+                return;
+            }
+            mRegisteredTimeZoneReceiver = false;
+            WatchFacePointerService.this.unregisterReceiver(mTimeZoneReceiver);
+        }
+
+        @Nullable
+        private Drawable toDrawable(@Nullable Bitmap bitmap) {
+            return bitmap == null ? null : new BitmapDrawable(getResources(), bitmap);
         }
 
         protected void drawImage(@NonNull Canvas canvas, @Nullable Drawable drawable,
@@ -134,94 +312,8 @@ public class WatchFacePointerService extends CanvasWatchFaceService {
             drawable.draw(canvas);
             canvas.restore();
         }
-
-        protected Drawable getAssetDrawable(String path, String name) {
-            if (TextUtils.isEmpty(name)) {
-                return null;
-            } else if (path == null) {
-                return getDrawableFromPath(PREFIX_ASSETS + getFaceResourceDir() + File.separator + name + PNG_SUFFIX);
-            } else if (path.startsWith(PREFIX_ASSETS)) {
-                path = path.replace(PREFIX_ASSETS, "");
-                return getDrawableFromPath(PREFIX_ASSETS + getFaceResourceDir() + File.separator + path + PNG_SUFFIX);
-            }
-            return getDrawableFromPath(path);
-        }
-
-        private Drawable getDrawableFromAssets(String path) {
-            if (path != null && path.startsWith(PREFIX_ASSETS)) {
-                path = path.replace(PREFIX_ASSETS, "");
-                InputStream is = null;
-                try {
-                    is = getApplicationContext().getAssets().open(path);
-                    return Drawable.createFromResourceStream(getResources(), null, is, null);
-                } catch (IOException e) {
-                    Log.w("Manley", "Error get drawable from assets path = " + path);
-                } finally {
-                    if (is != null) {
-                        try {
-                            is.close();
-                        } catch (IOException ignored) {
-                        }
-                    }
-                }
-            }
-            return null;
-        }
-
-        private String getFaceResourceDir() {
-            return ASSETS_FACES;
-        }
-
-        protected Drawable getDrawableFromPath(String path) {
-            if (TextUtils.isEmpty(path)) {
-                return null;
-            }
-            if (path.startsWith(PREFIX_ASSETS)) {
-                return getDrawableFromAssets(path);
-            }
-            return Drawable.createFromPath(path);
-        }
-
-        private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = mUpdateRateMillis
-                        - (timeMs % mUpdateRateMillis);
-                mHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
-        }
-
-        private boolean shouldTimerBeRunning() {
-            return isVisible() && !isInAmbientMode();
-        }
-
-        private void updateTimer() {
-            mHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
-        }
     }
 
-    private static class EngineHandler extends Handler {
-        private final WeakReference<MyEngine> mWeakReference;
-
-        public EngineHandler(MyEngine reference) {
-            mWeakReference = new WeakReference<>(reference);
-        }
-
-        @Override
-        public void handleMessage(Message msg) {
-            MyEngine engine = mWeakReference.get();
-            if (engine == null) {
-                return;
-            }
-            if (msg.what == MSG_UPDATE_TIME) {
-                engine.handleUpdateTimeMessage();
-            }
-        }
-    }
 
     private float getBaseSize() {
         return 400;
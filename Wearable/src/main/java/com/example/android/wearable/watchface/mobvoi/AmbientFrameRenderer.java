@@ -0,0 +1,219 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * 微光模式整帧预渲染
+ * 微光模式下表盘每分钟只刷新一次，这里把微光背景和时针、分针每分钟合成一次，
+ * 缓存成一张屏幕大小的图，onTimeTick 触发的每次绘制只需要一次 drawBitmap。
+ * 低位微光（PROPERTY_LOW_BIT_AMBIENT）时合成不做抗锯齿和过滤，并把每个颜色通道二值化；
+ * 防烧屏（PROPERTY_BURN_IN_PROTECTION）时每分钟把缓存图整体平移几个像素，不重新合成
+ */
+public class AmbientFrameRenderer {
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    /**
+     * 防烧屏平移的位置，每分钟换一个，单位为 {@link #getShiftStep()}
+     */
+    private static final int[][] BURN_IN_SHIFTS = {
+            {0, 0}, {1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}
+    };
+
+    private final AssetCache mAssetCache;
+    private final float mBaseSize;
+    private final String mBackgroundName;
+    private final String mHourName;
+    private final String mMinuteName;
+    private final float[] mHandDegrees = new float[3];
+    private final Matrix mMatrix = new Matrix();
+    private final Paint mFilterPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+    private volatile Images mImages;
+    private Bitmap mFrame;
+    private Canvas mFrameCanvas;
+    private int[] mPixels;
+    private int mWidth;
+    private int mHeight;
+    private boolean mLowBitAmbient;
+    private boolean mBurnInProtection;
+    // 缓存图对应的本地时间分钟数
+    private long mFrameMinute = Long.MIN_VALUE;
+
+    /**
+     * @param baseSize       图片按 surface 宽度 / baseSize 缩放，与表盘的 getBaseSize 一致
+     * @param backgroundName assets/face 下的微光背景，不带后缀
+     * @param hourName       微光时针
+     * @param minuteName     微光分针
+     */
+    public AmbientFrameRenderer(@NonNull AssetCache assetCache, float baseSize,
+                                @NonNull String backgroundName, @NonNull String hourName,
+                                @NonNull String minuteName) {
+        mAssetCache = assetCache;
+        mBaseSize = baseSize;
+        mBackgroundName = backgroundName;
+        mHourName = hourName;
+        mMinuteName = minuteName;
+    }
+
+    /**
+     * 解码微光图片，耗时操作，需要在工作线程调用
+     */
+    @WorkerThread
+    public void load() {
+        Bitmap background = mAssetCache.getBitmap(AssetCache.getFacePath(mBackgroundName), 0, 0);
+        Bitmap hour = mAssetCache.getBitmap(AssetCache.getFacePath(mHourName), 0, 0);
+        Bitmap minute = mAssetCache.getBitmap(AssetCache.getFacePath(mMinuteName), 0, 0);
+        if (background != null && hour != null && minute != null) {
+            mImages = new Images(background, hour, minute);
+        }
+    }
+
+    public boolean isLoaded() {
+        return mImages != null;
+    }
+
+    /**
+     * 在 onSurfaceChanged 中调用
+     */
+    public void setSurfaceSize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        releaseFrame();
+    }
+
+    /**
+     * 在 onPropertiesChanged 中调用
+     */
+    public void setProperties(boolean lowBitAmbient, boolean burnInProtection) {
+        if (lowBitAmbient != mLowBitAmbient) {
+            mLowBitAmbient = lowBitAmbient;
+            invalidate();
+        }
+        mBurnInProtection = burnInProtection;
+    }
+
+    /**
+     * 下一次绘制时重新合成，例如时区变化后
+     */
+    public void invalidate() {
+        mFrameMinute = Long.MIN_VALUE;
+    }
+
+    /**
+     * 绘制微光帧，分钟变化时重新合成
+     *
+     * @return 图片还没有加载完成时返回 false，由调用方按原来的方式绘制
+     */
+    public boolean draw(@NonNull Canvas canvas, long timeMs) {
+        Images images = mImages;
+        if (images == null || mWidth <= 0 || mHeight <= 0) {
+            return false;
+        }
+        long minute = Math.floorDiv(timeMs + TimeUtil.getZoneOffset(timeMs), MILLIS_PER_MINUTE);
+        if (mFrame == null) {
+            mFrame = BitmapPool.getInstance().get(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            mFrameCanvas = new Canvas(mFrame);
+            mFrameMinute = Long.MIN_VALUE;
+        }
+        if (minute != mFrameMinute) {
+            compose(images, timeMs - Math.floorMod(timeMs, MILLIS_PER_MINUTE));
+            mFrameMinute = minute;
+        }
+        if (mBurnInProtection) {
+            int[] shift = BURN_IN_SHIFTS[(int) Math.floorMod(minute, BURN_IN_SHIFTS.length)];
+            int step = getShiftStep();
+            canvas.drawColor(Color.BLACK);
+            canvas.drawBitmap(mFrame, shift[0] * step, shift[1] * step, null);
+        } else {
+            canvas.drawBitmap(mFrame, 0, 0, null);
+        }
+        return true;
+    }
+
+    /**
+     * 在 onDestroy 中调用，图片由 {@link AssetCache} 管理，这里只释放缓存帧
+     */
+    public void release() {
+        releaseFrame();
+        mImages = null;
+    }
+
+    private void compose(Images images, long minuteStartMs) {
+        TimeUtil.calculateHandDegrees(minuteStartMs, mHandDegrees);
+        Paint paint = mLowBitAmbient ? null : mFilterPaint;
+        mFrameCanvas.drawColor(Color.BLACK);
+        drawCentered(images.background, mWidth / (float) images.background.getWidth(), 0, paint);
+        float scale = mWidth / mBaseSize;
+        drawCentered(images.hour, scale, mHandDegrees[TimeUtil.INDEX_HOUR], paint);
+        drawCentered(images.minute, scale, mHandDegrees[TimeUtil.INDEX_MINUTE], paint);
+        if (mLowBitAmbient) {
+            toLowBit();
+        }
+    }
+
+    /**
+     * 以 surface 中心为中心缩放、旋转后绘制，缩放和旋转合并为一次变换
+     */
+    private void drawCentered(Bitmap bitmap, float scale, float degrees, Paint paint) {
+        float center = mWidth * 0.5f;
+        mMatrix.setTranslate(-bitmap.getWidth() / 2f, -bitmap.getHeight() / 2f);
+        mMatrix.postScale(scale, scale);
+        mMatrix.postRotate(degrees);
+        mMatrix.postTranslate(center, center);
+        mFrameCanvas.drawBitmap(bitmap, mMatrix, paint);
+    }
+
+    /**
+     * 每个颜色通道按 128 二值化，低位微光屏幕只能显示这几种颜色
+     */
+    private void toLowBit() {
+        int count = mWidth * mHeight;
+        if (mPixels == null || mPixels.length != count) {
+            mPixels = new int[count];
+        }
+        mFrame.getPixels(mPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+        for (int i = 0; i < count; i++) {
+            int pixel = mPixels[i];
+            int red = (pixel & 0x800000) != 0 ? 0xff0000 : 0;
+            int green = (pixel & 0x8000) != 0 ? 0xff00 : 0;
+            int blue = (pixel & 0x80) != 0 ? 0xff : 0;
+            mPixels[i] = 0xff000000 | red | green | blue;
+        }
+        mFrame.setPixels(mPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+    }
+
+    private int getShiftStep() {
+        // 约为屏幕宽度的 1%，454 像素的屏幕平移 4 像素
+        return Math.max(1, mWidth / 100);
+    }
+
+    private void releaseFrame() {
+        if (mFrame != null) {
+            BitmapPool.getInstance().put(mFrame);
+            mFrame = null;
+            mFrameCanvas = null;
+        }
+        mPixels = null;
+        mFrameMinute = Long.MIN_VALUE;
+    }
+
+    private static class Images {
+        final Bitmap background;
+        final Bitmap hour;
+        final Bitmap minute;
+
+        Images(Bitmap background, Bitmap hour, Bitmap minute) {
+            this.background = background;
+            this.hour = hour;
+            this.minute = minute;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+/**
+ * 进程内共享的表盘图片缓存
+ * 以资源路径 + 目标像素尺寸为 key 缓存解码后的 Bitmap，按占用字节数做 LRU 淘汰，
+ * 切换表盘时同一张图片只解码一次。
+ * assets/face 下的图片优先从 {@link AssetPack} 图片包读取，不在包中的再解码 png
+ */
+public class AssetCache {
+    private static final String TAG = "AssetCache";
+    public static final String PNG_SUFFIX = ".png";
+    public static final String ASSETS_FACES = "face";
+    public static final String PREFIX_ASSETS = "assets:///";
+    /**
+     * 缓存上限为进程可用内存的 1/8
+     */
+    private static final int MAX_MEMORY_FRACTION = 8;
+
+    private static volatile AssetCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mCache;
+    @Nullable
+    private final AssetPack mAssetPack;
+    // 原始图片尺寸，按 surface 尺寸计算目标尺寸时使用
+    private final HashMap<String, Point> mSourceSizes = new HashMap<>();
+
+    public static AssetCache getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (AssetCache.class) {
+                if (sInstance == null) {
+                    long maxBytes = Runtime.getRuntime().maxMemory() / MAX_MEMORY_FRACTION;
+                    sInstance = new AssetCache(context.getApplicationContext(),
+                            (int) Math.min(maxBytes, Integer.MAX_VALUE));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private AssetCache(Context context, int maxBytes) {
+        mContext = context;
+        mCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        mAssetPack = AssetPack.open(context, AssetPack.DEFAULT_PACK);
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                BitmapPool.getInstance().trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                BitmapPool.getInstance().trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    /**
+     * 获取 assets/face 下的图片，按原始尺寸解码
+     *
+     * @param path 资源路径，为空时使用 name 拼出 face 目录下的 png
+     * @param name 图片名，不带后缀
+     */
+    @Nullable
+    public Drawable getAssetDrawable(String path, String name) {
+        if (TextUtils.isEmpty(name)) {
+            return null;
+        } else if (path == null) {
+            return getDrawableFromPath(getFacePath(name));
+        } else if (path.startsWith(PREFIX_ASSETS)) {
+            path = path.replace(PREFIX_ASSETS, "");
+            return getDrawableFromPath(PREFIX_ASSETS + ASSETS_FACES + File.separator + path + PNG_SUFFIX);
+        }
+        return getDrawableFromPath(path);
+    }
+
+    /**
+     * assets/face 目录下 png 图片的完整路径
+     *
+     * @param name 图片名，不带后缀
+     */
+    public static String getFacePath(String name) {
+        return PREFIX_ASSETS + ASSETS_FACES + File.separator + name + PNG_SUFFIX;
+    }
+
+    /**
+     * 获取图片，每次返回新的 Drawable，底层 Bitmap 在进程内共享，调用方不能 recycle
+     */
+    @Nullable
+    public Drawable getDrawableFromPath(String path) {
+        Bitmap bitmap = getBitmap(path, 0, 0);
+        if (bitmap == null) {
+            return null;
+        }
+        // 与 Drawable.createFromResourceStream / createFromPath 的密度处理保持一致
+        Resources res = path.startsWith(PREFIX_ASSETS) ? mContext.getResources() : null;
+        return new BitmapDrawable(res, bitmap);
+    }
+
+    /**
+     * 获取指定像素尺寸的图片
+     *
+     * @param targetWidth  目标宽度，小于等于 0 时使用原始尺寸
+     * @param targetHeight 目标高度，小于等于 0 时使用原始尺寸
+     */
+    @Nullable
+    public Bitmap getBitmap(String path, int targetWidth, int targetHeight) {
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            targetWidth = 0;
+            targetHeight = 0;
+        }
+        String key = path + '@' + targetWidth + 'x' + targetHeight;
+        Bitmap bitmap = mCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        bitmap = decode(path, getSampleSize(path, targetWidth, targetHeight));
+        if (bitmap == null) {
+            return null;
+        }
+        if (targetWidth > 0 && (bitmap.getWidth() != targetWidth
+                || bitmap.getHeight() != targetHeight)) {
+            // 采样后只剩一次高质量缩放，中间结果不缓存
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+            BitmapPool.getInstance().put(bitmap);
+            bitmap = scaled;
+        }
+        mCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 按 surface 尺寸获取图片，直接解码到最终绘制的像素尺寸，绘制时不需要再缩放。
+     * 尺寸计算与表盘的 drawImage 一致：原始尺寸 × surfaceWidth / baseSize。
+     * 不同 surface 尺寸的结果分别缓存，尺寸变化时只有用到的图片会按新尺寸重新解码
+     *
+     * @param baseSize 设计稿尺寸，即表盘的 getBaseSize
+     */
+    @Nullable
+    public Bitmap getScaledBitmap(String path, int surfaceWidth, float baseSize) {
+        Point size = getSourceSize(path);
+        if (size == null || surfaceWidth <= 0) {
+            return null;
+        }
+        float scale = surfaceWidth / baseSize;
+        return getBitmap(path, Math.max(1, Math.round(size.x * scale)),
+                Math.max(1, Math.round(size.y * scale)));
+    }
+
+    /**
+     * 把调用方生成的图片缩放到目标尺寸并缓存，例如按 surface 尺寸缩放合成好的指针
+     *
+     * @param key 原图的 key，结果以 key@宽x高 缓存
+     */
+    @NonNull
+    public Bitmap getScaledBitmap(String key, @NonNull Bitmap source, int targetWidth,
+                                  int targetHeight) {
+        if (source.getWidth() == targetWidth && source.getHeight() == targetHeight) {
+            return source;
+        }
+        String scaledKey = key + '@' + targetWidth + 'x' + targetHeight;
+        Bitmap bitmap = mCache.get(scaledKey);
+        if (bitmap == null) {
+            bitmap = Bitmap.createScaledBitmap(source, targetWidth, targetHeight, true);
+            mCache.put(scaledKey, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 按 key 读取由调用方自行生成的图片，例如拼好的图集
+     */
+    @Nullable
+    public Bitmap getCachedBitmap(String key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * 缓存调用方自行生成的图片，与解码的图片共用同一个容量上限
+     */
+    public void putBitmap(String key, Bitmap bitmap) {
+        mCache.put(key, bitmap);
+    }
+
+    /**
+     * 按原始尺寸解码但不放入缓存，用于只作为中间结果的图片
+     */
+    @Nullable
+    public Bitmap decodeBitmap(String path) {
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+        return decode(path, 1);
+    }
+
+    /**
+     * 原始像素尺寸，只读取文件头，结果缓存
+     */
+    @Nullable
+    private Point getSourceSize(String path) {
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+        synchronized (mSourceSizes) {
+            Point size = mSourceSizes.get(path);
+            if (size != null) {
+                return size;
+            }
+        }
+        String name = getPackName(path);
+        Point size = null;
+        if (name != null && mAssetPack != null && mAssetPack.contains(name)) {
+            size = new Point(mAssetPack.getWidth(name), mAssetPack.getHeight(name));
+        } else {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decode(path, options);
+            if (options.outWidth > 0 && options.outHeight > 0) {
+                size = new Point(options.outWidth, options.outHeight);
+            }
+        }
+        if (size != null) {
+            synchronized (mSourceSizes) {
+                mSourceSizes.put(path, size);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 不超过目标尺寸的最大 2 的幂采样率，图片包中的图片不需要解码，不做采样
+     */
+    private int getSampleSize(String path, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        String name = getPackName(path);
+        if (name != null && mAssetPack != null && mAssetPack.contains(name)) {
+            return 1;
+        }
+        Point size = getSourceSize(path);
+        if (size == null) {
+            return 1;
+        }
+        int sampleSize = 1;
+        while (size.x / (sampleSize * 2) >= targetWidth
+                && size.y / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private Bitmap decode(String path, int sampleSize) {
+        String name = getPackName(path);
+        if (name != null && mAssetPack != null && mAssetPack.contains(name)) {
+            return mAssetPack.decode(name);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        // 可变的图片不再使用后才能放回 BitmapPool
+        options.inMutable = true;
+        Point size = getSourceSize(path);
+        if (size != null) {
+            BitmapPool.getInstance().prepareDecode(options,
+                    (size.x + sampleSize - 1) / sampleSize, (size.y + sampleSize - 1) / sampleSize);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = decode(path, options);
+        } catch (IllegalArgumentException e) {
+            // inBitmap 不兼容（例如 png 实际解码为其它格式），放回池中后不复用重新解码
+            BitmapPool.getInstance().put(options.inBitmap);
+            options.inBitmap = null;
+            return decode(path, options);
+        }
+        if (bitmap == null) {
+            BitmapPool.getInstance().put(options.inBitmap);
+        }
+        return bitmap;
+    }
+
+    private Bitmap decode(String path, @Nullable BitmapFactory.Options options) {
+        if (!path.startsWith(PREFIX_ASSETS)) {
+            return BitmapFactory.decodeFile(path, options);
+        }
+        String assetPath = path.replace(PREFIX_ASSETS, "");
+        InputStream is = null;
+        try {
+            is = mContext.getAssets().open(assetPath);
+            return BitmapFactory.decodeResourceStream(mContext.getResources(), null, is, null,
+                    options);
+        } catch (IOException e) {
+            Log.w(TAG, "Error get drawable from assets path = " + assetPath);
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * assets:///face/xxx.png 在图片包中的名字 xxx，其它路径返回 null
+     */
+    @Nullable
+    private static String getPackName(String path) {
+        if (!path.startsWith(PREFIX_ASSETS)) {
+            return null;
+        }
+        String assetPath = path.substring(PREFIX_ASSETS.length());
+        String prefix = ASSETS_FACES + File.separator;
+        if (!assetPath.startsWith(prefix) || !assetPath.endsWith(PNG_SUFFIX)) {
+            return null;
+        }
+        return assetPath.substring(prefix.length(), assetPath.length() - PNG_SUFFIX.length());
+    }
+
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    public int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /**
+     * 当前占用字节数
+     */
+    public int size() {
+        return mCache.size();
+    }
+
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * 缓存统计，用于现场版本排查
+     */
+    public String getStats() {
+        return "AssetCache[hit=" + hitCount() + ", miss=" + missCount()
+                + ", eviction=" + evictionCount() + ", bytes=" + size() + "/" + maxSize() + "]";
+    }
+}
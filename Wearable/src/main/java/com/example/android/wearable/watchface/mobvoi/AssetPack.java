@@ -0,0 +1,176 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * 表盘图片包
+ * 编译时由 Wearable/build.gradle 的 packFaceAssets 任务把 assets/face 下的 png 解码，
+ * 按表盘的 getBaseSize（400 或 456）缩小到不超过基准尺寸，再由 FacePackWriter 转成
+ * 预乘透明度的 RGBA 像素，连同索引写入一个不压缩的 assets/face.pack。
+ * 运行时整个文件通过 FileChannel.map 映射到内存，不需要逐个打开文件流和解码 png，
+ * 但创建 Bitmap 时仍要用 copyPixelsFromBuffer 把像素复制一次。
+ * 不压缩是为了能映射，代价是 APK 变大：像素约 8.5MB，png 约 0.5MB
+ * <pre>
+ * 文件格式（大端）：
+ * "WFPK" | int version | int count
+ * count 个索引项：short nameLength | name (UTF-8) | int width | int height | int offset
+ * 像素数据：每张图片 width * height * 4 字节，按 R G B A 排列，offset 按 4 字节对齐
+ * </pre>
+ */
+public class AssetPack {
+    private static final String TAG = "AssetPack";
+    public static final String DEFAULT_PACK = "face.pack";
+
+    private static final int MAGIC = 0x5746504B; // "WFPK"
+    private static final int VERSION = 1;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final ByteBuffer mBuffer;
+    private final HashMap<String, Entry> mEntries;
+
+    private AssetPack(ByteBuffer buffer, HashMap<String, Entry> entries) {
+        mBuffer = buffer;
+        mEntries = entries;
+    }
+
+    /**
+     * 映射 assets 下的图片包，文件不存在、被压缩或格式不对时返回 null
+     */
+    @Nullable
+    public static AssetPack open(@NonNull Context context, @NonNull String assetName) {
+        // 映射建立后文件描述符可以关闭，映射区域仍然有效
+        try (AssetFileDescriptor afd = context.getAssets().openFd(assetName);
+             FileInputStream input = new FileInputStream(afd.getFileDescriptor());
+             FileChannel channel = input.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getLength());
+            return wrap(buffer);
+        } catch (IOException | RuntimeException e) {
+            // openFd 对压缩过的文件会抛出 FileNotFoundException
+            Log.w(TAG, "Unable to open asset pack " + assetName + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * 读取内存中的图片包，格式不对时抛出 IllegalArgumentException
+     */
+    @VisibleForTesting
+    @NonNull
+    static AssetPack wrap(@NonNull ByteBuffer buffer) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return new AssetPack(buffer, readIndex(buffer));
+    }
+
+    private static HashMap<String, Entry> readIndex(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("bad magic");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported version " + version);
+        }
+        int count = buffer.getInt(8);
+        HashMap<String, Entry> entries = new HashMap<>(count * 2);
+        ByteBuffer index = buffer.duplicate();
+        index.position(12);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[index.getShort()];
+            index.get(name);
+            int width = index.getInt();
+            int height = index.getInt();
+            int offset = index.getInt();
+            long end = offset + (long) width * height * BYTES_PER_PIXEL;
+            if (width <= 0 || height <= 0 || offset < 0 || end > buffer.capacity()) {
+                throw new IllegalArgumentException("bad entry " + i);
+            }
+            entries.put(new String(name, StandardCharsets.UTF_8),
+                    new Entry(width, height, offset));
+        }
+        return entries;
+    }
+
+    /**
+     * 图片名，与 assets/face 下的文件名相同，不带后缀
+     */
+    @NonNull
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(mEntries.keySet());
+    }
+
+    public boolean contains(@NonNull String name) {
+        return mEntries.containsKey(name);
+    }
+
+    public int getWidth(@NonNull String name) {
+        Entry entry = mEntries.get(name);
+        return entry == null ? 0 : entry.width;
+    }
+
+    public int getHeight(@NonNull String name) {
+        Entry entry = mEntries.get(name);
+        return entry == null ? 0 : entry.height;
+    }
+
+    /**
+     * 图片的像素数据，是映射区域上的切片，读取时才从 APK 中载入对应的页
+     */
+    @Nullable
+    public ByteBuffer getPixels(@NonNull String name) {
+        Entry entry = mEntries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer pixels = mBuffer.duplicate();
+        pixels.position(entry.offset);
+        pixels.limit(entry.offset + entry.width * entry.height * BYTES_PER_PIXEL);
+        return pixels.slice();
+    }
+
+    /**
+     * 用图片包中的像素创建 ARGB_8888 Bitmap，可以在任意线程调用，
+     * 优先复用 {@link BitmapPool} 中的图片
+     */
+    @Nullable
+    public Bitmap decode(@NonNull String name) {
+        Entry entry = mEntries.get(name);
+        ByteBuffer pixels = getPixels(name);
+        if (entry == null || pixels == null) {
+            return null;
+        }
+        Bitmap bitmap = BitmapPool.getInstance().get(entry.width, entry.height,
+                Bitmap.Config.ARGB_8888);
+        bitmap.copyPixelsFromBuffer(pixels);
+        return bitmap;
+    }
+
+    private static class Entry {
+        final int width;
+        final int height;
+        final int offset;
+
+        Entry(int width, int height, int offset) {
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 静态背景图层
+ * 按 surface 尺寸和微光模式把背景预先绘制到一张屏幕大小的 Bitmap 上，
+ * 之后每帧只需要一次 drawBitmap，不再重复解码和缩放背景图
+ */
+public class BackgroundLayer {
+
+    public interface Renderer {
+        /**
+         * 绘制背景，只在图层失效后调用一次
+         *
+         * @param canvas  与屏幕等大的离屏画布
+         * @param ambient 是否处于微光模式
+         */
+        void onRenderBackground(@NonNull Canvas canvas, int width, int height, boolean ambient);
+    }
+
+    private final Renderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private int mWidth;
+    private int mHeight;
+    private boolean mAmbient;
+    private boolean mValid;
+
+    public BackgroundLayer(@NonNull Renderer renderer) {
+        mRenderer = renderer;
+    }
+
+    /**
+     * 在 onSurfaceChanged 中调用
+     */
+    public void setSurfaceSize(int width, int height) {
+        if (width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            mValid = false;
+        }
+    }
+
+    /**
+     * 在 onAmbientModeChanged 中调用
+     */
+    public void setAmbient(boolean ambient) {
+        if (ambient != mAmbient) {
+            mAmbient = ambient;
+            mValid = false;
+        }
+    }
+
+    /**
+     * 背景内容变化时调用，下一帧重新绘制
+     */
+    public void invalidate() {
+        mValid = false;
+    }
+
+    public void draw(@NonNull Canvas canvas) {
+        // 还没有收到 onSurfaceChanged 时以画布尺寸为准
+        setSurfaceSize(canvas.getWidth(), canvas.getHeight());
+        if (mWidth <= 0 || mHeight <= 0) {
+            return;
+        }
+        if (!mValid) {
+            render();
+        }
+        canvas.drawBitmap(mBitmap, 0, 0, null);
+    }
+
+    private void render() {
+        if (mBitmap == null || mBitmap.getWidth() != mWidth || mBitmap.getHeight() != mHeight) {
+            release();
+            mBitmap = BitmapPool.getInstance().get(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        mRenderer.onRenderBackground(mCanvas, mWidth, mHeight, mAmbient);
+        mValid = true;
+    }
+
+    /**
+     * 在 onDestroy 中调用
+     */
+    public void release() {
+        if (mBitmap != null) {
+            BitmapPool.getInstance().put(mBitmap);
+            mBitmap = null;
+            mCanvas = null;
+        }
+        mValid = false;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * 进程内共享的 Bitmap 复用池
+ * 中间结果（序列帧、指针原图、缩放前的原图）和表盘自己的缓存图（背景层、脏区域合成图、微光帧、
+ * 指针缓存）不再使用后放回池中，下一次解码（inBitmap）或创建同尺寸的图片时直接复用，
+ * 切换表盘时不再集中分配、释放大块内存。
+ * 按尺寸匹配：取字节数足够且最接近的一张，最多浪费一倍内存；
+ * 超过容量上限时先淘汰最早放入的，收到 onTrimMemory 时释放全部或一半。
+ * 放入池中的图片调用方不能再使用，{@link AssetCache} 中共享的图片不能放入
+ */
+public class BitmapPool {
+    private static final String TAG = "BitmapPool";
+    /**
+     * 默认上限为进程可用内存的 1/16
+     */
+    private static final int MAX_MEMORY_FRACTION = 16;
+
+    private static volatile BitmapPool sInstance;
+
+    // 按放入顺序排列，头部最早
+    private final ArrayList<Bitmap> mBitmaps = new ArrayList<>();
+    private long mMaxBytes;
+    private long mBytes;
+
+    // 统计
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    public static BitmapPool getInstance() {
+        if (sInstance == null) {
+            synchronized (BitmapPool.class) {
+                if (sInstance == null) {
+                    sInstance = new BitmapPool(
+                            Runtime.getRuntime().maxMemory() / MAX_MEMORY_FRACTION);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 修改容量上限，超出的部分立即淘汰
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * 获取一张指定尺寸、内容为全透明的可变图片，池中没有合适的时新建
+     */
+    @NonNull
+    public Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.reconfigure(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * 解码前调用，池中有足够大的图片时设置为 inBitmap，解码结果直接写入这张图片
+     *
+     * @param width  解码后的宽度，即原始宽度 / inSampleSize
+     * @param height 解码后的高度
+     */
+    public void prepareDecode(@NonNull BitmapFactory.Options options, int width, int height) {
+        Bitmap.Config config = options.inPreferredConfig != null
+                ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap != null) {
+            options.inMutable = true;
+            options.inBitmap = bitmap;
+        }
+    }
+
+    /**
+     * 放回一张不再使用的图片，不可变或已经 recycle 的图片直接忽略，不会 recycle。
+     * 不可变的图片可能还在别处使用（例如 AssetCache 缓存的图片），
+     * 调用方自己持有的不可变中间结果需要自行 recycle
+     */
+    public void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        synchronized (this) {
+            if (bytes > mMaxBytes) {
+                bitmap.recycle();
+                return;
+            }
+            mBitmaps.add(bitmap);
+            mBytes += bytes;
+            mPutCount++;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * 在 onTrimMemory 中调用
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mBytes / 2);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "trimMemory " + level + ", " + getStats());
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getPutCount() {
+        return mPutCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * 当前池中图片占用的字节数
+     */
+    public synchronized long getSize() {
+        return mBytes;
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized String getStats() {
+        return "BitmapPool[hit=" + mHitCount + ", miss=" + mMissCount + ", put=" + mPutCount
+                + ", eviction=" + mEvictionCount + ", count=" + mBitmaps.size()
+                + ", bytes=" + mBytes + "/" + mMaxBytes + "]";
+    }
+
+    /**
+     * 取出字节数足够、且不超过需要的两倍的最小一张
+     */
+    @Nullable
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        long needed = (long) width * height * getBytesPerPixel(config);
+        int best = -1;
+        long bestBytes = Long.MAX_VALUE;
+        for (int i = 0; i < mBitmaps.size(); i++) {
+            int bytes = mBitmaps.get(i).getAllocationByteCount();
+            if (bytes >= needed && bytes <= needed * 2 && bytes < bestBytes) {
+                best = i;
+                bestBytes = bytes;
+            }
+        }
+        if (best < 0) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        mBytes -= bestBytes;
+        return mBitmaps.remove(best);
+    }
+
+    private void trimToSize(long maxBytes) {
+        while (mBytes > maxBytes && !mBitmaps.isEmpty()) {
+            Bitmap eldest = mBitmaps.remove(0);
+            mBytes -= eldest.getAllocationByteCount();
+            eldest.recycle();
+            mEvictionCount++;
+        }
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
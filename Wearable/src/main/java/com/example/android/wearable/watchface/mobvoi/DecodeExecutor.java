@@ -0,0 +1,306 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内共享的后台线程池，用于图片解码、指针缓存生成等耗时任务
+ * 线程数固定且不超过 CPU 核数 - 1，给主线程留出一个核；任务按优先级排队，
+ * 同一优先级按提交顺序执行。每个任务返回一个 {@link Request}，既可以当 Future 等待，
+ * 也可以在提交时传入回调，结果在主线程逐个送达，表盘拿到关键图片（指针、动画第一帧）
+ * 就可以开始绘制，不必等所有图片解码完成。
+ * 线程空闲一段时间后自动退出，表盘不解码图片时不占用线程。
+ * 每个 Engine 在 onCreate 中创建一个 {@link Scope}，通过它提交任务，onDestroy 时 close，
+ * 取消这个 Engine 所有未完成的任务；预览、表盘选择器反复创建 Engine 也不会再多出线程
+ */
+public class DecodeExecutor {
+    private static final String TAG = "DecodeExecutor";
+
+    /**
+     * 决定表盘能否开始绘制的图片，例如指针、动画第一帧
+     */
+    public static final int PRIORITY_CRITICAL = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    /**
+     * 装饰、微光模式等暂时用不到的图片
+     */
+    public static final int PRIORITY_LOW = 2;
+
+    private static final int MAX_THREADS = 3;
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private static volatile DecodeExecutor sInstance;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong mSequence = new AtomicLong();
+
+    public interface Callback<T> {
+        /**
+         * 在主线程调用，任务出错时 result 为 null，已取消的任务不会回调
+         */
+        @MainThread
+        void onComplete(@Nullable T result);
+    }
+
+    public static DecodeExecutor getInstance() {
+        if (sInstance == null) {
+            synchronized (DecodeExecutor.class) {
+                if (sInstance == null) {
+                    int cpus = Runtime.getRuntime().availableProcessors();
+                    sInstance = new DecodeExecutor(Math.max(1, Math.min(MAX_THREADS, cpus - 1)));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private DecodeExecutor(int threads) {
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), new DecodeThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交一个任务，可以在任意线程调用
+     *
+     * @param priority {@link #PRIORITY_CRITICAL}、{@link #PRIORITY_NORMAL} 或 {@link #PRIORITY_LOW}
+     * @param callback 结果在主线程送达，不需要时传 null
+     */
+    @NonNull
+    public <T> Request<T> submit(int priority, @NonNull Callable<T> task,
+                                 @Nullable Callback<T> callback) {
+        Request<T> request = new Request<>(task, priority, mSequence.getAndIncrement(), callback,
+                null);
+        // 必须用 execute，submit 会再包一层不能比较优先级的 FutureTask
+        mExecutor.execute(request);
+        return request;
+    }
+
+    /**
+     * 创建一个任务组，一般每个 Engine 一个
+     *
+     * @param name 输出统计时使用，一般为表盘 Service 的类名
+     */
+    @NonNull
+    public Scope newScope(@NonNull String name) {
+        return new Scope(name);
+    }
+
+    /**
+     * 排队中和正在执行的任务数
+     */
+    public int getPendingCount() {
+        return mExecutor.getQueue().size() + mExecutor.getActiveCount();
+    }
+
+    /**
+     * 当前存活的线程数，空闲超时后会减少到 0
+     */
+    public int getThreadCount() {
+        return mExecutor.getPoolSize();
+    }
+
+    public int getMaxThreadCount() {
+        return mExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * 排队中还没有开始执行的任务数
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    public String getStats() {
+        return "DecodeExecutor[threads=" + getThreadCount() + "/" + getMaxThreadCount()
+                + ", active=" + mExecutor.getActiveCount() + ", queued=" + getQueueDepth()
+                + ", completed=" + mExecutor.getCompletedTaskCount() + "]";
+    }
+
+    /**
+     * 一组绑定到同一个生命周期的任务，close 后取消所有未完成的任务
+     */
+    public final class Scope {
+        private final String mName;
+        private final HashSet<Request<?>> mRequests = new HashSet<>();
+        private boolean mClosed;
+
+        private Scope(String name) {
+            mName = name;
+        }
+
+        /**
+         * 与 {@link DecodeExecutor#submit} 相同，close 之后提交的任务直接取消，不会执行
+         */
+        @NonNull
+        public <T> Request<T> submit(int priority, @NonNull Callable<T> task,
+                                     @Nullable Callback<T> callback) {
+            Request<T> request = new Request<>(task, priority, mSequence.getAndIncrement(),
+                    callback, this);
+            synchronized (mRequests) {
+                if (mClosed) {
+                    request.cancel();
+                    return request;
+                }
+                mRequests.add(request);
+            }
+            mExecutor.execute(request);
+            return request;
+        }
+
+        /**
+         * 还没有完成的任务数
+         */
+        public int getPendingCount() {
+            synchronized (mRequests) {
+                return mRequests.size();
+            }
+        }
+
+        /**
+         * 在 onDestroy 中调用，取消所有未完成的任务，正在执行的任务不中断，但结果不再回调
+         */
+        public void close() {
+            ArrayList<Request<?>> requests;
+            synchronized (mRequests) {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+                requests = new ArrayList<>(mRequests);
+                mRequests.clear();
+            }
+            for (int i = 0; i < requests.size(); i++) {
+                requests.get(i).cancel();
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, mName + " closed, cancelled " + requests.size() + ", " + getStats());
+            }
+        }
+
+        private void remove(Request<?> request) {
+            synchronized (mRequests) {
+                mRequests.remove(request);
+            }
+        }
+    }
+
+    public final class Request<T> extends FutureTask<T> implements Comparable<Request<?>> {
+        private final int mPriority;
+        private final long mSequence;
+        @Nullable
+        private final Callback<T> mCallback;
+        @Nullable
+        private final Scope mScope;
+        // 任务已经执行完、回调还没送达时取消，也不再回调
+        private volatile boolean mCancelled;
+
+        private Request(Callable<T> task, int priority, long sequence,
+                        @Nullable Callback<T> callback, @Nullable Scope scope) {
+            super(task);
+            mPriority = priority;
+            mSequence = sequence;
+            mCallback = callback;
+            mScope = scope;
+        }
+
+        public int getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * 取消任务，排队中的任务直接移出队列；正在执行的任务不中断，但结果不再回调
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            mCancelled = true;
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                mExecutor.remove(this);
+            }
+            return cancelled;
+        }
+
+        /**
+         * 等同于 cancel(false)，一般在 onDestroy 中调用
+         */
+        public void cancel() {
+            cancel(false);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled || super.isCancelled();
+        }
+
+        @Override
+        protected void done() {
+            if (mScope != null) {
+                mScope.remove(this);
+            }
+            if (mCallback == null || isCancelled()) {
+                return;
+            }
+            T result = getResultOrNull();
+            mMainHandler.post(() -> {
+                if (!mCancelled) {
+                    mCallback.onComplete(result);
+                }
+            });
+        }
+
+        /**
+         * 已经完成的任务的结果，出错时返回 null
+         */
+        @Nullable
+        private T getResultOrNull() {
+            try {
+                return get();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Decode task failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+        @Override
+        public int compareTo(@NonNull Request<?> other) {
+            if (mPriority != other.mPriority) {
+                return Integer.compare(mPriority, other.mPriority);
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    private static class DecodeThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "WatchFaceDecode-" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 数字字形图集
+ * 按 Paint 的字体、字号把 0-9、':' 以及 AM/PM 预先栅格化到一张 ALPHA_8 图集上，
+ * 绘制时间时只做 drawBitmap，颜色和透明度取自绘制时传入的 Paint，每帧不分配对象。
+ * 同一个图集只应该配合同一种字体和字号使用，字体或字号变化时会整体重建
+ */
+public class DigitAtlas {
+    private static final int GLYPH_COLON = 10;
+    private static final int GLYPH_AM = 11;
+    private static final int GLYPH_PM = 12;
+
+    private final String[] mLabels;
+    private final Rect[] mCells;
+    private final float[] mAdvances;
+    private final Paint mRasterPaint = new Paint();
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+    private Bitmap mAtlas;
+    private int mPadding;
+    private int mBaseline;
+
+    // 生成图集时使用的 Paint 参数
+    private Typeface mTypeface;
+    private float mTextSize;
+    private float mTextScaleX;
+    private float mTextSkewX;
+    private boolean mAntiAlias;
+    private boolean mFakeBold;
+
+    /**
+     * 只包含数字和冒号
+     */
+    public DigitAtlas() {
+        this(null, null);
+    }
+
+    /**
+     * @param amString 上午标识，例如 R.string.digital_am
+     * @param pmString 下午标识
+     */
+    public DigitAtlas(String amString, String pmString) {
+        mLabels = new String[]{"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", ":",
+                amString == null ? "" : amString, pmString == null ? "" : pmString};
+        mCells = new Rect[mLabels.length];
+        for (int i = 0; i < mCells.length; i++) {
+            mCells[i] = new Rect();
+        }
+        mAdvances = new float[mLabels.length];
+    }
+
+    /**
+     * 绘制两位数字，不足两位补 0
+     *
+     * @param y 文字基线
+     * @return 绘制结束的 x 坐标
+     */
+    public float drawTwoDigits(@NonNull Canvas canvas, int value, float x, float y,
+                               @NonNull Paint paint) {
+        ensureAtlas(paint);
+        value = Math.abs(value) % 100;
+        x = drawGlyph(canvas, value / 10, x, y, paint);
+        return drawGlyph(canvas, value % 10, x, y, paint);
+    }
+
+    /**
+     * 绘制非负整数，不补 0
+     *
+     * @return 绘制结束的 x 坐标
+     */
+    public float drawNumber(@NonNull Canvas canvas, int value, float x, float y,
+                            @NonNull Paint paint) {
+        ensureAtlas(paint);
+        value = Math.abs(value);
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            x = drawGlyph(canvas, value / divisor % 10, x, y, paint);
+        }
+        return x;
+    }
+
+    /**
+     * @return 绘制结束的 x 坐标
+     */
+    public float drawColon(@NonNull Canvas canvas, float x, float y, @NonNull Paint paint) {
+        ensureAtlas(paint);
+        return drawGlyph(canvas, GLYPH_COLON, x, y, paint);
+    }
+
+    /**
+     * @return 绘制结束的 x 坐标
+     */
+    public float drawAmPm(@NonNull Canvas canvas, boolean am, float x, float y,
+                          @NonNull Paint paint) {
+        ensureAtlas(paint);
+        return drawGlyph(canvas, am ? GLYPH_AM : GLYPH_PM, x, y, paint);
+    }
+
+    /**
+     * 冒号的宽度
+     */
+    public float getColonWidth(@NonNull Paint paint) {
+        ensureAtlas(paint);
+        return mAdvances[GLYPH_COLON];
+    }
+
+    /**
+     * 两位数字的宽度
+     */
+    public float getTwoDigitsWidth(int value, @NonNull Paint paint) {
+        ensureAtlas(paint);
+        value = Math.abs(value) % 100;
+        return mAdvances[value / 10] + mAdvances[value % 10];
+    }
+
+    public void release() {
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+    }
+
+    private float drawGlyph(Canvas canvas, int glyph, float x, float y, Paint paint) {
+        Rect cell = mCells[glyph];
+        if (!cell.isEmpty()) {
+            mSrc.set(cell);
+            float left = x - mPadding;
+            float top = y - mBaseline;
+            mDst.set(left, top, left + cell.width(), top + cell.height());
+            // ALPHA_8 图集按 paint 的颜色着色
+            canvas.drawBitmap(mAtlas, mSrc, mDst, paint);
+        }
+        return x + mAdvances[glyph];
+    }
+
+    private void ensureAtlas(Paint paint) {
+        if (mAtlas != null
+                && mTypeface == paint.getTypeface()
+                && mTextSize == paint.getTextSize()
+                && mTextScaleX == paint.getTextScaleX()
+                && mTextSkewX == paint.getTextSkewX()
+                && mAntiAlias == paint.isAntiAlias()
+                && mFakeBold == paint.isFakeBoldText()) {
+            return;
+        }
+        mTypeface = paint.getTypeface();
+        mTextSize = paint.getTextSize();
+        mTextScaleX = paint.getTextScaleX();
+        mTextSkewX = paint.getTextSkewX();
+        mAntiAlias = paint.isAntiAlias();
+        mFakeBold = paint.isFakeBoldText();
+        buildAtlas();
+    }
+
+    private void buildAtlas() {
+        Paint raster = mRasterPaint;
+        raster.reset();
+        raster.setTypeface(mTypeface);
+        raster.setTextSize(mTextSize);
+        raster.setTextScaleX(mTextScaleX);
+        raster.setTextSkewX(mTextSkewX);
+        raster.setAntiAlias(mAntiAlias);
+        raster.setFakeBoldText(mFakeBold);
+        raster.setTextAlign(Paint.Align.LEFT);
+        raster.setColor(Color.WHITE);
+
+        // 预留边距，给斜体和描边字形的外溢部分留出空间
+        Paint.FontMetrics metrics = raster.getFontMetrics();
+        mPadding = (int) Math.ceil(mTextSize * 0.1f) + 1;
+        mBaseline = mPadding + (int) Math.ceil(-metrics.top);
+        int cellHeight = mBaseline + (int) Math.ceil(metrics.bottom) + mPadding;
+
+        int atlasWidth = 0;
+        for (int i = 0; i < mLabels.length; i++) {
+            if (mLabels[i].isEmpty()) {
+                mAdvances[i] = 0;
+                mCells[i].setEmpty();
+                continue;
+            }
+            mAdvances[i] = raster.measureText(mLabels[i]);
+            int cellWidth = (int) Math.ceil(mAdvances[i]) + mPadding * 2;
+            mCells[i].set(atlasWidth, 0, atlasWidth + cellWidth, cellHeight);
+            atlasWidth += cellWidth;
+        }
+
+        release();
+        mAtlas = Bitmap.createBitmap(Math.max(atlasWidth, 1), Math.max(cellHeight, 1),
+                Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mAtlas);
+        for (int i = 0; i < mLabels.length; i++) {
+            if (!mCells[i].isEmpty()) {
+                canvas.drawText(mLabels[i], mCells[i].left + mPadding, mBaseline, raster);
+            }
+        }
+    }
+}
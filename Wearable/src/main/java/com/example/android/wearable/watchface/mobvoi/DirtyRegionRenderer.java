@@ -0,0 +1,276 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * 脏区域渲染
+ * 表盘拆成若干元素，每个元素声明自己的绘制区域和依赖的时间单位（秒、分、时、天），
+ * 所有元素先合成到一张屏幕大小的缓存图上，每次刷新只重绘时间单位发生变化的元素所在区域，
+ * 区域内与之重叠的其它元素按添加顺序一起重绘，然后整张缓存图一次 drawBitmap 到屏幕上。
+ * 每帧都会变化且覆盖大面积的内容（例如秒针）适合作为 overlay，直接绘制在缓存图之上。
+ * surface 尺寸、微光模式变化或调用 {@link #invalidate()} 后整体重绘。
+ * 执行 adb shell setprop log.tag.DirtyRegion DEBUG 后重启表盘，可以看到每帧重绘的区域
+ */
+public class DirtyRegionRenderer {
+    private static final String TAG = "DirtyRegion";
+
+    /**
+     * 只在整体重绘时绘制，例如背景
+     */
+    public static final long PERIOD_STATIC = 0;
+    public static final long PERIOD_SECOND = 1000L;
+    public static final long PERIOD_MINUTE = 60 * PERIOD_SECOND;
+    public static final long PERIOD_HOUR = 60 * PERIOD_MINUTE;
+    public static final long PERIOD_DAY = 24 * PERIOD_HOUR;
+
+    /**
+     * 直接绘制在缓存图之上的内容，每帧都会绘制
+     */
+    public interface Overlay {
+        void draw(@NonNull Canvas canvas, long timeMs, boolean ambient);
+    }
+
+    /**
+     * 缓存在合成图中的元素，内容只能由所依赖时间单位内的时间决定
+     */
+    public interface Element extends Overlay {
+        /**
+         * 元素依赖的时间单位，按本地时间对齐，可以随状态变化，
+         * 例如微光模式下由 {@link #PERIOD_SECOND} 改为 {@link #PERIOD_MINUTE}
+         */
+        long getPeriod(boolean ambient);
+
+        /**
+         * 元素在 timeMs 时刻的绘制区域，必须包含所有绘制内容，可以比实际内容大
+         */
+        void getBounds(long timeMs, int width, int height, boolean ambient,
+                       @NonNull Rect outBounds);
+    }
+
+    private static class Entry {
+        final Element element;
+        final Rect bounds = new Rect();
+        long period;
+        long key;
+
+        Entry(Element element) {
+            this.element = element;
+        }
+    }
+
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private final ArrayList<Overlay> mOverlays = new ArrayList<>();
+    // 复用的脏区域，数量不超过元素个数
+    private final ArrayList<Rect> mDirtyPool = new ArrayList<>();
+    private final Rect mTmpBounds = new Rect();
+    private final Paint mDebugPaint = new Paint();
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private int mDirtyCount;
+    private boolean mAmbient;
+    private boolean mFullRedraw = true;
+    private boolean mDebugOverlay;
+
+    // 统计
+    private int mFullRedrawCount;
+    private int mPartialRedrawCount;
+    private int mElementRedrawCount;
+
+    public DirtyRegionRenderer() {
+        mDebugOverlay = Log.isLoggable(TAG, Log.DEBUG);
+        mDebugPaint.setColor(Color.argb(96, 255, 0, 0));
+        mDebugPaint.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * 添加元素，先添加的在下层
+     */
+    public void addElement(@NonNull Element element) {
+        mEntries.add(new Entry(element));
+        mDirtyPool.add(new Rect());
+        mFullRedraw = true;
+    }
+
+    /**
+     * 添加 overlay，绘制在所有元素之上，先添加的在下层
+     */
+    public void addOverlay(@NonNull Overlay overlay) {
+        mOverlays.add(overlay);
+    }
+
+    /**
+     * 在 onAmbientModeChanged 中调用
+     */
+    public void setAmbient(boolean ambient) {
+        if (ambient != mAmbient) {
+            mAmbient = ambient;
+            mFullRedraw = true;
+        }
+    }
+
+    /**
+     * 元素的绘制参数（颜色、字体、位置等）变化后调用，下一帧整体重绘
+     */
+    public void invalidate() {
+        mFullRedraw = true;
+    }
+
+    /**
+     * 是否用半透明红色标出每帧重绘的区域
+     */
+    public void setDebugOverlay(boolean debugOverlay) {
+        mDebugOverlay = debugOverlay;
+    }
+
+    public void draw(@NonNull Canvas canvas, long timeMs) {
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            release();
+            mBitmap = BitmapPool.getInstance().get(width, height, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
+            mFullRedraw = true;
+        }
+        long localTimeMs = timeMs + TimeUtil.getZoneOffset(timeMs);
+        if (mFullRedraw) {
+            redrawAll(timeMs, localTimeMs, width, height);
+        } else {
+            redrawDirty(timeMs, localTimeMs, width, height);
+        }
+        canvas.drawBitmap(mBitmap, 0, 0, null);
+        for (int i = 0; i < mOverlays.size(); i++) {
+            mOverlays.get(i).draw(canvas, timeMs, mAmbient);
+        }
+        if (mDebugOverlay) {
+            for (int i = 0; i < mDirtyCount; i++) {
+                canvas.drawRect(mDirtyPool.get(i), mDebugPaint);
+            }
+        }
+    }
+
+    private void redrawAll(long timeMs, long localTimeMs, int width, int height) {
+        mBitmap.eraseColor(Color.TRANSPARENT);
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry entry = mEntries.get(i);
+            entry.period = entry.element.getPeriod(mAmbient);
+            entry.key = getKey(localTimeMs, entry.period);
+            entry.element.getBounds(timeMs, width, height, mAmbient, entry.bounds);
+            entry.element.draw(mCanvas, timeMs, mAmbient);
+        }
+        mFullRedraw = false;
+        mFullRedrawCount++;
+        mElementRedrawCount += mEntries.size();
+        mDirtyCount = mDirtyPool.isEmpty() ? 0 : 1;
+        if (mDirtyCount > 0) {
+            mDirtyPool.get(0).set(0, 0, width, height);
+        }
+    }
+
+    private void redrawDirty(long timeMs, long localTimeMs, int width, int height) {
+        mDirtyCount = 0;
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry entry = mEntries.get(i);
+            long period = entry.element.getPeriod(mAmbient);
+            long key = getKey(localTimeMs, period);
+            if (period == entry.period && key == entry.key) {
+                continue;
+            }
+            entry.period = period;
+            entry.key = key;
+            // 新旧区域都需要重绘，旧区域上的内容要被擦掉
+            entry.element.getBounds(timeMs, width, height, mAmbient, mTmpBounds);
+            Rect dirty = mDirtyPool.get(mDirtyCount++);
+            dirty.set(entry.bounds);
+            dirty.union(mTmpBounds);
+            entry.bounds.set(mTmpBounds);
+        }
+        if (mDirtyCount == 0) {
+            return;
+        }
+        mergeDirtyRects();
+        for (int d = 0; d < mDirtyCount; d++) {
+            Rect dirty = mDirtyPool.get(d);
+            mCanvas.save();
+            mCanvas.clipRect(dirty);
+            mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            for (int i = 0; i < mEntries.size(); i++) {
+                Entry entry = mEntries.get(i);
+                if (Rect.intersects(entry.bounds, dirty)) {
+                    entry.element.draw(mCanvas, timeMs, mAmbient);
+                    mElementRedrawCount++;
+                }
+            }
+            mCanvas.restore();
+        }
+        mPartialRedrawCount++;
+    }
+
+    /**
+     * 合并相互重叠的脏区域，避免同一元素在一帧内重复绘制
+     */
+    private void mergeDirtyRects() {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < mDirtyCount && !merged; i++) {
+                for (int j = i + 1; j < mDirtyCount; j++) {
+                    Rect a = mDirtyPool.get(i);
+                    Rect b = mDirtyPool.get(j);
+                    if (Rect.intersects(a, b)) {
+                        a.union(b);
+                        // 与最后一个交换，保持前 mDirtyCount 个有效
+                        mDirtyPool.set(j, mDirtyPool.get(mDirtyCount - 1));
+                        mDirtyPool.set(mDirtyCount - 1, b);
+                        mDirtyCount--;
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static long getKey(long localTimeMs, long period) {
+        return period <= PERIOD_STATIC ? 0 : Math.floorDiv(localTimeMs, period);
+    }
+
+    public int getFullRedrawCount() {
+        return mFullRedrawCount;
+    }
+
+    public int getPartialRedrawCount() {
+        return mPartialRedrawCount;
+    }
+
+    /**
+     * 累计重绘的元素次数，与 帧数 × 元素个数 对比可以看出节省的绘制量
+     */
+    public int getElementRedrawCount() {
+        return mElementRedrawCount;
+    }
+
+    /**
+     * 在 onDestroy 中调用
+     */
+    public void release() {
+        if (mBitmap != null) {
+            BitmapPool.getInstance().put(mBitmap);
+            mBitmap = null;
+            mCanvas = null;
+        }
+        mFullRedraw = true;
+    }
+}
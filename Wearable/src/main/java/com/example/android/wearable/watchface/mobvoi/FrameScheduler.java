@@ -0,0 +1,224 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * 表盘刷新调度器
+ * 各组件按自己需要的周期注册通道（例如 1 秒走时、300 毫秒动画、60 帧 GL），
+ * 短于 1 秒的周期从每个整秒开始计数，整秒时总会到期；
+ * 不短于 1 秒的周期按墙上时间的整数倍对齐，1 秒的整数倍都落在整秒上。
+ * 因此各通道在整秒时一起到期，同一时刻到期的通道只触发一次 invalidate。
+ * 系统时间被调回时，远于一个周期的到期时间会重新对齐，不会等到时间追上为止。
+ * 表盘不可见或处于微光模式时自动停止，微光模式下由 onTimeTick 负责刷新
+ */
+public class FrameScheduler {
+    private static final int MSG_FRAME = 0;
+    private static final long SECOND_MS = 1000;
+
+    /**
+     * 一般由 Engine 直接实现，Engine 已经提供了这三个 public 方法
+     */
+    public interface Host {
+        boolean isVisible();
+
+        boolean isInAmbientMode();
+
+        void invalidate();
+    }
+
+    public interface FrameCallback {
+        /**
+         * 通道到期时调用，在本次 invalidate 之前
+         *
+         * @param timeMs 当前时间戳
+         */
+        void onFrame(long timeMs);
+    }
+
+    public final class Channel {
+        private final FrameCallback mCallback;
+        private long mPeriodMs;
+        private long mDeadline;
+        private boolean mEnabled = true;
+
+        private Channel(long periodMs, FrameCallback callback) {
+            mPeriodMs = periodMs;
+            mCallback = callback;
+        }
+
+        public long getPeriod() {
+            return mPeriodMs;
+        }
+
+        /**
+         * 修改周期，立即刷新一次并按新周期重新对齐
+         */
+        public void setPeriod(long periodMs) {
+            if (periodMs <= 0) {
+                throw new IllegalArgumentException("period must be positive");
+            }
+            if (periodMs == mPeriodMs) {
+                return;
+            }
+            mPeriodMs = periodMs;
+            mDeadline = 0;
+            reschedule();
+        }
+
+        public boolean isEnabled() {
+            return mEnabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            if (enabled == mEnabled) {
+                return;
+            }
+            mEnabled = enabled;
+            mDeadline = 0;
+            reschedule();
+        }
+    }
+
+    private final Host mHost;
+    private final Handler mHandler;
+    private final ArrayList<Channel> mChannels = new ArrayList<>();
+
+    public FrameScheduler(@NonNull Host host) {
+        mHost = host;
+        mHandler = new FrameHandler(this);
+    }
+
+    /**
+     * 注册一个刷新通道，注册后需要在可见时调用 {@link #onStateChanged()} 才会开始调度
+     *
+     * @param periodMs 刷新周期
+     * @param callback 到期回调，只需要重绘时可以为 null
+     */
+    public Channel register(long periodMs, @Nullable FrameCallback callback) {
+        if (periodMs <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        Channel channel = new Channel(periodMs, callback);
+        mChannels.add(channel);
+        reschedule();
+        return channel;
+    }
+
+    public void unregister(Channel channel) {
+        mChannels.remove(channel);
+        reschedule();
+    }
+
+    /**
+     * 在 onVisibilityChanged 和 onAmbientModeChanged 中调用，
+     * 可见且处于交互模式时立即刷新一次并开始调度，否则停止
+     */
+    public void onStateChanged() {
+        for (int i = 0; i < mChannels.size(); i++) {
+            mChannels.get(i).mDeadline = 0;
+        }
+        reschedule();
+    }
+
+    /**
+     * 在 onDestroy 中调用
+     */
+    public void release() {
+        mHandler.removeCallbacksAndMessages(null);
+        mChannels.clear();
+    }
+
+    private boolean shouldBeRunning() {
+        return mHost.isVisible() && !mHost.isInAmbientMode();
+    }
+
+    private void reschedule() {
+        mHandler.removeMessages(MSG_FRAME);
+        if (shouldBeRunning()) {
+            scheduleNext(System.currentTimeMillis());
+        }
+    }
+
+    private void scheduleNext(long now) {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < mChannels.size(); i++) {
+            Channel channel = mChannels.get(i);
+            if (channel.mDeadline > now + channel.mPeriodMs) {
+                // 系统时间被调回了
+                channel.mDeadline = nextDeadline(now, channel.mPeriodMs);
+            }
+            if (channel.mEnabled && channel.mDeadline < next) {
+                next = channel.mDeadline;
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            mHandler.sendEmptyMessageDelayed(MSG_FRAME, Math.max(0, next - now));
+        }
+    }
+
+    private void handleFrameMessage() {
+        if (!shouldBeRunning()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean fired = false;
+        for (int i = 0; i < mChannels.size(); i++) {
+            Channel channel = mChannels.get(i);
+            if (!channel.mEnabled || now < channel.mDeadline) {
+                continue;
+            }
+            if (channel.mCallback != null) {
+                channel.mCallback.onFrame(now);
+            }
+            channel.mDeadline = nextDeadline(Math.max(now, channel.mDeadline), channel.mPeriodMs);
+            fired = true;
+        }
+        // 同一时刻到期的通道合并为一次重绘
+        if (fired) {
+            mHost.invalidate();
+        }
+        scheduleNext(now);
+    }
+
+    /**
+     * time 之后的下一个到期时间
+     */
+    @VisibleForTesting
+    static long nextDeadline(long time, long periodMs) {
+        if (periodMs >= SECOND_MS) {
+            return time - time % periodMs + periodMs;
+        }
+        long second = time - time % SECOND_MS;
+        long next = second + ((time - second) / periodMs + 1) * periodMs;
+        return Math.min(next, second + SECOND_MS);
+    }
+
+    private static class FrameHandler extends Handler {
+        private final WeakReference<FrameScheduler> mWeakReference;
+
+        FrameHandler(FrameScheduler reference) {
+            super(Looper.getMainLooper());
+            mWeakReference = new WeakReference<>(reference);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            FrameScheduler scheduler = mWeakReference.get();
+            if (scheduler == null) {
+                return;
+            }
+            if (msg.what == MSG_FRAME) {
+                scheduler.handleFrameMessage();
+            }
+        }
+    }
+}
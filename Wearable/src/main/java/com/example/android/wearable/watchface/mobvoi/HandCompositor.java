@@ -0,0 +1,113 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * 指针与阴影合成
+ * 加载时把阴影和指针按阴影偏移画到同一张图上（ARGB_8888，预乘透明度），
+ * 每根指针每帧只需要一次变换、一次绘制。
+ * 合成图四周按偏移量对称留白，指针中心仍在图片中心，可以直接替换原来的指针图片按中心旋转；
+ * 偏移量在指针自身的坐标系内，随指针一起旋转，与原来阴影和指针使用同一角度绘制的效果一致。
+ * 合成结果放在 {@link AssetCache} 中，切换表盘时不重复合成
+ */
+public class HandCompositor {
+    private static final String KEY_PREFIX = "hand:";
+
+    private final AssetCache mAssetCache;
+    private float mShadowOffsetX;
+    private float mShadowOffsetY;
+
+    public HandCompositor(@NonNull AssetCache assetCache) {
+        mAssetCache = assetCache;
+    }
+
+    /**
+     * 阴影相对指针的偏移，单位为图片像素，默认不偏移（阴影图片本身已经带有偏移）
+     */
+    public void setShadowOffset(float offsetX, float offsetY) {
+        mShadowOffsetX = offsetX;
+        mShadowOffsetY = offsetY;
+    }
+
+    /**
+     * 合成 assets/face 下的指针和阴影，耗时操作，需要在工作线程调用
+     *
+     * @param handName   指针图片名，不带后缀
+     * @param shadowName 阴影图片名，为空时只返回指针
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap compose(@NonNull String handName, @Nullable String shadowName) {
+        String handPath = AssetCache.getFacePath(handName);
+        if (shadowName == null) {
+            return mAssetCache.getBitmap(handPath, 0, 0);
+        }
+        String key = getKey(handName, shadowName);
+        Bitmap composite = mAssetCache.getCachedBitmap(key);
+        if (composite != null) {
+            return composite;
+        }
+        // 原图只是中间结果，不放入缓存
+        Bitmap hand = mAssetCache.decodeBitmap(handPath);
+        Bitmap shadow = mAssetCache.decodeBitmap(AssetCache.getFacePath(shadowName));
+        if (hand == null || shadow == null) {
+            BitmapPool.getInstance().put(hand);
+            BitmapPool.getInstance().put(shadow);
+            return null;
+        }
+        int paddingX = (int) Math.ceil(Math.abs(mShadowOffsetX));
+        int paddingY = (int) Math.ceil(Math.abs(mShadowOffsetY));
+        int width = Math.max(hand.getWidth(), shadow.getWidth()) + paddingX * 2;
+        int height = Math.max(hand.getHeight(), shadow.getHeight()) + paddingY * 2;
+        composite = BitmapPool.getInstance().get(width, height, Bitmap.Config.ARGB_8888);
+        composite.setDensity(hand.getDensity());
+        Canvas canvas = new Canvas(composite);
+        // 整数偏移时逐像素拷贝，不需要过滤
+        boolean fractional = mShadowOffsetX != (int) mShadowOffsetX
+                || mShadowOffsetY != (int) mShadowOffsetY;
+        Paint paint = fractional ? new Paint(Paint.FILTER_BITMAP_FLAG) : null;
+        canvas.drawBitmap(shadow, (width - shadow.getWidth()) / 2 + mShadowOffsetX,
+                (height - shadow.getHeight()) / 2 + mShadowOffsetY, paint);
+        canvas.drawBitmap(hand, (width - hand.getWidth()) / 2,
+                (height - hand.getHeight()) / 2, null);
+        BitmapPool.getInstance().put(hand);
+        BitmapPool.getInstance().put(shadow);
+        mAssetCache.putBitmap(key, composite);
+        return composite;
+    }
+
+    /**
+     * 合成后按 surface 尺寸缩放到最终绘制的像素尺寸，绘制时只需要旋转，不需要再缩放
+     *
+     * @param baseSize 设计稿尺寸，即表盘的 getBaseSize
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap compose(@NonNull String handName, @Nullable String shadowName,
+                          int surfaceWidth, float baseSize) {
+        if (shadowName == null) {
+            return mAssetCache.getScaledBitmap(AssetCache.getFacePath(handName), surfaceWidth,
+                    baseSize);
+        }
+        Bitmap composite = compose(handName, shadowName);
+        if (composite == null || surfaceWidth <= 0) {
+            return composite;
+        }
+        float scale = surfaceWidth / baseSize;
+        return mAssetCache.getScaledBitmap(getKey(handName, shadowName), composite,
+                Math.max(1, Math.round(composite.getWidth() * scale)),
+                Math.max(1, Math.round(composite.getHeight() * scale)));
+    }
+
+    private String getKey(String handName, String shadowName) {
+        return KEY_PREFIX + AssetCache.getFacePath(handName) + '|'
+                + AssetCache.getFacePath(shadowName)
+                + '@' + mShadowOffsetX + ',' + mShadowOffsetY;
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * 预旋转的指针缓存
+ * 指针围绕表盘中心旋转，按量化后的角度（例如 0.5°）预先把旋转后的指针画到一张
+ * 裁剪到外接矩形的小图上，绘制时只需要一次不旋转、不缩放的 drawBitmap。
+ * 小图通过 {@link DecodeExecutor} 在后台按需生成，并预取下一帧的角度；
+ * 还没有生成时按原来的方式实时旋转绘制。
+ * 所有指针共用一个按字节数限制的 LRU，淘汰的小图放回 {@link BitmapPool}。
+ * 所有方法都只能在主线程调用
+ */
+public class HandSpriteCache {
+    private static final String TAG = "HandSpriteCache";
+
+    private final DecodeExecutor.Scope mScope;
+    private final float mBaseSize;
+    private final long mMaxBytes;
+    private final ArrayList<Hand> mHands = new ArrayList<>();
+    // LRU 链表，头部为最近使用
+    private Sprite mHead;
+    private Sprite mTail;
+    private long mBytes;
+    private int mSurfaceWidth;
+
+    // 统计
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * @param scope    生成小图的任务组，一般为 Engine 的 scope，onDestroy 时一起取消
+     * @param baseSize 指针图片按 surface 宽度 / baseSize 缩放，与表盘的 getBaseSize 一致
+     * @param maxBytes 所有小图占用的字节数上限
+     */
+    public HandSpriteCache(@NonNull DecodeExecutor.Scope scope, float baseSize, long maxBytes) {
+        mScope = scope;
+        mBaseSize = baseSize;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 添加一根指针
+     *
+     * @param angleStep       量化角度，360 必须是它的整数倍
+     * @param prefetchDegrees 预取时在当前角度上增加的角度，一般为一次刷新间隔内指针转过的角度
+     */
+    public Hand addHand(float angleStep, float prefetchDegrees) {
+        Hand hand = new Hand(angleStep, prefetchDegrees);
+        mHands.add(hand);
+        return hand;
+    }
+
+    /**
+     * 在 onSurfaceChanged 中调用，尺寸变化后清空所有小图
+     */
+    public void setSurfaceSize(int width) {
+        if (width == mSurfaceWidth) {
+            return;
+        }
+        mSurfaceWidth = width;
+        for (int i = 0; i < mHands.size(); i++) {
+            mHands.get(i).reset();
+        }
+    }
+
+    /**
+     * 在 onDestroy 中调用
+     */
+    public void release() {
+        for (int i = 0; i < mHands.size(); i++) {
+            mHands.get(i).reset();
+        }
+        mHands.clear();
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public String getStats() {
+        return "HandSpriteCache[hit=" + mHitCount + ", miss=" + mMissCount
+                + ", eviction=" + mEvictionCount + ", bytes=" + mBytes + "/" + mMaxBytes + "]";
+    }
+
+    public final class Hand {
+        private final float mAngleStep;
+        private final float mPrefetchDegrees;
+        private final Sprite[] mSprites;
+        private final boolean[] mPending;
+        private final RectF mRectF = new RectF();
+        private final Matrix mMatrix = new Matrix();
+        private final Rect mTmpRect = new Rect();
+        private Drawable mDrawable;
+        // 每次图片或尺寸变化后加 1，丢弃旧的生成结果
+        private int mGeneration;
+
+        private Hand(float angleStep, float prefetchDegrees) {
+            int count = Math.round(360 / angleStep);
+            if (count <= 0 || Math.abs(count * angleStep - 360) > 0.001f) {
+                throw new IllegalArgumentException("360 must be a multiple of angleStep");
+            }
+            mAngleStep = angleStep;
+            mPrefetchDegrees = prefetchDegrees;
+            mSprites = new Sprite[count];
+            mPending = new boolean[count];
+        }
+
+        /**
+         * 设置指针图片，图片只在主线程绘制，工作线程使用 ConstantState 复制的实例
+         */
+        public void setDrawable(@Nullable Drawable drawable) {
+            mDrawable = drawable;
+            reset();
+        }
+
+        /**
+         * 以 degrees 绘制指针，有缓存时直接贴图，否则实时旋转并请求生成缓存
+         */
+        public void draw(@NonNull Canvas canvas, float degrees) {
+            if (mDrawable == null || mSurfaceWidth <= 0) {
+                return;
+            }
+            int index = getIndex(degrees);
+            Sprite sprite = mSprites[index];
+            if (sprite != null) {
+                mHitCount++;
+                touch(sprite);
+                canvas.drawBitmap(sprite.bitmap, sprite.left, sprite.top, null);
+            } else {
+                mMissCount++;
+                request(index);
+                drawRotated(canvas, mDrawable, mSurfaceWidth, degrees);
+            }
+            request(getIndex(degrees + mPrefetchDegrees));
+        }
+
+        /**
+         * 指针在 degrees 时的绘制区域，同时包含实时旋转和量化角度两种绘制方式
+         */
+        public void getBounds(float degrees, @NonNull Rect outBounds) {
+            outBounds.setEmpty();
+            if (mDrawable == null || mSurfaceWidth <= 0) {
+                return;
+            }
+            getRotatedBounds(degrees, mTmpRect);
+            outBounds.union(mTmpRect);
+            getRotatedBounds(getIndex(degrees) * mAngleStep, mTmpRect);
+            outBounds.union(mTmpRect);
+        }
+
+        private int getIndex(float degrees) {
+            int index = Math.round(degrees / mAngleStep) % mSprites.length;
+            return index < 0 ? index + mSprites.length : index;
+        }
+
+        /**
+         * 与 drawRotated 相同的尺寸计算，旋转后取外接矩形，抗锯齿边缘向外多留 1 像素
+         */
+        private void getRotatedBounds(float degrees, Rect outBounds) {
+            float width = getDrawWidth(mDrawable, mSurfaceWidth);
+            float height = getDrawHeight(mDrawable, mSurfaceWidth);
+            float center = mSurfaceWidth * 0.5f;
+            mRectF.set(center - width / 2, center - height / 2,
+                    center + width / 2, center + height / 2);
+            mMatrix.setRotate(degrees, center, center);
+            mMatrix.mapRect(mRectF);
+            mRectF.inset(-1, -1);
+            mRectF.roundOut(outBounds);
+        }
+
+        private void request(int index) {
+            if (mSprites[index] != null || mPending[index] || mDrawable == null) {
+                return;
+            }
+            Drawable.ConstantState state = mDrawable.getConstantState();
+            if (state == null) {
+                // 无法在工作线程安全地复制，只能实时旋转
+                return;
+            }
+            mPending[index] = true;
+            int generation = mGeneration;
+            int surfaceWidth = mSurfaceWidth;
+            float degrees = index * mAngleStep;
+            Rect bounds = new Rect();
+            getRotatedBounds(degrees, bounds);
+            // 排在指针原图等关键图片之后
+            mScope.submit(DecodeExecutor.PRIORITY_NORMAL, () -> {
+                Bitmap bitmap = BitmapPool.getInstance().get(bounds.width(), bounds.height(),
+                        Bitmap.Config.ARGB_8888);
+                Canvas canvas = new Canvas(bitmap);
+                canvas.translate(-bounds.left, -bounds.top);
+                drawRotated(canvas, state.newDrawable(), surfaceWidth, degrees);
+                return bitmap;
+            }, bitmap -> onSpriteReady(index, generation, bitmap, bounds));
+        }
+
+        private void onSpriteReady(int index, int generation, @Nullable Bitmap bitmap,
+                                   Rect bounds) {
+            if (generation != mGeneration) {
+                BitmapPool.getInstance().put(bitmap);
+                return;
+            }
+            mPending[index] = false;
+            if (bitmap == null) {
+                return;
+            }
+            Sprite sprite = new Sprite(this, index, bitmap, bounds.left, bounds.top);
+            mSprites[index] = sprite;
+            insert(sprite);
+        }
+
+        private void reset() {
+            mGeneration++;
+            for (int i = 0; i < mSprites.length; i++) {
+                if (mSprites[i] != null) {
+                    remove(mSprites[i]);
+                    BitmapPool.getInstance().put(mSprites[i].bitmap);
+                    mSprites[i] = null;
+                }
+                mPending[i] = false;
+            }
+        }
+    }
+
+    private static class Sprite {
+        final Hand hand;
+        final int index;
+        final Bitmap bitmap;
+        final int left;
+        final int top;
+        final int bytes;
+        Sprite prev;
+        Sprite next;
+
+        Sprite(Hand hand, int index, Bitmap bitmap, int left, int top) {
+            this.hand = hand;
+            this.index = index;
+            this.bitmap = bitmap;
+            this.left = left;
+            this.top = top;
+            this.bytes = bitmap.getAllocationByteCount();
+        }
+    }
+
+    private void insert(Sprite sprite) {
+        addFirst(sprite);
+        mBytes += sprite.bytes;
+        while (mBytes > mMaxBytes && mTail != null && mTail != sprite) {
+            Sprite eldest = mTail;
+            remove(eldest);
+            eldest.hand.mSprites[eldest.index] = null;
+            BitmapPool.getInstance().put(eldest.bitmap);
+            mEvictionCount++;
+        }
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, getStats());
+        }
+    }
+
+    private void touch(Sprite sprite) {
+        if (sprite != mHead) {
+            unlink(sprite);
+            addFirst(sprite);
+        }
+    }
+
+    private void remove(Sprite sprite) {
+        unlink(sprite);
+        mBytes -= sprite.bytes;
+    }
+
+    private void addFirst(Sprite sprite) {
+        sprite.prev = null;
+        sprite.next = mHead;
+        if (mHead != null) {
+            mHead.prev = sprite;
+        }
+        mHead = sprite;
+        if (mTail == null) {
+            mTail = sprite;
+        }
+    }
+
+    private void unlink(Sprite sprite) {
+        if (sprite.prev != null) {
+            sprite.prev.next = sprite.next;
+        } else {
+            mHead = sprite.next;
+        }
+        if (sprite.next != null) {
+            sprite.next.prev = sprite.prev;
+        } else {
+            mTail = sprite.prev;
+        }
+        sprite.prev = null;
+        sprite.next = null;
+    }
+
+    /**
+     * 与表盘 drawImage 相同的绘制方式：以 surface 中心为中心、按宽度缩放后旋转
+     */
+    private void drawRotated(Canvas canvas, Drawable drawable, int surfaceWidth, float degrees) {
+        float width = getDrawWidth(drawable, surfaceWidth);
+        float height = getDrawHeight(drawable, surfaceWidth);
+        canvas.save();
+        canvas.translate(surfaceWidth * 0.5f - width / 2, surfaceWidth * 0.5f - height / 2);
+        if (degrees != 0) {
+            canvas.rotate(degrees, width / 2, height / 2);
+        }
+        drawable.setBounds(0, 0, (int) width, (int) height);
+        drawable.draw(canvas);
+        canvas.restore();
+    }
+
+    private float getDrawWidth(Drawable drawable, int surfaceWidth) {
+        return drawable.getIntrinsicWidth() * surfaceWidth / mBaseSize;
+    }
+
+    private float getDrawHeight(Drawable drawable, int surfaceWidth) {
+        return drawable.getIntrinsicHeight() * surfaceWidth / mBaseSize;
+    }
+}
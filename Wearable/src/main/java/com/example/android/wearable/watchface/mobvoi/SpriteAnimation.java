@@ -0,0 +1,368 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 序列帧动画
+ * 加载时把所有帧按目标尺寸缩放后拼到一张图集上（按网格排列），
+ * 播放时只切换源矩形，每帧一次 drawBitmap，不再逐帧解码和缩放。
+ * 图集放在 {@link AssetCache} 中，同样的帧和尺寸只拼一次，原始帧拼好后放回 {@link BitmapPool}。
+ * 网格尽量接近正方形，例如 AnimateService 的 6 帧 456 像素动画排成 3x2，图集 1368x912，约 5MB；
+ * 帧数多时图集边长可能超过硬件画布的纹理上限（一般 4096），需要减少帧数或缩小帧尺寸
+ */
+public class SpriteAnimation {
+    /**
+     * 循环播放 0, 1, ..., n-1, 0, 1, ...
+     */
+    public static final int MODE_LOOP = 0;
+    /**
+     * 往返播放 0, 1, ..., n-1, n-2, ..., 1, 0, 1, ...
+     */
+    public static final int MODE_PING_PONG = 1;
+
+    private static final String KEY_PREFIX = "sprite:";
+
+    private final AssetCache mAssetCache;
+    private final DecodeExecutor.Scope mScope;
+    private final String[] mFramePaths;
+    private final long[] mDurations;
+    private final RectF mDst = new RectF();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // 以下只在主线程读写
+    private Sheet mSheet;
+    private final ArrayList<DecodeExecutor.Request<?>> mRequests = new ArrayList<>();
+    private int mRemaining;
+    // 每次重新加载或释放后加 1，丢弃旧的解码结果
+    private int mGeneration;
+    private int mMode = MODE_LOOP;
+    private boolean mPauseInAmbient = true;
+    private boolean mAmbient;
+    private boolean mPaused;
+
+    // 播放进度，只在主线程读写
+    private int mFrame;
+    private int mDirection = 1;
+    private long mFrameStartMs;
+
+    /**
+     * @param scope      解码和拼图集的任务组，一般为 Engine 的 scope，onDestroy 时一起取消
+     * @param framePaths 每一帧的图片路径，例如 {@link AssetCache#getFacePath(String)}
+     */
+    public SpriteAnimation(@NonNull AssetCache assetCache, @NonNull DecodeExecutor.Scope scope,
+                           @NonNull String[] framePaths) {
+        if (framePaths.length == 0) {
+            throw new IllegalArgumentException("no frames");
+        }
+        mAssetCache = assetCache;
+        mScope = scope;
+        mFramePaths = framePaths.clone();
+        mDurations = new long[framePaths.length];
+        setFrameDuration(100);
+    }
+
+    /**
+     * 所有帧使用相同的时长
+     */
+    public void setFrameDuration(long durationMs) {
+        if (durationMs <= 0) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        Arrays.fill(mDurations, durationMs);
+    }
+
+    /**
+     * 逐帧设置时长，长度必须与帧数一致
+     */
+    public void setFrameDurations(@NonNull long[] durationsMs) {
+        if (durationsMs.length != mDurations.length) {
+            throw new IllegalArgumentException("expect " + mDurations.length + " durations");
+        }
+        for (long duration : durationsMs) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("duration must be positive");
+            }
+        }
+        System.arraycopy(durationsMs, 0, mDurations, 0, mDurations.length);
+    }
+
+    /**
+     * 最短的帧时长，可以作为刷新周期注册到 {@link FrameScheduler}
+     */
+    public long getMinFrameDuration() {
+        long min = Long.MAX_VALUE;
+        for (long duration : mDurations) {
+            min = Math.min(min, duration);
+        }
+        return min;
+    }
+
+    /**
+     * @param mode {@link #MODE_LOOP} 或 {@link #MODE_PING_PONG}
+     */
+    public void setMode(int mode) {
+        mMode = mode;
+    }
+
+    /**
+     * 微光模式下是否暂停，默认暂停
+     */
+    public void setPauseInAmbient(boolean pauseInAmbient) {
+        mPauseInAmbient = pauseInAmbient;
+    }
+
+    /**
+     * 在 onAmbientModeChanged 中调用
+     */
+    public void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+    }
+
+    public void pause() {
+        mPaused = true;
+    }
+
+    public void resume() {
+        mPaused = false;
+    }
+
+    public boolean isPlaying() {
+        return !mPaused && !(mPauseInAmbient && mAmbient);
+    }
+
+    public int getFrameIndex() {
+        return mFrame;
+    }
+
+    /**
+     * 图集是否已经生成，只显示第一帧时返回 false
+     */
+    public boolean isLoaded() {
+        return mSheet != null && mSheet.complete;
+    }
+
+    /**
+     * 按目标尺寸异步生成图集，在主线程调用。尺寸不变时直接复用缓存中的图集；
+     * 否则各帧交给 {@link DecodeExecutor} 并行解码，第一帧优先，解码完成后先单独显示第一帧，
+     * 其余帧到齐后在后台拼成图集再整体替换，替换之前动画停在第一帧
+     *
+     * @param frameWidth  每一帧绘制到屏幕上的宽度
+     * @param frameHeight 每一帧绘制到屏幕上的高度
+     * @param listener    可以显示的内容变化后在主线程调用，一般为 invalidate
+     */
+    @MainThread
+    public void load(int frameWidth, int frameHeight, @Nullable Runnable listener) {
+        cancelLoad();
+        if (frameWidth <= 0 || frameHeight <= 0) {
+            return;
+        }
+        int count = mFramePaths.length;
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (count + columns - 1) / columns;
+        Rect[] frameRects = new Rect[count];
+        for (int i = 0; i < count; i++) {
+            int left = (i % columns) * frameWidth;
+            int top = (i / columns) * frameHeight;
+            frameRects[i] = new Rect(left, top, left + frameWidth, top + frameHeight);
+        }
+
+        String key = getAtlasKey(frameWidth, frameHeight);
+        Bitmap atlas = mAssetCache.getCachedBitmap(key);
+        if (atlas != null) {
+            mSheet = new Sheet(atlas, frameRects, frameWidth, frameHeight, true);
+            notifyChanged(listener);
+            return;
+        }
+        int generation = mGeneration;
+        Bitmap[] frames = new Bitmap[count];
+        mRemaining = count;
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            int priority = i == 0 ? DecodeExecutor.PRIORITY_CRITICAL
+                    : DecodeExecutor.PRIORITY_NORMAL;
+            mRequests.add(mScope.submit(priority,
+                    () -> mAssetCache.decodeBitmap(mFramePaths[index]),
+                    frame -> {
+                        if (generation != mGeneration) {
+                            BitmapPool.getInstance().put(frame);
+                            return;
+                        }
+                        frames[index] = frame;
+                        if (index == 0 && frame != null && mSheet == null) {
+                            Rect src = new Rect(0, 0, frame.getWidth(), frame.getHeight());
+                            mSheet = new Sheet(frame, new Rect[]{src}, frameWidth, frameHeight,
+                                    false);
+                            notifyChanged(listener);
+                        }
+                        if (--mRemaining == 0) {
+                            compose(generation, key, frames, frameRects, columns, rows,
+                                    frameWidth, frameHeight, listener);
+                        }
+                    }));
+        }
+    }
+
+    /**
+     * 各帧到齐后在后台按网格拼成图集，除第一帧外的原始帧立即放回 {@link BitmapPool}；
+     * 第一帧可能正作为预览显示，替换成图集之后再放回
+     */
+    private void compose(int generation, String key, Bitmap[] frames, Rect[] frameRects,
+                         int columns, int rows, int frameWidth, int frameHeight,
+                         @Nullable Runnable listener) {
+        mRequests.clear();
+        mRequests.add(mScope.submit(DecodeExecutor.PRIORITY_NORMAL, () -> {
+            Bitmap atlas = Bitmap.createBitmap(columns * frameWidth, rows * frameHeight,
+                    Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(atlas);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            for (int i = 0; i < frames.length; i++) {
+                if (frames[i] == null) {
+                    continue;
+                }
+                canvas.drawBitmap(frames[i], null, frameRects[i], paint);
+                if (i > 0) {
+                    BitmapPool.getInstance().put(frames[i]);
+                }
+            }
+            mAssetCache.putBitmap(key, atlas);
+            return atlas;
+        }, atlas -> {
+            if (generation != mGeneration || atlas == null) {
+                return;
+            }
+            mRequests.clear();
+            mSheet = new Sheet(atlas, frameRects, frameWidth, frameHeight, true);
+            BitmapPool.getInstance().put(frames[0]);
+            notifyChanged(listener);
+        }));
+    }
+
+    private void notifyChanged(@Nullable Runnable listener) {
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * 取消还没有完成的解码，已经解码的帧不再放回 {@link BitmapPool}，由 GC 回收
+     */
+    private void cancelLoad() {
+        mGeneration++;
+        for (int i = 0; i < mRequests.size(); i++) {
+            mRequests.get(i).cancel();
+        }
+        mRequests.clear();
+        mRemaining = 0;
+    }
+
+    /**
+     * 推进播放进度，在刷新回调中调用
+     *
+     * @return 当前帧是否发生了变化
+     */
+    public boolean advance(long timeMs) {
+        if (!isPlaying() || mSheet == null || !mSheet.complete || mFrameStartMs == 0) {
+            // 暂停期间不累计时间，恢复后从当前帧继续
+            mFrameStartMs = timeMs;
+            return false;
+        }
+        if (timeMs - mFrameStartMs > getCycleDuration()) {
+            // 长时间没有刷新（例如调度被挂起），不补播，直接重新计时
+            mFrameStartMs = timeMs;
+            return false;
+        }
+        boolean changed = false;
+        while (timeMs - mFrameStartMs >= mDurations[mFrame]) {
+            mFrameStartMs += mDurations[mFrame];
+            step();
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * 以 (centerX, centerY) 为中心绘制当前帧，图集还没有生成时绘制第一帧，第一帧也没有解码时不绘制
+     */
+    public void draw(@NonNull Canvas canvas, float centerX, float centerY) {
+        Sheet sheet = mSheet;
+        if (sheet == null) {
+            return;
+        }
+        Rect src = sheet.frameRects[sheet.complete ? mFrame : 0];
+        float halfWidth = sheet.frameWidth / 2f;
+        float halfHeight = sheet.frameHeight / 2f;
+        mDst.set(centerX - halfWidth, centerY - halfHeight,
+                centerX + halfWidth, centerY + halfHeight);
+        canvas.drawBitmap(sheet.bitmap, src, mDst, mPaint);
+    }
+
+    /**
+     * 图集由 {@link AssetCache} 管理，这里只取消解码并释放引用
+     */
+    public void release() {
+        cancelLoad();
+        mSheet = null;
+    }
+
+    private void step() {
+        int count = mFramePaths.length;
+        if (count == 1) {
+            return;
+        }
+        if (mMode == MODE_PING_PONG) {
+            if (mFrame + mDirection < 0 || mFrame + mDirection >= count) {
+                mDirection = -mDirection;
+            }
+            mFrame += mDirection;
+        } else {
+            mFrame = (mFrame + 1) % count;
+        }
+    }
+
+    private long getCycleDuration() {
+        long total = 0;
+        for (long duration : mDurations) {
+            total += duration;
+        }
+        return mMode == MODE_PING_PONG ? total * 2 : total;
+    }
+
+    private String getAtlasKey(int frameWidth, int frameHeight) {
+        StringBuilder builder = new StringBuilder(KEY_PREFIX);
+        for (String path : mFramePaths) {
+            builder.append(path).append('|');
+        }
+        return builder.append('@').append(frameWidth).append('x').append(frameHeight).toString();
+    }
+
+    /**
+     * 图集和每一帧在图集中的位置，在主线程整体替换。
+     * complete 为 false 时 bitmap 是还没有缩放的第一帧，只有一个源矩形
+     */
+    private static class Sheet {
+        final Bitmap bitmap;
+        final Rect[] frameRects;
+        final int frameWidth;
+        final int frameHeight;
+        final boolean complete;
+
+        Sheet(Bitmap bitmap, Rect[] frameRects, int frameWidth, int frameHeight,
+              boolean complete) {
+            this.bitmap = bitmap;
+            this.frameRects = frameRects;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+            this.complete = complete;
+        }
+    }
+}
@@ -2,10 +2,16 @@ package com.example.android.wearable.watchface.mobvoi;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.example.android.wearable.watchface.R;
 
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
 import java.util.Calendar;
 import java.util.Locale;
+import java.util.TimeZone;
 
 public class TimeUtil {
 
@@ -14,6 +20,105 @@ public class TimeUtil {
     public static final String UNIT_KM = "KM";
     public static final String UNIT_MI = "MI";
 
+    /**
+     * {@link #calculateHandDegrees(long, float[])} 输出数组中时、分、秒针角度的下标
+     */
+    public static final int INDEX_HOUR = 0;
+    public static final int INDEX_MINUTE = 1;
+    public static final int INDEX_SECOND = 2;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_HALF_DAY = 12 * MILLIS_PER_HOUR;
+
+    /**
+     * 缓存的时区偏移量，在 [sOffsetFrom, sOffsetUntil) 这一分钟内有效。
+     * 夏令时切换都发生在整分钟上，所以每分钟重新查询一次即可覆盖切换点
+     */
+    private static TimeZone sTimeZone;
+    private static int sZoneOffset;
+    private static long sOffsetFrom = Long.MAX_VALUE;
+    private static long sOffsetUntil = Long.MIN_VALUE;
+
+    /**
+     * 星期一到星期日，与 {@link #getWeek(int, String)} 的 weekDay 对应，下标 0 为其它值时的“日”
+     */
+    private static final char[] WEEK_CN = {'日', '一', '二', '三', '四', '五', '六', '日'};
+    private static final String WEEK_PREFIX = "星期";
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000};
+
+    /**
+     * 按语言缓存的数字符号和名称，语言变化后整体替换
+     */
+    private static volatile LocaleNames sLocaleNames;
+
+    /**
+     * 根据时间戳计算时、分、秒针的角度，不分配对象，可以在 onDraw 中每帧调用
+     *
+     * @param timeMillis 时间戳，通常是 System.currentTimeMillis()
+     * @param degrees    输出数组，长度至少为 3，按 {@link #INDEX_HOUR} 等下标写入
+     */
+    public static void calculateHandDegrees(long timeMillis, float[] degrees) {
+        calculateHandDegrees(timeMillis, false, degrees);
+    }
+
+    /**
+     * 根据时间戳计算时、分、秒针的角度
+     *
+     * @param smooth 为 false 时与 {@link #calculateHourDegree(Calendar)}、
+     *               {@link #calculateMinuteDegree(Calendar)}、{@link #calculateSecondDegree(Calendar)}
+     *               结果一致，秒针按秒跳动；为 true 时三根指针都计入毫秒，连续转动
+     */
+    public static void calculateHandDegrees(long timeMillis, boolean smooth, float[] degrees) {
+        long millisOfHalfDay = Math.floorMod(timeMillis + getZoneOffset(timeMillis),
+                MILLIS_PER_HALF_DAY);
+        int millisOfMinute = (int) (millisOfHalfDay % MILLIS_PER_MINUTE);
+        int second = (int) (millisOfMinute / MILLIS_PER_SECOND);
+        int minute = (int) (millisOfHalfDay / MILLIS_PER_MINUTE % 60);
+        int hour = (int) (millisOfHalfDay / MILLIS_PER_HOUR);
+        if (smooth) {
+            float seconds = millisOfMinute / 1000f;
+            float minutes = minute + seconds / 60.0f;
+            degrees[INDEX_HOUR] = 360.0f * (hour + minutes / 60.0f) / 12.0f;
+            degrees[INDEX_MINUTE] = 360.0f * minutes / 60.0f;
+            degrees[INDEX_SECOND] = 360.0f * seconds / 60.0f;
+        } else {
+            degrees[INDEX_HOUR] = 360.0f * (hour + minute / 60.0f) / 12.0f;
+            degrees[INDEX_MINUTE] = 360.0f * (minute + second / 60.0f) / 60.0f;
+            degrees[INDEX_SECOND] = 360.0f * second / 60.0f;
+        }
+    }
+
+    /**
+     * 获取当前时区在指定时间的偏移量（含夏令时），结果按分钟缓存
+     */
+    public static int getZoneOffset(long timeMillis) {
+        synchronized (TimeUtil.class) {
+            if (timeMillis < sOffsetFrom || timeMillis >= sOffsetUntil) {
+                if (sTimeZone == null) {
+                    sTimeZone = TimeZone.getDefault();
+                }
+                sZoneOffset = sTimeZone.getOffset(timeMillis);
+                sOffsetFrom = timeMillis - Math.floorMod(timeMillis, MILLIS_PER_MINUTE);
+                sOffsetUntil = sOffsetFrom + MILLIS_PER_MINUTE;
+            }
+            return sZoneOffset;
+        }
+    }
+
+    /**
+     * 时区变化后调用，例如收到 {@link android.content.Intent#ACTION_TIMEZONE_CHANGED}
+     * 或表盘重新可见时
+     */
+    public static void invalidateTimeZone() {
+        synchronized (TimeUtil.class) {
+            sTimeZone = null;
+            sOffsetFrom = Long.MAX_VALUE;
+            sOffsetUntil = Long.MIN_VALUE;
+        }
+    }
+
     /**
      * 根据时间计算时针的角度
      *
@@ -151,6 +256,143 @@ public class TimeUtil {
         }
     }
 
+    /**
+     * 两位数字，不足两位前面补 0，与 {@link #paddingSingleNumber(int)} 的结果一致，不分配对象
+     *
+     * @return 传入的 buffer，可以直接用于 Canvas.drawText(CharSequence, int, int, ...)
+     */
+    @NonNull
+    public static StringBuilder appendTwoDigits(@NonNull StringBuilder buffer, int number) {
+        LocaleNames names = getLocaleNames(Locale.getDefault());
+        long value = number;
+        if (value < 0) {
+            // 负号已经占了一位，与 %02d 一样不再补 0
+            buffer.append(names.minusSign);
+            value = -value;
+        } else if (value < 10) {
+            buffer.append(names.zeroDigit);
+        }
+        return appendDigits(buffer, value, names.zeroDigit);
+    }
+
+    /**
+     * 距离，单位为千米或英里，保留 decimals 位小数，与 {@link #getDistance}（2 位）和
+     * {@link #getDistanceOne}（1 位）的结果一致，不分配对象
+     *
+     * @param decimals 小数位数，0 - 4
+     */
+    @NonNull
+    public static StringBuilder appendDistance(@NonNull StringBuilder buffer, int distanceInMeter,
+                                               boolean isUnitMetric, int decimals) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("decimals must be in [0, 4]");
+        }
+        LocaleNames names = getLocaleNames(Locale.getDefault());
+        // 与 getDistance 计算同一个 double
+        double distance = isUnitMetric ? distanceInMeter / (float) 1000
+                : distanceInMeter * 0.6214 / (float) 1000;
+        if (distance < 0) {
+            buffer.append(names.minusSign);
+            distance = -distance;
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        long value = (long) Math.floor(distance * scale);
+        // String.format 按 double 最短的十进制表示 HALF_UP 舍入：double 恰好是离 value.5
+        // 最近的那个时，最短表示就是 value.5，要进位，所以这里用 >= 而不是 >
+        if (distance >= (2 * value + 1) / (2.0 * scale)) {
+            value++;
+        }
+        appendDigits(buffer, value / scale, names.zeroDigit);
+        if (decimals > 0) {
+            buffer.append(names.decimalSeparator);
+            long fraction = value % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                buffer.append((char) (names.zeroDigit + fraction / digit % 10));
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 与 {@link #getWeek(int, String)} 的结果一致，不分配对象
+     *
+     * @param prefix 前缀，为 null 时使用“星期”
+     */
+    @NonNull
+    public static StringBuilder appendWeek(@NonNull StringBuilder buffer, int weekDay,
+                                           @Nullable String prefix) {
+        buffer.append(prefix == null ? WEEK_PREFIX : prefix);
+        return buffer.append(WEEK_CN[weekDay >= 1 && weekDay <= 7 ? weekDay : 0]);
+    }
+
+    /**
+     * 当前语言的星期简称，例如 Mon、周一，名称按语言缓存
+     */
+    @NonNull
+    public static StringBuilder appendShortWeekday(@NonNull StringBuilder buffer,
+                                                   @NonNull Calendar calendar) {
+        LocaleNames names = getLocaleNames(Locale.getDefault());
+        return buffer.append(names.shortWeekdays[calendar.get(Calendar.DAY_OF_WEEK)]);
+    }
+
+    /**
+     * 与 {@link #getMonthEN(Calendar, Context)} 的结果一致，月份名称按语言缓存，
+     * 不再每次读取字符串数组资源
+     */
+    @NonNull
+    public static StringBuilder appendMonthEN(@NonNull StringBuilder buffer,
+                                              @NonNull Calendar calendar, @NonNull Context c) {
+        LocaleNames names = getLocaleNames(Locale.getDefault());
+        String[] months = names.monthsEN;
+        if (months == null) {
+            // 资源只读取一次，并发时最多重复读取，结果相同
+            months = c.getResources().getStringArray(R.array.month_en);
+            names.monthsEN = months;
+        }
+        return buffer.append(months[calendar.get(Calendar.MONTH)]);
+    }
+
+    private static StringBuilder appendDigits(StringBuilder buffer, long value, char zeroDigit) {
+        long digit = 1;
+        while (value / digit >= 10) {
+            digit *= 10;
+        }
+        for (; digit > 0; digit /= 10) {
+            buffer.append((char) (zeroDigit + value / digit % 10));
+        }
+        return buffer;
+    }
+
+    private static LocaleNames getLocaleNames(Locale locale) {
+        LocaleNames names = sLocaleNames;
+        if (names == null || !names.locale.equals(locale)) {
+            names = new LocaleNames(locale);
+            sLocaleNames = names;
+        }
+        return names;
+    }
+
+    /**
+     * 一种语言下格式化需要的符号和名称，与 String.format(Locale, ...) 使用相同的数字符号
+     */
+    private static class LocaleNames {
+        final Locale locale;
+        final char zeroDigit;
+        final char minusSign;
+        final char decimalSeparator;
+        final String[] shortWeekdays;
+        volatile String[] monthsEN;
+
+        LocaleNames(Locale locale) {
+            this.locale = locale;
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            zeroDigit = symbols.getZeroDigit();
+            minusSign = symbols.getMinusSign();
+            decimalSeparator = symbols.getDecimalSeparator();
+            shortWeekdays = DateFormatSymbols.getInstance(locale).getShortWeekdays();
+        }
+    }
+
     public static String getDistanceUnit(boolean isMetric) {
         return isMetric ? UNIT_KM : UNIT_MI;
     }
@@ -0,0 +1,129 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Typeface;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 进程内共享的字体缓存
+ * assets/font 下的字体在 {@link DecodeExecutor} 中加载，每个字体每个进程只加载一次，
+ * 加载完成后在主线程放入缓存并通知所有等待的回调，Paint 只在主线程设置字体，不存在线程竞争。
+ * 已经加载过的字体 {@link #load} 时立即同步回调，Engine 第一帧就能使用正确的字体。
+ * 除 {@link #getInstance} 外，所有方法都只能在主线程调用
+ */
+public class TypefaceRegistry {
+    public static final String ASSETS_FONTS = "font";
+
+    private static volatile TypefaceRegistry sInstance;
+
+    private final AssetManager mAssets;
+    private final HashMap<String, Typeface> mTypefaces = new HashMap<>();
+    // 正在加载的字体及等待它的回调
+    private final HashMap<String, ArrayList<Callback>> mPending = new HashMap<>();
+
+    public interface Callback {
+        /**
+         * 在主线程调用，一般设置 Paint 的字体后 invalidate
+         *
+         * @param typeface 加载失败时为 null，调用方继续使用默认字体
+         */
+        @MainThread
+        void onTypefaceReady(@NonNull String name, @Nullable Typeface typeface);
+    }
+
+    public static TypefaceRegistry getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (TypefaceRegistry.class) {
+                if (sInstance == null) {
+                    sInstance = new TypefaceRegistry(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private TypefaceRegistry(Context context) {
+        mAssets = context.getAssets();
+    }
+
+    /**
+     * 已经加载完成的字体，还没有加载时返回 null
+     *
+     * @param name assets/font 下的文件名，带后缀，例如 BITSUMISHI.TTF
+     */
+    @MainThread
+    @Nullable
+    public Typeface get(@NonNull String name) {
+        return mTypefaces.get(name);
+    }
+
+    /**
+     * 提前在后台加载，不需要回调，例如在 Service 的 onCreate 中调用
+     */
+    @MainThread
+    public void preload(@NonNull String... names) {
+        for (String name : names) {
+            load(name, null);
+        }
+    }
+
+    /**
+     * 获取字体，已经加载时立即回调，否则在后台加载，完成后在主线程回调
+     *
+     * @param callback 不再需要时（例如 onDestroy）通过 {@link #removeCallback} 移除
+     */
+    @MainThread
+    public void load(@NonNull String name, @Nullable Callback callback) {
+        Typeface typeface = mTypefaces.get(name);
+        if (typeface != null) {
+            if (callback != null) {
+                callback.onTypefaceReady(name, typeface);
+            }
+            return;
+        }
+        ArrayList<Callback> callbacks = mPending.get(name);
+        if (callbacks == null) {
+            callbacks = new ArrayList<>();
+            mPending.put(name, callbacks);
+            // 字体决定第一帧能否正确显示，与指针等关键图片同等优先
+            DecodeExecutor.getInstance().submit(DecodeExecutor.PRIORITY_CRITICAL,
+                    () -> Typeface.createFromAsset(mAssets, ASSETS_FONTS + File.separator + name),
+                    result -> onLoaded(name, result));
+        }
+        if (callback != null) {
+            callbacks.add(callback);
+        }
+    }
+
+    /**
+     * 移除还在等待中的回调
+     */
+    @MainThread
+    public void removeCallback(@NonNull Callback callback) {
+        for (ArrayList<Callback> callbacks : mPending.values()) {
+            callbacks.remove(callback);
+        }
+    }
+
+    private void onLoaded(String name, @Nullable Typeface typeface) {
+        // 加载失败时不缓存，下次 load 重新尝试
+        if (typeface != null) {
+            mTypefaces.put(name, typeface);
+        }
+        ArrayList<Callback> callbacks = mPending.remove(name);
+        if (callbacks == null) {
+            return;
+        }
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).onTypefaceReady(name, typeface);
+        }
+    }
+}
@@ -20,7 +20,6 @@ import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.support.wearable.complications.ProviderUpdateRequester;
 
@@ -46,18 +45,8 @@ public class ComplicationToggleReceiver extends BroadcastReceiver {
         ComponentName provider = extras.getParcelable(EXTRA_PROVIDER_COMPONENT);
         int complicationId = extras.getInt(EXTRA_COMPLICATION_ID);
 
-        String preferenceKey = getPreferenceKey(provider, complicationId);
-        SharedPreferences sharedPreferences =
-                context.getSharedPreferences(COMPLICATION_PROVIDER_PREFERENCES_FILE_KEY, 0);
-
-        int value = sharedPreferences.getInt(preferenceKey, 0);
-
-        // Updates data for complication.
-        value = (value + 1) % MAX_NUMBER;
-
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putInt(preferenceKey, value);
-        editor.apply();
+        // Updates data for complication, in memory and in SharedPreferences.
+        ComplicationUpdateEngine.getInstance(context).increment(complicationId);
 
         // Request an update for the complication that has just been toggled.
         ProviderUpdateRequester requester = new ProviderUpdateRequester(context, provider);
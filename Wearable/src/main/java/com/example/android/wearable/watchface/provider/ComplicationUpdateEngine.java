@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.provider;
+
+import android.app.PendingIntent;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationManager;
+import android.support.wearable.complications.ComplicationText;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Answers the update requests of {@link IncrementingNumberComplicationProviderService}.
+ *
+ * <p>The numbers are read from {@link SharedPreferences} once per complication and then kept in
+ * memory; {@link ComplicationToggleReceiver} changes them through {@link #increment(int)}. Each
+ * complication keeps its tap {@link PendingIntent} and remembers the number it was last sent, so a
+ * request for an unchanged number is answered with noUpdateRequired() instead of new
+ * {@link ComplicationData}.
+ *
+ * <p>Requests that arrive within {@link #COALESCE_WINDOW_MS} of each other, e.g. when several
+ * watch face complications use this provider, are answered together from the same numbers.
+ *
+ * <p>All methods must be called on the main thread, where provider callbacks and broadcasts are
+ * delivered.
+ */
+class ComplicationUpdateEngine {
+
+    private static final String TAG = "ComplicationProvider";
+
+    // Requests arriving within this window are answered in one batch.
+    private static final long COALESCE_WINDOW_MS = 50;
+
+    private static ComplicationUpdateEngine sInstance;
+
+    private final Context mContext;
+    private final ComponentName mProvider;
+    private final SharedPreferences mPreferences;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final SparseArray<ComplicationState> mStates = new SparseArray<>();
+    private final ArrayList<UpdateRequest> mPendingRequests = new ArrayList<>();
+    private final Runnable mFlushRunnable = this::flush;
+
+    private int mUpdateCount;
+    private int mNoUpdateRequiredCount;
+    private int mBatchCount;
+    private long mTotalLatencyMs;
+    private long mMaxLatencyMs;
+
+    static ComplicationUpdateEngine getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ComplicationUpdateEngine(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    ComplicationUpdateEngine(Context context) {
+        mContext = context;
+        mProvider = new ComponentName(context, IncrementingNumberComplicationProviderService.class);
+        mPreferences =
+                context.getSharedPreferences(
+                        ComplicationToggleReceiver.COMPLICATION_PROVIDER_PREFERENCES_FILE_KEY, 0);
+    }
+
+    /** Forgets what was sent to a newly activated complication, so it gets fresh data. */
+    void onComplicationActivated(int complicationId) {
+        ComplicationState state = mStates.get(complicationId);
+        if (state != null) {
+            state.mSent = false;
+        }
+    }
+
+    void onComplicationDeactivated(int complicationId) {
+        mStates.remove(complicationId);
+    }
+
+    /** Queues an update request; it is answered with the others in the same window. */
+    void requestUpdate(
+            int complicationId, int dataType, ComplicationManager complicationManager) {
+        mPendingRequests.add(
+                new UpdateRequest(
+                        complicationId, dataType, complicationManager,
+                        SystemClock.elapsedRealtime()));
+        if (mPendingRequests.size() == 1) {
+            mHandler.postDelayed(mFlushRunnable, COALESCE_WINDOW_MS);
+        }
+    }
+
+    /** Answers all queued requests now, e.g. before the provider service is destroyed. */
+    void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPendingRequests.isEmpty()) {
+            return;
+        }
+        mBatchCount++;
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < mPendingRequests.size(); i++) {
+            UpdateRequest request = mPendingRequests.get(i);
+            answer(request);
+            long latencyMs = now - request.mRequestTime;
+            mTotalLatencyMs += latencyMs;
+            mMaxLatencyMs = Math.max(mMaxLatencyMs, latencyMs);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Answered " + mPendingRequests.size() + " requests, " + getStats());
+        }
+        mPendingRequests.clear();
+    }
+
+    /** Increments the number of a complication and stores it. */
+    void increment(int complicationId) {
+        ComplicationState state = getState(complicationId);
+        state.mNumber = (state.mNumber + 1) % ComplicationToggleReceiver.MAX_NUMBER;
+        mPreferences
+                .edit()
+                .putInt(
+                        ComplicationToggleReceiver.getPreferenceKey(mProvider, complicationId),
+                        state.mNumber)
+                .apply();
+    }
+
+    String getStats() {
+        int answered = mUpdateCount + mNoUpdateRequiredCount;
+        return "ComplicationUpdateEngine[batches=" + mBatchCount
+                + ", updated=" + mUpdateCount
+                + ", noUpdateRequired=" + mNoUpdateRequiredCount
+                + ", avgLatencyMs=" + (answered == 0 ? 0 : mTotalLatencyMs / answered)
+                + ", maxLatencyMs=" + mMaxLatencyMs + "]";
+    }
+
+    private void answer(UpdateRequest request) {
+        int complicationId = request.mComplicationId;
+        ComplicationState state = getState(complicationId);
+        if (state.mSent
+                && state.mSentNumber == state.mNumber
+                && state.mSentDataType == request.mDataType) {
+            request.mComplicationManager.noUpdateRequired(complicationId);
+            mNoUpdateRequiredCount++;
+            return;
+        }
+
+        ComplicationData complicationData = buildData(state, request.mDataType);
+        if (complicationData != null) {
+            request.mComplicationManager.updateComplicationData(complicationId, complicationData);
+            state.mSent = true;
+            state.mSentNumber = state.mNumber;
+            state.mSentDataType = request.mDataType;
+            mUpdateCount++;
+
+        } else {
+            // If no data is sent, we still need to inform the ComplicationManager, so the update
+            // job can finish and the wake lock isn't held any longer than necessary.
+            request.mComplicationManager.noUpdateRequired(complicationId);
+            mNoUpdateRequiredCount++;
+        }
+    }
+
+    private ComplicationData buildData(ComplicationState state, int dataType) {
+        String numberText = String.format(Locale.getDefault(), "%d!", state.mNumber);
+
+        switch (dataType) {
+            case ComplicationData.TYPE_RANGED_VALUE:
+                return new ComplicationData.Builder(ComplicationData.TYPE_RANGED_VALUE)
+                        .setValue(state.mNumber)
+                        .setMinValue(0)
+                        .setMaxValue(ComplicationToggleReceiver.MAX_NUMBER)
+                        .setShortText(ComplicationText.plainText(numberText))
+                        .setTapAction(state.mTapAction)
+                        .build();
+            case ComplicationData.TYPE_SHORT_TEXT:
+                return new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                        .setShortText(ComplicationText.plainText(numberText))
+                        .setTapAction(state.mTapAction)
+                        .build();
+            case ComplicationData.TYPE_LONG_TEXT:
+                return new ComplicationData.Builder(ComplicationData.TYPE_LONG_TEXT)
+                        .setLongText(ComplicationText.plainText("Number: " + numberText))
+                        .setTapAction(state.mTapAction)
+                        .build();
+            default:
+                if (Log.isLoggable(TAG, Log.WARN)) {
+                    Log.w(TAG, "Unexpected complication type " + dataType);
+                }
+                return null;
+        }
+    }
+
+    // Loads the number and builds the tap action the first time a complication is seen.
+    private ComplicationState getState(int complicationId) {
+        ComplicationState state = mStates.get(complicationId);
+        if (state == null) {
+            state = new ComplicationState();
+            state.mNumber =
+                    mPreferences.getInt(
+                            ComplicationToggleReceiver.getPreferenceKey(mProvider, complicationId),
+                            0);
+            // We pass the complication id, so we can only update the specific complication
+            // tapped.
+            state.mTapAction =
+                    ComplicationToggleReceiver.getToggleIntent(mContext, mProvider, complicationId);
+            mStates.put(complicationId, state);
+        }
+        return state;
+    }
+
+    private static class ComplicationState {
+        int mNumber;
+        PendingIntent mTapAction;
+        // Whether the complication already shows mSentNumber as mSentDataType.
+        boolean mSent;
+        int mSentNumber;
+        int mSentDataType;
+    }
+
+    private static class UpdateRequest {
+        final int mComplicationId;
+        final int mDataType;
+        final ComplicationManager mComplicationManager;
+        final long mRequestTime;
+
+        UpdateRequest(
+                int complicationId,
+                int dataType,
+                ComplicationManager complicationManager,
+                long requestTime) {
+            mComplicationId = complicationId;
+            mDataType = dataType;
+            mComplicationManager = complicationManager;
+            mRequestTime = requestTime;
+        }
+    }
+}
@@ -16,19 +16,10 @@
 
 package com.example.android.wearable.watchface.provider;
 
-import android.app.PendingIntent;
-import android.content.ComponentName;
-import android.content.SharedPreferences;
-import android.support.wearable.complications.ComplicationData;
 import android.support.wearable.complications.ComplicationManager;
 import android.support.wearable.complications.ComplicationProviderService;
-import android.support.wearable.complications.ComplicationText;
 import android.util.Log;
 
-import com.example.android.wearable.watchface.provider.ComplicationToggleReceiver;
-
-import java.util.Locale;
-
 /**
  * Example Watch Face Complication data provider provides a number that can be incremented on tap.
  */
@@ -47,6 +38,7 @@ public class IncrementingNumberComplicationProviderService extends ComplicationP
     public void onComplicationActivated(
             int complicationId, int dataType, ComplicationManager complicationManager) {
         Log.d(TAG, "onComplicationActivated(): " + complicationId);
+        ComplicationUpdateEngine.getInstance(this).onComplicationActivated(complicationId);
     }
 
     /*
@@ -64,63 +56,10 @@ public class IncrementingNumberComplicationProviderService extends ComplicationP
             int complicationId, int dataType, ComplicationManager complicationManager) {
         Log.d(TAG, "onComplicationUpdate() id: " + complicationId);
 
-        // Create Tap Action so that the user can trigger an update by tapping the complication.
-        ComponentName thisProvider = new ComponentName(this, getClass());
-        // We pass the complication id, so we can only update the specific complication tapped.
-        PendingIntent complicationTogglePendingIntent =
-                ComplicationToggleReceiver.getToggleIntent(this, thisProvider, complicationId);
-
-        // Retrieves your data, in this case, we grab an incrementing number from SharedPrefs.
-        SharedPreferences preferences =
-                getSharedPreferences(
-                        ComplicationToggleReceiver.COMPLICATION_PROVIDER_PREFERENCES_FILE_KEY, 0);
-        int number =
-                preferences.getInt(
-                        ComplicationToggleReceiver.getPreferenceKey(thisProvider, complicationId),
-                        0);
-        String numberText = String.format(Locale.getDefault(), "%d!", number);
-
-        ComplicationData complicationData = null;
-
-        switch (dataType) {
-            case ComplicationData.TYPE_RANGED_VALUE:
-                complicationData =
-                        new ComplicationData.Builder(ComplicationData.TYPE_RANGED_VALUE)
-                                .setValue(number)
-                                .setMinValue(0)
-                                .setMaxValue(ComplicationToggleReceiver.MAX_NUMBER)
-                                .setShortText(ComplicationText.plainText(numberText))
-                                .setTapAction(complicationTogglePendingIntent)
-                                .build();
-                break;
-            case ComplicationData.TYPE_SHORT_TEXT:
-                complicationData =
-                        new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
-                                .setShortText(ComplicationText.plainText(numberText))
-                                .setTapAction(complicationTogglePendingIntent)
-                                .build();
-                break;
-            case ComplicationData.TYPE_LONG_TEXT:
-                complicationData =
-                        new ComplicationData.Builder(ComplicationData.TYPE_LONG_TEXT)
-                                .setLongText(ComplicationText.plainText("Number: " + numberText))
-                                .setTapAction(complicationTogglePendingIntent)
-                                .build();
-                break;
-            default:
-                if (Log.isLoggable(TAG, Log.WARN)) {
-                    Log.w(TAG, "Unexpected complication type " + dataType);
-                }
-        }
-
-        if (complicationData != null) {
-            complicationManager.updateComplicationData(complicationId, complicationData);
-
-        } else {
-            // If no data is sent, we still need to inform the ComplicationManager, so the update
-            // job can finish and the wake lock isn't held any longer than necessary.
-            complicationManager.noUpdateRequired(complicationId);
-        }
+        // The engine keeps each complication's number and tap action in memory, answers
+        // requests arriving together in one batch, and skips unchanged data.
+        ComplicationUpdateEngine.getInstance(this)
+                .requestUpdate(complicationId, dataType, complicationManager);
     }
 
     /*
@@ -129,5 +68,13 @@ public class IncrementingNumberComplicationProviderService extends ComplicationP
     @Override
     public void onComplicationDeactivated(int complicationId) {
         Log.d(TAG, "onComplicationDeactivated(): " + complicationId);
+        ComplicationUpdateEngine.getInstance(this).onComplicationDeactivated(complicationId);
+    }
+
+    @Override
+    public void onDestroy() {
+        // Answers queued requests before the service goes away, so their update jobs finish.
+        ComplicationUpdateEngine.getInstance(this).flush();
+        super.onDestroy();
     }
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Drops complication updates that would not change what is shown on the watch face.
+ *
+ * <p>Providers such as step count and heart rate push updates often, and many of them carry the
+ * same values as the previous update. Passing those to a {@code ComplicationDrawable} throws
+ * away its rendering and costs a redraw for nothing. {@link #shouldApply(int, ComplicationData)}
+ * compares the type, values, texts, images and tap action that the complication's type can show
+ * against the last applied data, and only returns true when one of them differs.
+ *
+ * <p>The comparison errs on the side of applying: time-dependent texts, such as countdowns, and
+ * images that cannot be compared cheaply always count as changed.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+public class ComplicationDataDiffer {
+
+    // Keys of the active window in the fields ComplicationData writes to its parcel, the same ones
+    // its isActive() reads. The window has no getters in the support library.
+    private static final String FIELD_START_TIME = "START_TIME";
+    private static final String FIELD_END_TIME = "END_TIME";
+
+    private final Context mContext;
+    private final SparseArray<ComplicationData> mLastData = new SparseArray<>();
+    private final SparseIntArray mAppliedCounts = new SparseIntArray();
+    private final SparseIntArray mDroppedCounts = new SparseIntArray();
+
+    public ComplicationDataDiffer(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Records {@code data} as the latest update for {@code complicationId}.
+     *
+     * @return true if the update changes what the complication shows and should be passed on to
+     *     the drawable, false if it can be dropped
+     */
+    public boolean shouldApply(int complicationId, @Nullable ComplicationData data) {
+        ComplicationData lastData = mLastData.get(complicationId);
+        // The first update for an id is always applied, even if it is null.
+        boolean changed =
+                mLastData.indexOfKey(complicationId) < 0
+                        || !isSameContent(lastData, data, System.currentTimeMillis());
+        if (changed) {
+            mLastData.put(complicationId, data);
+            mAppliedCounts.put(complicationId, mAppliedCounts.get(complicationId) + 1);
+        } else {
+            mDroppedCounts.put(complicationId, mDroppedCounts.get(complicationId) + 1);
+        }
+        return changed;
+    }
+
+    public int getAppliedCount(int complicationId) {
+        return mAppliedCounts.get(complicationId);
+    }
+
+    public int getDroppedCount(int complicationId) {
+        return mDroppedCounts.get(complicationId);
+    }
+
+    public String getStats() {
+        StringBuilder builder = new StringBuilder("ComplicationDataDiffer[");
+        for (int i = 0; i < mLastData.size(); i++) {
+            int complicationId = mLastData.keyAt(i);
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append("id=").append(complicationId)
+                    .append(" applied=").append(mAppliedCounts.get(complicationId))
+                    .append(" dropped=").append(mDroppedCounts.get(complicationId));
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Returns true if {@code a} and {@code b} render the same at {@code currentTimeMillis} and
+     * keep doing so afterwards, i.e. they also share the same active window.
+     */
+    private boolean isSameContent(
+            @Nullable ComplicationData a, @Nullable ComplicationData b, long currentTimeMillis) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.getType() != b.getType()) {
+            return false;
+        }
+        if (!Objects.equals(a.getTapAction(), b.getTapAction()) || !isSameActiveWindow(a, b)) {
+            return false;
+        }
+        // Only read the fields the type supports; the others are not rendered.
+        switch (a.getType()) {
+            case ComplicationData.TYPE_RANGED_VALUE:
+                return a.getValue() == b.getValue()
+                        && a.getMinValue() == b.getMinValue()
+                        && a.getMaxValue() == b.getMaxValue()
+                        && isSameShortText(a, b, currentTimeMillis)
+                        && isSameIcon(a, b);
+            case ComplicationData.TYPE_SHORT_TEXT:
+            case ComplicationData.TYPE_NO_PERMISSION:
+                return isSameShortText(a, b, currentTimeMillis) && isSameIcon(a, b);
+            case ComplicationData.TYPE_LONG_TEXT:
+                return isSameText(a.getLongText(), b.getLongText(), currentTimeMillis)
+                        && isSameText(a.getLongTitle(), b.getLongTitle(), currentTimeMillis)
+                        && isSameIcon(a, b)
+                        && isSameParcelable(a.getSmallImage(), b.getSmallImage())
+                        && a.getImageStyle() == b.getImageStyle();
+            case ComplicationData.TYPE_ICON:
+                return isSameIcon(a, b);
+            case ComplicationData.TYPE_SMALL_IMAGE:
+                return isSameParcelable(a.getSmallImage(), b.getSmallImage())
+                        && a.getImageStyle() == b.getImageStyle();
+            case ComplicationData.TYPE_LARGE_IMAGE:
+                return isSameParcelable(a.getLargeImage(), b.getLargeImage());
+            default:
+                // TYPE_EMPTY, TYPE_NO_DATA and TYPE_NOT_CONFIGURED carry nothing but the type.
+                return true;
+        }
+    }
+
+    /**
+     * Compares the times between which {@code a} and {@code b} are active. Comparing isActive()
+     * now is not enough: data that becomes active or expires later would be dropped.
+     */
+    private static boolean isSameActiveWindow(ComplicationData a, ComplicationData b) {
+        long[] windowA = new long[2];
+        long[] windowB = new long[2];
+        return readActiveWindow(a, windowA)
+                && readActiveWindow(b, windowB)
+                && Arrays.equals(windowA, windowB);
+    }
+
+    /**
+     * Reads the start and end of the active window from the fields bundle that ComplicationData
+     * writes after its type.
+     *
+     * @return false if the data could not be read back
+     */
+    private static boolean readActiveWindow(ComplicationData data, long[] outWindow) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            data.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            parcel.readInt(); // type
+            Bundle fields = parcel.readBundle(ComplicationData.class.getClassLoader());
+            if (fields == null) {
+                return false;
+            }
+            outWindow[0] = fields.getLong(FIELD_START_TIME, 0);
+            outWindow[1] = fields.getLong(FIELD_END_TIME, Long.MAX_VALUE);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private boolean isSameShortText(
+            ComplicationData a, ComplicationData b, long currentTimeMillis) {
+        return isSameText(a.getShortText(), b.getShortText(), currentTimeMillis)
+                && isSameText(a.getShortTitle(), b.getShortTitle(), currentTimeMillis);
+    }
+
+    private static boolean isSameIcon(ComplicationData a, ComplicationData b) {
+        return isSameParcelable(a.getIcon(), b.getIcon())
+                && isSameParcelable(
+                        a.getBurnInProtectionIcon(), b.getBurnInProtectionIcon());
+    }
+
+    private boolean isSameText(
+            @Nullable ComplicationText a, @Nullable ComplicationText b, long currentTimeMillis) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        // Two time-dependent texts can match now and still diverge later.
+        if (a.getNextChangeTime(currentTimeMillis) != Long.MAX_VALUE
+                || b.getNextChangeTime(currentTimeMillis) != Long.MAX_VALUE) {
+            return false;
+        }
+        return TextUtils.equals(
+                a.getText(mContext, currentTimeMillis), b.getText(mContext, currentTimeMillis));
+    }
+
+    /**
+     * Compares two {@link android.graphics.drawable.Icon}s by their parceled form, which holds
+     * the resource id, uri or pixels, since Icon does not implement equals().
+     */
+    private static boolean isSameParcelable(@Nullable Parcelable a, @Nullable Parcelable b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        Parcel parcelA = Parcel.obtain();
+        Parcel parcelB = Parcel.obtain();
+        try {
+            a.writeToParcel(parcelA, 0);
+            b.writeToParcel(parcelB, 0);
+            return Arrays.equals(parcelA.marshall(), parcelB.marshall());
+        } catch (RuntimeException e) {
+            // Large bitmaps are written as file descriptors, which cannot be marshalled.
+            return false;
+        } finally {
+            parcelA.recycle();
+            parcelB.recycle();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.res.XmlResourceParser;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.wearable.complications.ComplicationData;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.XmlRes;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Complication slots of a watch face, read from an XML resource such as
+ * {@code res/xml/analog_complication_slots.xml}.
+ *
+ * <p>Each {@code <slot>} declares the complication id, a location name used by the settings
+ * activity, its bounds as fractions of the screen, the supported complication types and an
+ * optional default provider, either a flattened ComponentName or a reference to a string resource
+ * holding one. The watch face and its settings activity both read the same
+ * instance, so adding a slot only needs a new line in the resource.
+ *
+ * <p>Layouts are parsed once per process and are immutable. Pixel bounds are computed with
+ * {@link Slot#getBounds(int, int, Rect)} when the surface size changes, not per frame.
+ */
+public class ComplicationLayout {
+
+    private static final String TAG_SLOT = "slot";
+
+    private static final SparseArray<ComplicationLayout> sLayouts = new SparseArray<>();
+
+    private final List<Slot> mSlots;
+    private final int[] mComplicationIds;
+
+    /** One complication slot of the layout. */
+    public static class Slot {
+        private final int mId;
+        private final String mLocation;
+        private final RectF mRelativeBounds;
+        private final int[] mSupportedTypes;
+        @Nullable private final ComponentName mDefaultProvider;
+        private final int mDefaultType;
+
+        Slot(
+                int id,
+                String location,
+                RectF relativeBounds,
+                int[] supportedTypes,
+                @Nullable ComponentName defaultProvider,
+                int defaultType) {
+            mId = id;
+            mLocation = location;
+            mRelativeBounds = relativeBounds;
+            mSupportedTypes = supportedTypes;
+            mDefaultProvider = defaultProvider;
+            mDefaultType = defaultType;
+        }
+
+        public int getId() {
+            return mId;
+        }
+
+        /** Location name, e.g. "LEFT", matching the settings activity's ComplicationLocation. */
+        @NonNull
+        public String getLocation() {
+            return mLocation;
+        }
+
+        /** Complication types this slot accepts, as ComplicationData.TYPE_* constants. */
+        @NonNull
+        public int[] getSupportedTypes() {
+            return mSupportedTypes.clone();
+        }
+
+        @Nullable
+        public ComponentName getDefaultProvider() {
+            return mDefaultProvider;
+        }
+
+        /** Type requested from the default provider; only meaningful if there is one. */
+        public int getDefaultType() {
+            return mDefaultType;
+        }
+
+        /** Computes the slot's pixel bounds on a surface of the given size. */
+        public void getBounds(int width, int height, @NonNull Rect outBounds) {
+            outBounds.set(
+                    Math.round(mRelativeBounds.left * width),
+                    Math.round(mRelativeBounds.top * height),
+                    Math.round(mRelativeBounds.right * width),
+                    Math.round(mRelativeBounds.bottom * height));
+        }
+    }
+
+    /** Returns the layout defined by the given XML resource, parsing it on first use. */
+    @NonNull
+    public static ComplicationLayout get(@NonNull Context context, @XmlRes int resId) {
+        synchronized (sLayouts) {
+            ComplicationLayout layout = sLayouts.get(resId);
+            if (layout == null) {
+                layout = new ComplicationLayout(parseSlots(context, resId));
+                sLayouts.put(resId, layout);
+            }
+            return layout;
+        }
+    }
+
+    private ComplicationLayout(List<Slot> slots) {
+        mSlots = Collections.unmodifiableList(slots);
+        mComplicationIds = new int[slots.size()];
+        for (int i = 0; i < slots.size(); i++) {
+            mComplicationIds[i] = slots.get(i).getId();
+        }
+    }
+
+    /** All slots, bottom to top. */
+    @NonNull
+    public List<Slot> getSlots() {
+        return mSlots;
+    }
+
+    /** Ids of all slots, bottom to top, e.g. for setActiveComplications(). */
+    @NonNull
+    public int[] getComplicationIds() {
+        return mComplicationIds.clone();
+    }
+
+    @Nullable
+    public Slot findSlotById(int complicationId) {
+        for (int i = 0; i < mSlots.size(); i++) {
+            if (mSlots.get(i).getId() == complicationId) {
+                return mSlots.get(i);
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    public Slot findSlotByLocation(@NonNull String location) {
+        for (int i = 0; i < mSlots.size(); i++) {
+            if (mSlots.get(i).getLocation().equals(location)) {
+                return mSlots.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static List<Slot> parseSlots(Context context, @XmlRes int resId) {
+        return parseSlots(context, context.getResources().getXml(resId));
+    }
+
+    /** Reads all {@code <slot>} elements and closes the parser. */
+    @VisibleForTesting
+    static List<Slot> parseSlots(Context context, XmlResourceParser parser) {
+        ArrayList<Slot> slots = new ArrayList<>();
+        try {
+            int event;
+            while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG && TAG_SLOT.equals(parser.getName())) {
+                    slots.add(parseSlot(context, parser));
+                }
+            }
+        } catch (XmlPullParserException | IOException e) {
+            throw new IllegalStateException("Cannot read complication slots", e);
+        } finally {
+            parser.close();
+        }
+        return slots;
+    }
+
+    private static Slot parseSlot(Context context, XmlResourceParser parser) {
+        RectF relativeBounds =
+                new RectF(
+                        Float.parseFloat(getRequired(parser, "left")),
+                        Float.parseFloat(getRequired(parser, "top")),
+                        Float.parseFloat(getRequired(parser, "right")),
+                        Float.parseFloat(getRequired(parser, "bottom")));
+
+        String[] typeNames = getRequired(parser, "supportedTypes").split("\\|");
+        int[] supportedTypes = new int[typeNames.length];
+        for (int i = 0; i < typeNames.length; i++) {
+            supportedTypes[i] = parseType(typeNames[i].trim());
+        }
+
+        ComponentName defaultProvider = null;
+        int defaultType = ComplicationData.TYPE_EMPTY;
+        int providerResId = parser.getAttributeResourceValue(null, "defaultProvider", 0);
+        String provider =
+                providerResId != 0
+                        ? context.getString(providerResId)
+                        : parser.getAttributeValue(null, "defaultProvider");
+        if (provider != null) {
+            defaultProvider = ComponentName.unflattenFromString(provider);
+            if (defaultProvider == null) {
+                throw new IllegalStateException("Invalid defaultProvider: " + provider);
+            }
+            defaultType = parseType(getRequired(parser, "defaultType"));
+        }
+
+        return new Slot(
+                Integer.parseInt(getRequired(parser, "id")),
+                getRequired(parser, "location"),
+                relativeBounds,
+                supportedTypes,
+                defaultProvider,
+                defaultType);
+    }
+
+    private static String getRequired(XmlResourceParser parser, String name) {
+        String value = parser.getAttributeValue(null, name);
+        if (value == null) {
+            throw new IllegalStateException(
+                    "Missing " + name + " in <slot> at " + parser.getPositionDescription());
+        }
+        return value;
+    }
+
+    private static int parseType(String name) {
+        switch (name) {
+            case "short_text":
+                return ComplicationData.TYPE_SHORT_TEXT;
+            case "long_text":
+                return ComplicationData.TYPE_LONG_TEXT;
+            case "ranged_value":
+                return ComplicationData.TYPE_RANGED_VALUE;
+            case "icon":
+                return ComplicationData.TYPE_ICON;
+            case "small_image":
+                return ComplicationData.TYPE_SMALL_IMAGE;
+            case "large_image":
+                return ComplicationData.TYPE_LARGE_IMAGE;
+            default:
+                throw new IllegalStateException("Unknown complication type: " + name);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.android.wearable.watchface.mobvoi.BitmapPool;
+
+/**
+ * Caches the rendered output of one {@link ComplicationDrawable} in an offscreen bitmap.
+ *
+ * <p>A complication only changes when its data is updated, so redrawing it on every 1 Hz frame
+ * is wasted work. The cached bitmap is reused until one of the following happens:
+ *
+ * <ul>
+ *   <li>new data arrives through {@link #setComplicationData(ComplicationData)};
+ *   <li>the ambient mode changes, or {@link #invalidate()} is called after a style, bounds or
+ *       screen property change;
+ *   <li>the drawable invalidates itself, e.g. when an icon finishes loading or a tap highlight
+ *       starts or ends;
+ *   <li>a time-dependent text, such as a countdown, reaches its next change time;
+ *   <li>the data becomes active or inactive.
+ * </ul>
+ *
+ * <p>All methods must be called on the main thread.
+ */
+public class ComplicationRenderCache {
+
+    private final int mId;
+    private final ComplicationDrawable mDrawable;
+    private final Runnable mInvalidator;
+    private final Rect mBounds = new Rect();
+
+    @Nullable private ComplicationData mData;
+    @Nullable private Bitmap mBitmap;
+    private Canvas mBitmapCanvas;
+    private boolean mDirty = true;
+    private boolean mAmbient;
+    private boolean mActive;
+    private long mRenderTime;
+    private long mNextChangeTime = Long.MAX_VALUE;
+
+    private int mRenderCount;
+    private int mReuseCount;
+
+    /**
+     * @param id the complication id, only used in {@link #getStats()}
+     * @param drawable the drawable to render. Its {@link Drawable.Callback} is replaced so that
+     *     self-invalidations reach this cache.
+     * @param invalidator called when the drawable invalidates itself, usually the engine's
+     *     {@code invalidate()}
+     */
+    public ComplicationRenderCache(
+            int id, @NonNull ComplicationDrawable drawable, @NonNull Runnable invalidator) {
+        mId = id;
+        mDrawable = drawable;
+        mInvalidator = invalidator;
+        mDrawable.setCallback(
+                new Drawable.Callback() {
+                    @Override
+                    public void invalidateDrawable(@NonNull Drawable who) {
+                        mDirty = true;
+                        mInvalidator.run();
+                    }
+
+                    @Override
+                    public void scheduleDrawable(
+                            @NonNull Drawable who, @NonNull Runnable what, long when) {}
+
+                    @Override
+                    public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {}
+                });
+    }
+
+    @NonNull
+    public ComplicationDrawable getDrawable() {
+        return mDrawable;
+    }
+
+    /** Passes the data to the drawable and re-renders on the next draw. */
+    public void setComplicationData(@Nullable ComplicationData data) {
+        mData = data;
+        mDrawable.setComplicationData(data);
+        mDirty = true;
+    }
+
+    /** Passes the ambient mode to the drawable and re-renders if it changed. */
+    public void setInAmbientMode(boolean ambient) {
+        mDrawable.setInAmbientMode(ambient);
+        if (mAmbient != ambient) {
+            mAmbient = ambient;
+            mDirty = true;
+        }
+    }
+
+    /** Re-renders on the next draw, e.g. after the drawable's colors or bounds were changed. */
+    public void invalidate() {
+        mDirty = true;
+    }
+
+    /** Draws the complication, rendering it into the cached bitmap first if it is stale. */
+    public void draw(@NonNull Canvas canvas, long currentTimeMillis) {
+        Rect bounds = mDrawable.getBounds();
+        if (bounds.isEmpty()) {
+            return;
+        }
+        boolean active = mData != null && mData.isActive(currentTimeMillis);
+        if (mBitmap == null
+                || mDirty
+                || active != mActive
+                || currentTimeMillis >= mNextChangeTime
+                || currentTimeMillis < mRenderTime
+                || !bounds.equals(mBounds)) {
+            render(bounds, currentTimeMillis, active);
+            mRenderCount++;
+        } else {
+            mReuseCount++;
+        }
+        canvas.drawBitmap(mBitmap, mBounds.left, mBounds.top, null);
+    }
+
+    /** Returns the cached bitmap to the {@link BitmapPool}; call from onDestroy. */
+    public void release() {
+        BitmapPool.getInstance().put(mBitmap);
+        mBitmap = null;
+        mBitmapCanvas = null;
+        mDirty = true;
+    }
+
+    /** Number of draws that had to render the complication again. */
+    public int getRenderCount() {
+        return mRenderCount;
+    }
+
+    /** Number of draws that reused the cached bitmap. */
+    public int getReuseCount() {
+        return mReuseCount;
+    }
+
+    public String getStats() {
+        return "ComplicationRenderCache[id=" + mId + ", render=" + mRenderCount
+                + ", reuse=" + mReuseCount + "]";
+    }
+
+    private void render(Rect bounds, long currentTimeMillis, boolean active) {
+        if (mBitmap == null || !bounds.equals(mBounds)) {
+            BitmapPool.getInstance().put(mBitmap);
+            mBitmap = BitmapPool.getInstance().get(
+                    bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            mBitmapCanvas = new Canvas(mBitmap);
+            mBounds.set(bounds);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        // The drawable keeps its bounds in screen coordinates, so shift the bitmap canvas.
+        mBitmapCanvas.save();
+        mBitmapCanvas.translate(-bounds.left, -bounds.top);
+        mDrawable.draw(mBitmapCanvas, currentTimeMillis);
+        mBitmapCanvas.restore();
+
+        mDirty = false;
+        mActive = active;
+        mRenderTime = currentTimeMillis;
+        mNextChangeTime = active ? getNextChangeTime(mData, currentTimeMillis) : Long.MAX_VALUE;
+    }
+
+    /** Returns the earliest time after {@code fromTime} at which any displayed text changes. */
+    private static long getNextChangeTime(@Nullable ComplicationData data, long fromTime) {
+        if (data == null) {
+            return Long.MAX_VALUE;
+        }
+        switch (data.getType()) {
+            case ComplicationData.TYPE_SHORT_TEXT:
+            case ComplicationData.TYPE_RANGED_VALUE:
+            case ComplicationData.TYPE_NO_PERMISSION:
+                return Math.min(
+                        getNextChangeTime(data.getShortText(), fromTime),
+                        getNextChangeTime(data.getShortTitle(), fromTime));
+            case ComplicationData.TYPE_LONG_TEXT:
+                return Math.min(
+                        getNextChangeTime(data.getLongText(), fromTime),
+                        getNextChangeTime(data.getLongTitle(), fromTime));
+            default:
+                return Long.MAX_VALUE;
+        }
+    }
+
+    private static long getNextChangeTime(@Nullable ComplicationText text, long fromTime) {
+        return text == null ? Long.MAX_VALUE : text.getNextChangeTime(fromTime);
+    }
+}
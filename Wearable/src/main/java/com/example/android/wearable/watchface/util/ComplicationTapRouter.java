@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import android.graphics.Rect;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Resolves taps on a watch face to the complication under them.
+ *
+ * <p>Instead of asking every {@link ComplicationDrawable} whether it was tapped, the screen is
+ * split into a fixed grid when the complications are laid out. Each cell lists the complications
+ * overlapping it, topmost first, so a tap only looks at the few complications in its own cell no
+ * matter how many the face has.
+ *
+ * <p>Call {@link #setSurfaceSize(int, int)} and then {@link #add(int, ComplicationDrawable)} for
+ * every complication, bottom to top, each time the bounds change, e.g. in onSurfaceChanged().
+ * All methods must be called on the main thread.
+ */
+public class ComplicationTapRouter {
+
+    /** Returned when no complication is under the tap or none handled it. */
+    public static final int NO_TARGET = -1;
+
+    // Cells per side. Complications are rarely smaller than an eighth of the screen, so each
+    // cell holds at most a handful of them.
+    private static final int GRID_SIZE = 8;
+
+    private final ArrayList<Target> mTargets = new ArrayList<>();
+    // Indices into mTargets for each cell, topmost first.
+    private final int[][] mCellTargets = new int[GRID_SIZE * GRID_SIZE][];
+    private final int[] mCellCounts = new int[GRID_SIZE * GRID_SIZE];
+    private int mWidth;
+    private int mHeight;
+
+    /** Clears all targets and sets the size of the area taps are reported in. */
+    public void setSurfaceSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mTargets.clear();
+        Arrays.fill(mCellCounts, 0);
+    }
+
+    /**
+     * Adds a complication using the drawable's current bounds. Complications added later are
+     * considered to be drawn above the earlier ones.
+     */
+    public void add(int complicationId, @NonNull ComplicationDrawable drawable) {
+        Rect bounds = new Rect(drawable.getBounds());
+        if (mWidth <= 0 || mHeight <= 0 || !bounds.intersect(0, 0, mWidth, mHeight)) {
+            return;
+        }
+        int index = mTargets.size();
+        mTargets.add(new Target(complicationId, drawable, bounds));
+
+        int left = getColumn(bounds.left);
+        int right = getColumn(bounds.right - 1);
+        int top = getRow(bounds.top);
+        int bottom = getRow(bounds.bottom - 1);
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                insertFirst(row * GRID_SIZE + column, index);
+            }
+        }
+    }
+
+    /** Returns the id of the topmost complication whose bounds contain the point. */
+    public int findTarget(int x, int y) {
+        int cell = getCell(x, y);
+        if (cell < 0) {
+            return NO_TARGET;
+        }
+        int[] targets = mCellTargets[cell];
+        for (int i = 0; i < mCellCounts[cell]; i++) {
+            Target target = mTargets.get(targets[i]);
+            if (target.mBounds.contains(x, y)) {
+                return target.mId;
+            }
+        }
+        return NO_TARGET;
+    }
+
+    /**
+     * Passes the tap to the complications under it, topmost first, until one handles it. A
+     * complication without a tap action lets the tap through to the one below, e.g. the
+     * background complication.
+     *
+     * @return the id of the complication that handled the tap, or {@link #NO_TARGET}
+     */
+    public int dispatchTap(int x, int y) {
+        int cell = getCell(x, y);
+        if (cell < 0) {
+            return NO_TARGET;
+        }
+        int[] targets = mCellTargets[cell];
+        for (int i = 0; i < mCellCounts[cell]; i++) {
+            Target target = mTargets.get(targets[i]);
+            if (target.mBounds.contains(x, y) && target.mDrawable.onTap(x, y)) {
+                return target.mId;
+            }
+        }
+        return NO_TARGET;
+    }
+
+    private void insertFirst(int cell, int index) {
+        int[] targets = mCellTargets[cell];
+        int count = mCellCounts[cell];
+        if (targets == null) {
+            targets = new int[4];
+        } else if (count == targets.length) {
+            targets = Arrays.copyOf(targets, count * 2);
+        }
+        System.arraycopy(targets, 0, targets, 1, count);
+        targets[0] = index;
+        mCellTargets[cell] = targets;
+        mCellCounts[cell] = count + 1;
+    }
+
+    private int getCell(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return -1;
+        }
+        return getRow(y) * GRID_SIZE + getColumn(x);
+    }
+
+    private int getColumn(int x) {
+        return x * GRID_SIZE / mWidth;
+    }
+
+    private int getRow(int y) {
+        return y * GRID_SIZE / mHeight;
+    }
+
+    private static class Target {
+        final int mId;
+        final ComplicationDrawable mDrawable;
+        final Rect mBounds;
+
+        Target(int id, ComplicationDrawable drawable, Rect bounds) {
+            mId = id;
+            mDrawable = drawable;
+            mBounds = bounds;
+        }
+    }
+}
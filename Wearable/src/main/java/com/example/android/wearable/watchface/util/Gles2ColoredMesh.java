@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import android.opengl.GLES20;
+
+/**
+ * Triangles with per-vertex RGBA colors, packed into one interleaved GPU-resident vertex buffer
+ * and drawn using OpenGL ES 2.0.
+ *
+ * <p>Because the color travels with each vertex, objects of different colors can share a single
+ * draw call. Objects that need their own transformation, like the hands of a watch face, are
+ * added as separate {@link Range}s of the same mesh and drawn with their own MVP matrix.
+ *
+ * <pre>
+ * Gles2ColoredMesh.Builder builder = new Gles2ColoredMesh.Builder();
+ * builder.startRange();
+ * builder.add(majorTickCoords, white);
+ * builder.add(minorTickCoords, gray);
+ * Gles2ColoredMesh.Range dial = builder.endRange();
+ * Gles2ColoredMesh.Range hand = builder.add(handCoords, red);
+ * Gles2ColoredMesh mesh = builder.build(new Gles2ColoredMesh.Program());</pre>
+ */
+public class Gles2ColoredMesh {
+    /** Whether to check for GL errors. This is slow, so not appropriate for production builds. */
+    private static final boolean CHECK_GL_ERRORS = false;
+
+    /** Number of coordinates per vertex: one for each of x, y, and z. */
+    private static final int COORDS_PER_VERTEX = 3;
+
+    /** Number of color components per vertex: red, green, blue and alpha. */
+    private static final int COLORS_PER_VERTEX = 4;
+
+    /** Number of floats per interleaved vertex. */
+    private static final int FLOATS_PER_VERTEX = COORDS_PER_VERTEX + COLORS_PER_VERTEX;
+
+    /** Number of bytes to store a float in GL. */
+    private static final int BYTES_PER_FLOAT = Gles2ColoredTriangleList.BYTES_PER_FLOAT;
+
+    /** Number of bytes per interleaved vertex. */
+    private static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * BYTES_PER_FLOAT;
+
+    /** Triangles have three vertices. */
+    private static final int VERTICES_PER_TRIANGLE = 3;
+
+    /** Number of draw calls issued since the last {@link #resetCallCounts()}. */
+    private static int sDrawCallCount;
+
+    /** Number of state-setting GL calls issued since the last {@link #resetCallCounts()}. */
+    private static int sStateCallCount;
+
+    /** Shaders to render this mesh. */
+    private final Program mProgram;
+
+    /** GL name of the interleaved vertex buffer, or 0 after {@link #release()}. */
+    private int mBufferId;
+
+    /** Range covering every vertex of this mesh. */
+    private final Range mAll;
+
+    private Gles2ColoredMesh(Program program, float[] vertices) {
+        mProgram = program;
+        mAll = new Range(0, vertices.length / FLOATS_PER_VERTEX);
+
+        FloatBuffer buffer = ByteBuffer.allocateDirect(vertices.length * BYTES_PER_FLOAT)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(vertices);
+        buffer.position(0);
+
+        int[] buffers = new int[1];
+        GLES20.glGenBuffers(1, buffers, 0);
+        if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glGenBuffers");
+        mBufferId = buffers[0];
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertices.length * BYTES_PER_FLOAT,
+                buffer, GLES20.GL_STATIC_DRAW);
+        if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glBufferData");
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Draws the whole mesh.
+     *
+     * @param mvpMatrix the Model View Project matrix to draw this mesh
+     */
+    public void draw(float[] mvpMatrix) {
+        draw(mvpMatrix, mAll);
+    }
+
+    /**
+     * Draws one range of the mesh with a single draw call.
+     *
+     * @param mvpMatrix the Model View Project matrix to draw this range
+     * @param range range returned by the {@link Builder} that built this mesh
+     */
+    public void draw(float[] mvpMatrix, Range range) {
+        if (mBufferId == 0) {
+            throw new IllegalStateException("mesh already released");
+        }
+        mProgram.bind(mvpMatrix, mBufferId);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, range.mFirstVertex, range.mNumVertices);
+        if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glDrawArrays");
+        sDrawCallCount++;
+    }
+
+    /**
+     * Deletes the vertex buffer. Must be called with the GL context current. Call
+     * {@link Program#use()} again before drawing other meshes with the same program.
+     */
+    public void release() {
+        if (mBufferId != 0) {
+            GLES20.glDeleteBuffers(1, new int[]{mBufferId}, 0);
+            mBufferId = 0;
+        }
+    }
+
+    /** Returns the number of draw calls issued since the last {@link #resetCallCounts()}. */
+    public static int getDrawCallCount() {
+        return sDrawCallCount;
+    }
+
+    /**
+     * Returns the number of state-setting GL calls (uniforms, attribute pointers, buffer binds)
+     * issued since the last {@link #resetCallCounts()}.
+     */
+    public static int getStateCallCount() {
+        return sStateCallCount;
+    }
+
+    /** Resets the draw and state call counters, typically at the start of a frame. */
+    public static void resetCallCounts() {
+        sDrawCallCount = 0;
+        sStateCallCount = 0;
+    }
+
+    /** A contiguous run of vertices in a mesh that can be drawn with one draw call. */
+    public static final class Range {
+        private final int mFirstVertex;
+        private final int mNumVertices;
+
+        private Range(int firstVertex, int numVertices) {
+            mFirstVertex = firstVertex;
+            mNumVertices = numVertices;
+        }
+    }
+
+    /** Collects triangles and their colors, then uploads them as one {@link Gles2ColoredMesh}. */
+    public static class Builder {
+        private float[] mVertices = new float[FLOATS_PER_VERTEX * VERTICES_PER_TRIANGLE * 16];
+        private int mNumVertices;
+        private int mRangeStart = -1;
+
+        /**
+         * Adds triangles drawn in a single solid color.
+         *
+         * @param triangleCoords flat array of 3D coordinates of triangle vertices in
+         *                       counterclockwise order
+         * @param color color in RGBA order, each in the range [0, 1]
+         * @return the range covering the added triangles
+         */
+        public Range add(float[] triangleCoords, float[] color) {
+            if (color.length != COLORS_PER_VERTEX) {
+                throw new IllegalArgumentException("wrong number of color components");
+            }
+            int numVertices = checkCoords(triangleCoords);
+            float[] vertexColors = new float[numVertices * COLORS_PER_VERTEX];
+            for (int i = 0; i < numVertices; i++) {
+                System.arraycopy(color, 0, vertexColors, i * COLORS_PER_VERTEX, COLORS_PER_VERTEX);
+            }
+            return addWithVertexColors(triangleCoords, vertexColors);
+        }
+
+        /**
+         * Adds triangles with one color per vertex. Colors are interpolated across each triangle.
+         *
+         * @param triangleCoords flat array of 3D coordinates of triangle vertices in
+         *                       counterclockwise order
+         * @param vertexColors flat array of RGBA colors, one per vertex, each component in the
+         *                     range [0, 1]
+         * @return the range covering the added triangles
+         */
+        public Range addWithVertexColors(float[] triangleCoords, float[] vertexColors) {
+            int numVertices = checkCoords(triangleCoords);
+            if (vertexColors.length != numVertices * COLORS_PER_VERTEX) {
+                throw new IllegalArgumentException("must have one RGBA color per vertex");
+            }
+            ensureCapacity((mNumVertices + numVertices) * FLOATS_PER_VERTEX);
+            int firstVertex = mNumVertices;
+            int offset = mNumVertices * FLOATS_PER_VERTEX;
+            for (int i = 0; i < numVertices; i++) {
+                System.arraycopy(triangleCoords, i * COORDS_PER_VERTEX, mVertices, offset,
+                        COORDS_PER_VERTEX);
+                offset += COORDS_PER_VERTEX;
+                System.arraycopy(vertexColors, i * COLORS_PER_VERTEX, mVertices, offset,
+                        COLORS_PER_VERTEX);
+                offset += COLORS_PER_VERTEX;
+            }
+            mNumVertices += numVertices;
+            return new Range(firstVertex, numVertices);
+        }
+
+        /**
+         * Starts a range that will cover everything added until {@link #endRange()}, so several
+         * objects can be drawn with one draw call.
+         */
+        public void startRange() {
+            mRangeStart = mNumVertices;
+        }
+
+        /** Ends the range started by {@link #startRange()}. */
+        public Range endRange() {
+            if (mRangeStart < 0) {
+                throw new IllegalStateException("startRange() not called");
+            }
+            Range range = new Range(mRangeStart, mNumVertices - mRangeStart);
+            mRangeStart = -1;
+            return range;
+        }
+
+        /**
+         * Uploads the collected triangles into a GPU-resident vertex buffer with
+         * {@code GL_STATIC_DRAW}. Must be called with the GL context current.
+         *
+         * @param program program for drawing meshes
+         */
+        public Gles2ColoredMesh build(Program program) {
+            return new Gles2ColoredMesh(program,
+                    Arrays.copyOf(mVertices, mNumVertices * FLOATS_PER_VERTEX));
+        }
+
+        private static int checkCoords(float[] triangleCoords) {
+            if (triangleCoords.length % (VERTICES_PER_TRIANGLE * COORDS_PER_VERTEX) != 0) {
+                throw new IllegalArgumentException("must be multiple"
+                        + " of VERTICES_PER_TRIANGLE * COORDS_PER_VERTEX coordinates");
+            }
+            return triangleCoords.length / COORDS_PER_VERTEX;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > mVertices.length) {
+                mVertices = Arrays.copyOf(mVertices, Math.max(capacity, mVertices.length * 2));
+            }
+        }
+    }
+
+    /** OpenGL shaders for drawing meshes with per-vertex colors. */
+    public static class Program {
+        /** Vertex shader that transforms the vertex by the MVP matrix and passes its color on. */
+        private static final String VERTEX_SHADER_CODE = "" +
+                "uniform mat4 uMvpMatrix;\n" +
+                "attribute vec4 aPosition;\n" +
+                "attribute vec4 aColor;\n" +
+                "varying vec4 vColor;\n" +
+                "void main() {\n" +
+                "    vColor = aColor;\n" +
+                "    gl_Position = uMvpMatrix * aPosition;\n" +
+                "}\n";
+
+        /** Fragment shader that draws with the interpolated vertex color. */
+        private static final String FRAGMENT_SHADER_CODE = "" +
+                "precision mediump float;\n" +
+                "varying vec4 vColor;\n" +
+                "void main() {\n" +
+                "    gl_FragColor = vColor;\n" +
+                "}\n";
+
+        /** ID OpenGL uses to identify this program. */
+        private final int mProgramId;
+
+        /** Handle for uMvpMatrix uniform in vertex shader. */
+        private final int mMvpMatrixHandle;
+
+        /** Handle for aPosition attribute in vertex shader. */
+        private final int mPositionHandle;
+
+        /** Handle for aColor attribute in vertex shader. */
+        private final int mColorHandle;
+
+        /*
+         * GL state last set through this program, used to skip redundant calls. Only valid while
+         * this program is in use, so it's reset by use().
+         */
+        private final float[] mBoundMvpMatrix = new float[16];
+        private boolean mMvpMatrixBound;
+        private int mBoundBufferId;
+
+        /**
+         * Creates a program to draw meshes. For optimal drawing efficiency, one program should be
+         * used for all meshes being drawn.
+         */
+        public Program() {
+            // Prepare shaders.
+            int vertexShader = Gles2ColoredTriangleList.loadShader(
+                    GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_CODE);
+            int fragmentShader = Gles2ColoredTriangleList.loadShader(
+                    GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_CODE);
+
+            // Create empty OpenGL Program.
+            mProgramId = GLES20.glCreateProgram();
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glCreateProgram");
+            if (mProgramId == 0) {
+                throw new IllegalStateException("glCreateProgram failed");
+            }
+
+            // Add the shaders to the program and link it.
+            GLES20.glAttachShader(mProgramId, vertexShader);
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glAttachShader");
+            GLES20.glAttachShader(mProgramId, fragmentShader);
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glAttachShader");
+            GLES20.glLinkProgram(mProgramId);
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glLinkProgram");
+
+            // Get handles to the shader's uniform and attributes.
+            mMvpMatrixHandle = GLES20.glGetUniformLocation(mProgramId, "uMvpMatrix");
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glGetUniformLocation");
+            mPositionHandle = GLES20.glGetAttribLocation(mProgramId, "aPosition");
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glGetAttribLocation");
+            mColorHandle = GLES20.glGetAttribLocation(mProgramId, "aColor");
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glGetAttribLocation");
+        }
+
+        /**
+         * Tells OpenGL to use this program. Call this method before drawing a sequence of meshes.
+         */
+        public void use() {
+            GLES20.glUseProgram(mProgramId);
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glUseProgram");
+
+            // Another program may have changed the shared attribute and buffer state.
+            GLES20.glEnableVertexAttribArray(mPositionHandle);
+            GLES20.glEnableVertexAttribArray(mColorHandle);
+            if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glEnableVertexAttribArray");
+            sStateCallCount += 3;
+            mMvpMatrixBound = false;
+            mBoundBufferId = 0;
+        }
+
+        /** Sends the given MVP matrix and interleaved vertex buffer to OpenGL. */
+        void bind(float[] mvpMatrix, int bufferId) {
+            if (!mMvpMatrixBound || !Arrays.equals(mBoundMvpMatrix, mvpMatrix)) {
+                GLES20.glUniformMatrix4fv(mMvpMatrixHandle, 1 /* count */, false /* transpose */,
+                        mvpMatrix, 0 /* offset */);
+                if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glUniformMatrix4fv");
+                sStateCallCount++;
+                System.arraycopy(mvpMatrix, 0, mBoundMvpMatrix, 0, mBoundMvpMatrix.length);
+                mMvpMatrixBound = true;
+            }
+
+            if (bufferId != mBoundBufferId) {
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferId);
+                if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glBindBuffer");
+                GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
+                        false /* normalized */, VERTEX_STRIDE, 0 /* offset */);
+                GLES20.glVertexAttribPointer(mColorHandle, COLORS_PER_VERTEX, GLES20.GL_FLOAT,
+                        false /* normalized */, VERTEX_STRIDE,
+                        COORDS_PER_VERTEX * BYTES_PER_FLOAT /* offset */);
+                if (CHECK_GL_ERRORS) Gles2ColoredTriangleList.checkGlError("glVertexAttribPointer");
+                sStateCallCount += 3;
+                mBoundBufferId = bufferId;
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.example.android.wearable.watchface.util;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 import android.opengl.GLES20;
 import android.opengl.GLU;
@@ -27,6 +28,9 @@ import android.util.Log;
 
 /**
  * A list of triangles drawn in a single solid color using OpenGL ES 2.0.
+ *
+ * <p>Faces that draw many lists per frame should use {@link Gles2ColoredMesh} instead, which keeps
+ * all vertices in one GPU-resident buffer.
  */
 public class Gles2ColoredTriangleList {
     private static final String TAG = "GlColoredTriangleList";
@@ -59,7 +63,7 @@ public class Gles2ColoredTriangleList {
     /** Shaders to render this triangle list. */
     private final Program mProgram;
 
-    /** The VBO containing the vertex coordinates. */
+    /** The buffer containing the vertex coordinates. */
     private final FloatBuffer mVertexBuffer;
 
     /**
@@ -80,30 +84,10 @@ public class Gles2ColoredTriangleList {
      * @param color color in RGBA order, each in the range [0, 1]
      */
     public Gles2ColoredTriangleList(Program program, float[] triangleCoords, float[] color) {
-        if (triangleCoords.length % (VERTICE_PER_TRIANGLE * COORDS_PER_VERTEX) != 0) {
-            throw new IllegalArgumentException("must be multiple"
-                    + " of VERTICE_PER_TRIANGLE * COORDS_PER_VERTEX coordinates");
-        }
-        if (color.length != NUM_COLOR_COMPONENTS) {
-            throw new IllegalArgumentException("wrong number of color components");
-        }
+        checkArguments(triangleCoords, color);
         mProgram = program;
         mColor = color;
-
-        ByteBuffer bb = ByteBuffer.allocateDirect(triangleCoords.length * BYTES_PER_FLOAT);
-
-        // Use the device hardware's native byte order.
-        bb.order(ByteOrder.nativeOrder());
-
-        // Create a FloatBuffer that wraps the ByteBuffer.
-        mVertexBuffer = bb.asFloatBuffer();
-
-        // Add the coordinates to the FloatBuffer.
-        mVertexBuffer.put(triangleCoords);
-
-        // Go back to the start for reading.
-        mVertexBuffer.position(0);
-
+        mVertexBuffer = createFloatBuffer(triangleCoords);
         mNumCoords = triangleCoords.length / COORDS_PER_VERTEX;
     }
 
@@ -121,6 +105,33 @@ public class Gles2ColoredTriangleList {
         if (CHECK_GL_ERRORS) checkGlError("glDrawArrays");
     }
 
+    private static void checkArguments(float[] triangleCoords, float[] color) {
+        if (triangleCoords.length % (VERTICE_PER_TRIANGLE * COORDS_PER_VERTEX) != 0) {
+            throw new IllegalArgumentException("must be multiple"
+                    + " of VERTICE_PER_TRIANGLE * COORDS_PER_VERTEX coordinates");
+        }
+        if (color.length != NUM_COLOR_COMPONENTS) {
+            throw new IllegalArgumentException("wrong number of color components");
+        }
+    }
+
+    private static FloatBuffer createFloatBuffer(float[] coords) {
+        ByteBuffer bb = ByteBuffer.allocateDirect(coords.length * BYTES_PER_FLOAT);
+
+        // Use the device hardware's native byte order.
+        bb.order(ByteOrder.nativeOrder());
+
+        // Create a FloatBuffer that wraps the ByteBuffer.
+        FloatBuffer buffer = bb.asFloatBuffer();
+
+        // Add the coordinates to the FloatBuffer.
+        buffer.put(coords);
+
+        // Go back to the start for reading.
+        buffer.position(0);
+        return buffer;
+    }
+
     /**
      * Checks if any of the GL calls since the last time this method was called set an error
      * condition. Call this method immediately after calling a GL method. Pass the name of the GL
@@ -136,7 +147,7 @@ public class Gles2ColoredTriangleList {
      *
      * @param glOperation name of the OpenGL call to check
      */
-    private static void checkGlError(String glOperation) {
+    static void checkGlError(String glOperation) {
         int error = GLES20.glGetError();
         if (error != GLES20.GL_NO_ERROR) {
             String errorString = GLU.gluErrorString(error);
@@ -157,7 +168,7 @@ public class Gles2ColoredTriangleList {
      * @param shaderCode string containing the shader source code
      * @return ID for the shader
      */
-    private static int loadShader(int type, String shaderCode){
+    static int loadShader(int type, String shaderCode){
         // Create a vertex or fragment shader.
         int shader = GLES20.glCreateShader(type);
         if (CHECK_GL_ERRORS) checkGlError("glCreateShader");
@@ -204,6 +215,16 @@ public class Gles2ColoredTriangleList {
         /** Handle for uColor uniform in fragment shader. */
         private final int mColorHandle;
 
+        /*
+         * GL state last set through this program, used to skip redundant calls. Only valid while
+         * this program is in use, so it's reset by use().
+         */
+        private final float[] mBoundMvpMatrix = new float[16];
+        private final float[] mBoundColor = new float[NUM_COLOR_COMPONENTS];
+        private boolean mMvpMatrixBound;
+        private boolean mColorBound;
+        private FloatBuffer mBoundVertexBuffer;
+
         /**
          * Creates a program to draw triangle lists. For optimal drawing efficiency, one program
          * should be used for all triangle lists being drawn.
@@ -254,25 +275,56 @@ public class Gles2ColoredTriangleList {
         public void use() {
             GLES20.glUseProgram(mProgramId);
             if (CHECK_GL_ERRORS) checkGlError("glUseProgram");
+
+            // Another program may have changed the shared attribute and buffer state.
+            GLES20.glEnableVertexAttribArray(mPositionHandle);
+            if (CHECK_GL_ERRORS) checkGlError("glEnableVertexAttribArray");
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            if (CHECK_GL_ERRORS) checkGlError("glBindBuffer");
+            mMvpMatrixBound = false;
+            mColorBound = false;
+            mBoundVertexBuffer = null;
         }
 
         /** Sends the given MVP matrix, vertex data, and color to OpenGL. */
         public void bind(float[] mvpMatrix, FloatBuffer vertexBuffer, float[] color) {
+            bindMvpMatrix(mvpMatrix);
+            bindVertices(vertexBuffer);
+            bindColor(color);
+        }
+
+        private void bindMvpMatrix(float[] mvpMatrix) {
+            if (mMvpMatrixBound && Arrays.equals(mBoundMvpMatrix, mvpMatrix)) {
+                return;
+            }
             // Pass the MVP matrix to OpenGL.
             GLES20.glUniformMatrix4fv(mMvpMatrixHandle, 1 /* count */, false /* transpose */,
                     mvpMatrix, 0 /* offset */);
             if (CHECK_GL_ERRORS) checkGlError("glUniformMatrix4fv");
+            System.arraycopy(mvpMatrix, 0, mBoundMvpMatrix, 0, mBoundMvpMatrix.length);
+            mMvpMatrixBound = true;
+        }
 
-            // Pass the VBO with the triangle list's vertices to OpenGL.
-            GLES20.glEnableVertexAttribArray(mPositionHandle);
-            if (CHECK_GL_ERRORS) checkGlError("glEnableVertexAttribArray");
+        private void bindVertices(FloatBuffer vertexBuffer) {
+            if (mBoundVertexBuffer == vertexBuffer) {
+                return;
+            }
+            // Pass the triangle list's vertices to OpenGL.
             GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
                     false /* normalized */, VERTEX_STRIDE, vertexBuffer);
             if (CHECK_GL_ERRORS) checkGlError("glVertexAttribPointer");
+            mBoundVertexBuffer = vertexBuffer;
+        }
 
+        private void bindColor(float[] color) {
+            if (mColorBound && Arrays.equals(mBoundColor, color)) {
+                return;
+            }
             // Pass the triangle list's color to OpenGL.
             GLES20.glUniform4fv(mColorHandle, 1 /* count */, color, 0 /* offset */);
             if (CHECK_GL_ERRORS) checkGlError("glUniform4fv");
+            System.arraycopy(color, 0, mBoundColor, 0, mBoundColor.length);
+            mColorBound = true;
         }
     }
 }
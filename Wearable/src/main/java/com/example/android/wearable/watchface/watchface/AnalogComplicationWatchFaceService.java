@@ -27,8 +27,6 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.support.wearable.complications.ComplicationData;
 import android.support.wearable.complications.ComplicationHelperActivity;
 import android.support.wearable.complications.rendering.ComplicationDrawable;
@@ -39,82 +37,23 @@ import android.util.Log;
 import android.util.SparseArray;
 import android.view.SurfaceHolder;
 import com.example.android.wearable.watchface.R;
-import com.example.android.wearable.watchface.mobvoi.WfConstants;
+import com.example.android.wearable.watchface.mobvoi.FrameScheduler;
+import com.example.android.wearable.watchface.mobvoi.TimeUtil;
 import com.example.android.wearable.watchface.config.AnalogComplicationConfigRecyclerViewAdapter;
-import java.util.Calendar;
-import java.util.TimeZone;
+import com.example.android.wearable.watchface.util.ComplicationDataDiffer;
+import com.example.android.wearable.watchface.util.ComplicationLayout;
+import com.example.android.wearable.watchface.util.ComplicationRenderCache;
+import com.example.android.wearable.watchface.util.ComplicationTapRouter;
 import java.util.concurrent.TimeUnit;
 
 /** Demonstrates two simple complications in a watch face. */
 public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
     private static final String TAG = "AnalogWatchFace";
 
-    // Unique IDs for each complication. The settings activity that supports allowing users
-    // to select their complication data provider requires numbers to be >= 0.
-    private static final int BACKGROUND_COMPLICATION_ID = 0;
-
-    private static final int LEFT_COMPLICATION_ID = 100;
-    private static final int RIGHT_COMPLICATION_ID = 101;
-
-    // Background, Left and right complication IDs as array for Complication API.
-    private static final int[] COMPLICATION_IDS = {
-        BACKGROUND_COMPLICATION_ID, LEFT_COMPLICATION_ID, RIGHT_COMPLICATION_ID
-    };
-
-    // Left and right dial supported types.
-    private static final int[][] COMPLICATION_SUPPORTED_TYPES = {
-        {ComplicationData.TYPE_LARGE_IMAGE},
-        {
-            ComplicationData.TYPE_RANGED_VALUE,
-            ComplicationData.TYPE_ICON,
-            ComplicationData.TYPE_SHORT_TEXT,
-            ComplicationData.TYPE_SMALL_IMAGE
-        },
-        {
-            ComplicationData.TYPE_RANGED_VALUE,
-            ComplicationData.TYPE_ICON,
-            ComplicationData.TYPE_SHORT_TEXT,
-            ComplicationData.TYPE_SMALL_IMAGE
-        }
-    };
-
-    // Used by {@link AnalogComplicationConfigRecyclerViewAdapter} to check if complication location
-    // is supported in settings config activity.
-    public static int getComplicationId(
-            AnalogComplicationConfigRecyclerViewAdapter.ComplicationLocation complicationLocation) {
-        // Add any other supported locations here.
-        switch (complicationLocation) {
-            case BACKGROUND:
-                return BACKGROUND_COMPLICATION_ID;
-            case LEFT:
-                return LEFT_COMPLICATION_ID;
-            case RIGHT:
-                return RIGHT_COMPLICATION_ID;
-            default:
-                return -1;
-        }
-    }
-
-    // Used by {@link AnalogComplicationConfigRecyclerViewAdapter} to retrieve all complication ids.
-    public static int[] getComplicationIds() {
-        return COMPLICATION_IDS;
-    }
-
-    // Used by {@link AnalogComplicationConfigRecyclerViewAdapter} to see which complication types
-    // are supported in the settings config activity.
-    public static int[] getSupportedComplicationTypes(
-            AnalogComplicationConfigRecyclerViewAdapter.ComplicationLocation complicationLocation) {
-        // Add any other supported locations here.
-        switch (complicationLocation) {
-            case BACKGROUND:
-                return COMPLICATION_SUPPORTED_TYPES[0];
-            case LEFT:
-                return COMPLICATION_SUPPORTED_TYPES[1];
-            case RIGHT:
-                return COMPLICATION_SUPPORTED_TYPES[2];
-            default:
-                return new int[] {};
-        }
+    // Used by {@link AnalogComplicationConfigRecyclerViewAdapter} to look up the complication
+    // slots (ids, locations and supported types) shown in the settings config activity.
+    public static ComplicationLayout getComplicationLayout(Context context) {
+        return ComplicationLayout.get(context, R.xml.analog_complication_slots);
     }
 
     /*
@@ -133,8 +72,7 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
         super.onCreate();
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine {
-        private static final int MSG_UPDATE_TIME = 0;
+    private class Engine extends CanvasWatchFaceService.Engine implements FrameScheduler.Host {
 
         private static final float HOUR_STROKE_WIDTH = 5f;
         private static final float MINUTE_STROKE_WIDTH = 3f;
@@ -144,7 +82,8 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
 
         private static final int SHADOW_RADIUS = 6;
 
-        private Calendar mCalendar;
+        // Hour, minute and second hand rotations, filled by TimeUtil each frame.
+        private final float[] mHandDegrees = new float[3];
         private boolean mRegisteredTimeZoneReceiver = false;
         private boolean mMuteMode;
 
@@ -174,11 +113,29 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
          */
         private SparseArray<ComplicationData> mActiveComplicationDataSparseArray;
 
+        // Complication slots read from res/xml/analog_complication_slots.xml, bottom to top.
+        private ComplicationLayout mComplicationLayout;
+        private int[] mComplicationIds;
+        private int mBackgroundComplicationId = -1;
+        private final Rect mComplicationBounds = new Rect();
+
         /* Maps complication ids to corresponding ComplicationDrawable that renders the
          * the complication data on the watch face.
          */
         private SparseArray<ComplicationDrawable> mComplicationDrawableSparseArray;
 
+        /* Maps complication ids to the offscreen bitmap each ComplicationDrawable renders into.
+         * The bitmap is only redrawn when the complication's data, ambient state, style or
+         * time-dependent text changes, so most 1 Hz frames just blit it.
+         */
+        private SparseArray<ComplicationRenderCache> mComplicationRenderCacheSparseArray;
+
+        // Drops complication updates that carry the same content as the previous one.
+        private ComplicationDataDiffer mComplicationDataDiffer;
+
+        // Finds the complication under a tap without asking every ComplicationDrawable.
+        private final ComplicationTapRouter mComplicationTapRouter = new ComplicationTapRouter();
+
         private boolean mAmbient;
         private boolean mLowBitAmbient;
         private boolean mBurnInProtection;
@@ -195,26 +152,13 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
                 new BroadcastReceiver() {
                     @Override
                     public void onReceive(Context context, Intent intent) {
-                        mCalendar.setTimeZone(TimeZone.getDefault());
+                        TimeUtil.invalidateTimeZone();
                         invalidate();
                     }
                 };
 
-        // Handler to update the time once a second in interactive mode.
-        private final Handler mUpdateTimeHandler =
-                new Handler() {
-                    @Override
-                    public void handleMessage(Message message) {
-                        invalidate();
-                        if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
-                            long delayMs =
-                                    INTERACTIVE_UPDATE_RATE_MS
-                                            - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                        }
-                    }
-                };
+        // Updates the time once a second in interactive mode.
+        private FrameScheduler mFrameScheduler;
 
         Engine(){
             //  Ask for a hardware accelerated canvas.
@@ -234,7 +178,8 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
                             getString(R.string.analog_complication_preference_file_key),
                             Context.MODE_PRIVATE);
 
-            mCalendar = Calendar.getInstance();
+            mFrameScheduler = new FrameScheduler(this);
+            mFrameScheduler.register(INTERACTIVE_UPDATE_RATE_MS, null);
 
             setWatchFaceStyle(
                     new WatchFaceStyle.Builder(AnalogComplicationWatchFaceService.this)
@@ -246,10 +191,12 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             initializeComplicationsAndBackground();
             initializeWatchFace();
 
-            setDefaultComplicationProvider(LEFT_COMPLICATION_ID, WfConstants.STEP_PROVIDER,
-                    ComplicationData.TYPE_RANGED_VALUE);
-            setDefaultComplicationProvider(RIGHT_COMPLICATION_ID,
-                    WfConstants.HEART_RATE_PROVIDER, ComplicationData.TYPE_RANGED_VALUE);
+            for (ComplicationLayout.Slot slot : mComplicationLayout.getSlots()) {
+                if (slot.getDefaultProvider() != null) {
+                    setDefaultComplicationProvider(
+                            slot.getId(), slot.getDefaultProvider(), slot.getDefaultType());
+                }
+            }
         }
 
         // Pulls all user's preferences for watch face appearance.
@@ -288,31 +235,42 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             mBackgroundPaint = new Paint();
             mBackgroundPaint.setColor(mBackgroundColor);
 
-            mActiveComplicationDataSparseArray = new SparseArray<>(COMPLICATION_IDS.length);
-
-            // Creates a ComplicationDrawable for each location where the user can render a
-            // complication on the watch face. In this watch face, we create one for left, right,
-            // and background, but you could add many more.
-            ComplicationDrawable leftComplicationDrawable =
-                    new ComplicationDrawable(getApplicationContext());
-
-            ComplicationDrawable rightComplicationDrawable =
-                    new ComplicationDrawable(getApplicationContext());
-
-            ComplicationDrawable backgroundComplicationDrawable =
-                    new ComplicationDrawable(getApplicationContext());
+            mComplicationLayout = getComplicationLayout(getApplicationContext());
+            mComplicationIds = mComplicationLayout.getComplicationIds();
+            ComplicationLayout.Slot backgroundSlot =
+                    mComplicationLayout.findSlotByLocation(
+                            AnalogComplicationConfigRecyclerViewAdapter.ComplicationLocation
+                                    .BACKGROUND.name());
+            if (backgroundSlot != null) {
+                mBackgroundComplicationId = backgroundSlot.getId();
+            }
 
-            // Adds new complications to a SparseArray to simplify setting styles and ambient
-            // properties for all complications, i.e., iterate over them all.
-            mComplicationDrawableSparseArray = new SparseArray<>(COMPLICATION_IDS.length);
+            mActiveComplicationDataSparseArray = new SparseArray<>(mComplicationIds.length);
+            mComplicationDataDiffer = new ComplicationDataDiffer(getApplicationContext());
+
+            // Creates a ComplicationDrawable for each slot where the user can render a
+            // complication on the watch face. Add more slots to analog_complication_slots.xml.
+            // Adds them to a SparseArray to simplify setting styles and ambient properties for
+            // all complications, i.e., iterate over them all.
+            mComplicationDrawableSparseArray = new SparseArray<>(mComplicationIds.length);
+            for (int i = 0; i < mComplicationIds.length; i++) {
+                mComplicationDrawableSparseArray.put(
+                        mComplicationIds[i], new ComplicationDrawable(getApplicationContext()));
+            }
 
-            mComplicationDrawableSparseArray.put(LEFT_COMPLICATION_ID, leftComplicationDrawable);
-            mComplicationDrawableSparseArray.put(RIGHT_COMPLICATION_ID, rightComplicationDrawable);
-            mComplicationDrawableSparseArray.put(
-                    BACKGROUND_COMPLICATION_ID, backgroundComplicationDrawable);
+            mComplicationRenderCacheSparseArray = new SparseArray<>(mComplicationIds.length);
+            for (int i = 0; i < mComplicationIds.length; i++) {
+                int complicationId = mComplicationIds[i];
+                mComplicationRenderCacheSparseArray.put(
+                        complicationId,
+                        new ComplicationRenderCache(
+                                complicationId,
+                                mComplicationDrawableSparseArray.get(complicationId),
+                                this::invalidate));
+            }
 
             setComplicationsActiveAndAmbientColors(mWatchHandHighlightColor);
-            setActiveComplications(COMPLICATION_IDS);
+            setActiveComplications(mComplicationIds);
         }
 
         private void initializeWatchFace() {
@@ -361,11 +319,11 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             int complicationId;
             ComplicationDrawable complicationDrawable;
 
-            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
-                complicationId = COMPLICATION_IDS[i];
+            for (int i = 0; i < mComplicationIds.length; i++) {
+                complicationId = mComplicationIds[i];
                 complicationDrawable = mComplicationDrawableSparseArray.get(complicationId);
 
-                if (complicationId == BACKGROUND_COMPLICATION_ID) {
+                if (complicationId == mBackgroundComplicationId) {
                     // It helps for the background color to be black in case the image used for the
                     // watch face's background takes some time to load.
                     complicationDrawable.setBackgroundColorActive(Color.BLACK);
@@ -378,12 +336,24 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
                     complicationDrawable.setBorderColorAmbient(Color.WHITE);
                     complicationDrawable.setRangedValuePrimaryColorAmbient(Color.WHITE);
                 }
+                mComplicationRenderCacheSparseArray.get(complicationId).invalidate();
             }
         }
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mFrameScheduler.release();
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, mComplicationDataDiffer.getStats());
+            }
+            for (int i = 0; i < mComplicationIds.length; i++) {
+                ComplicationRenderCache renderCache =
+                        mComplicationRenderCacheSparseArray.get(mComplicationIds[i]);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, renderCache.getStats());
+                }
+                renderCache.release();
+            }
             super.onDestroy();
         }
 
@@ -399,11 +369,12 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             // screen's capabilities.
             ComplicationDrawable complicationDrawable;
 
-            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
-                complicationDrawable = mComplicationDrawableSparseArray.get(COMPLICATION_IDS[i]);
+            for (int i = 0; i < mComplicationIds.length; i++) {
+                complicationDrawable = mComplicationDrawableSparseArray.get(mComplicationIds[i]);
 
                 complicationDrawable.setLowBitAmbient(mLowBitAmbient);
                 complicationDrawable.setBurnInProtection(mBurnInProtection);
+                mComplicationRenderCacheSparseArray.get(mComplicationIds[i]).invalidate();
             }
         }
 
@@ -415,13 +386,18 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
                 int complicationId, ComplicationData complicationData) {
             Log.d(TAG, "onComplicationDataUpdate() id: " + complicationId);
 
+            // Providers often resend identical data; skip the drawable update and the redraw.
+            if (!mComplicationDataDiffer.shouldApply(complicationId, complicationData)) {
+                return;
+            }
+
             // Adds/updates active complication data in the array.
             mActiveComplicationDataSparseArray.put(complicationId, complicationData);
 
-            // Updates correct ComplicationDrawable with updated data.
-            ComplicationDrawable complicationDrawable =
-                    mComplicationDrawableSparseArray.get(complicationId);
-            complicationDrawable.setComplicationData(complicationData);
+            // Updates correct ComplicationDrawable with updated data and drops its cached
+            // rendering.
+            mComplicationRenderCacheSparseArray.get(complicationId)
+                    .setComplicationData(complicationData);
 
             invalidate();
         }
@@ -431,25 +407,23 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             Log.d(TAG, "OnTapCommand() " + tapType);
             switch (tapType) {
                 case TAP_TYPE_TAP:
-
-                    // If your background complication is the first item in your array, you need
-                    // to walk backward through the array to make sure the tap isn't for a
-                    // complication above the background complication.
-                    for (int i = COMPLICATION_IDS.length - 1; i >= 0; i--) {
-                        int complicationId = COMPLICATION_IDS[i];
-                        ComplicationDrawable complicationDrawable =
-                                mComplicationDrawableSparseArray.get(complicationId);
-
-                        boolean successfulTap = complicationDrawable.onTap(x, y);
-                        if(mActiveComplicationDataSparseArray.size()>0 &&
-                                mActiveComplicationDataSparseArray.valueAt(0).getType() ==
-                                ComplicationData.TYPE_NO_PERMISSION) {
+                    // Asks for the permission once if the complication under the tap can't show
+                    // its data yet.
+                    int complicationId = mComplicationTapRouter.findTarget(x, y);
+                    if (complicationId != ComplicationTapRouter.NO_TARGET) {
+                        ComplicationData complicationData =
+                                mActiveComplicationDataSparseArray.get(complicationId);
+                        if (complicationData != null
+                                && complicationData.getType()
+                                        == ComplicationData.TYPE_NO_PERMISSION) {
                             requestPermissionWhenNeed();
-                        }
-                        if (successfulTap) {
                             return;
                         }
                     }
+
+                    // The router tries the topmost complication first, so the background
+                    // complication only gets taps the others don't handle.
+                    mComplicationTapRouter.dispatchTap(x, y);
                     break;
             }
         }
@@ -483,15 +457,13 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             // Update drawable complications' ambient state.
             // Note: ComplicationDrawable handles switching between active/ambient colors, we just
             // have to inform it to enter ambient mode.
-            ComplicationDrawable complicationDrawable;
-
-            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
-                complicationDrawable = mComplicationDrawableSparseArray.get(COMPLICATION_IDS[i]);
-                complicationDrawable.setInAmbientMode(mAmbient);
+            for (int i = 0; i < mComplicationIds.length; i++) {
+                mComplicationRenderCacheSparseArray.get(mComplicationIds[i])
+                        .setInAmbientMode(mAmbient);
             }
 
             // Check and trigger whether or not timer should be running (only in active mode).
-            updateTimer();
+            mFrameScheduler.onStateChanged();
         }
 
         private void updateWatchPaintStyles() {
@@ -571,58 +543,32 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             mHourHandLength = (float) (mCenterX * 0.5);
 
             /*
-             * Calculates location bounds for right and left circular complications. Please note,
-             * we are not demonstrating a long text complication in this watch face.
+             * Calculates the pixel bounds of every complication slot once per surface size.
+             * The slots are declared as fractions of the screen in analog_complication_slots.xml.
              *
              * We suggest using at least 1/4 of the screen width for circular (or squared)
              * complications and 2/3 of the screen width for wide rectangular complications for
              * better readability.
              */
+            for (ComplicationLayout.Slot slot : mComplicationLayout.getSlots()) {
+                slot.getBounds(width, height, mComplicationBounds);
+                mComplicationDrawableSparseArray.get(slot.getId()).setBounds(mComplicationBounds);
+            }
 
-            // For most Wear devices, width and height are the same, so we just chose one (width).
-            int sizeOfComplication = width / 4;
-            int midpointOfScreen = width / 2;
-
-            int horizontalOffset = (midpointOfScreen - sizeOfComplication) / 2;
-            int verticalOffset = midpointOfScreen - (sizeOfComplication / 2);
-
-            Rect leftBounds =
-                    // Left, Top, Right, Bottom
-                    new Rect(
-                            horizontalOffset,
-                            verticalOffset,
-                            (horizontalOffset + sizeOfComplication),
-                            (verticalOffset + sizeOfComplication));
-
-            ComplicationDrawable leftComplicationDrawable =
-                    mComplicationDrawableSparseArray.get(LEFT_COMPLICATION_ID);
-            leftComplicationDrawable.setBounds(leftBounds);
-
-            Rect rightBounds =
-                    // Left, Top, Right, Bottom
-                    new Rect(
-                            (midpointOfScreen + horizontalOffset),
-                            verticalOffset,
-                            (midpointOfScreen + horizontalOffset + sizeOfComplication),
-                            (verticalOffset + sizeOfComplication));
-
-            ComplicationDrawable rightComplicationDrawable =
-                    mComplicationDrawableSparseArray.get(RIGHT_COMPLICATION_ID);
-            rightComplicationDrawable.setBounds(rightBounds);
-
-            Rect screenForBackgroundBound =
-                    // Left, Top, Right, Bottom
-                    new Rect(0, 0, width, height);
-
-            ComplicationDrawable backgroundComplicationDrawable =
-                    mComplicationDrawableSparseArray.get(BACKGROUND_COMPLICATION_ID);
-            backgroundComplicationDrawable.setBounds(screenForBackgroundBound);
+            // Indexes the new bounds for onTapCommand(). The layout lists the background first,
+            // so it ends up below the other complications.
+            mComplicationTapRouter.setSurfaceSize(width, height);
+            for (int i = 0; i < mComplicationIds.length; i++) {
+                int complicationId = mComplicationIds[i];
+                mComplicationTapRouter.add(
+                        complicationId, mComplicationDrawableSparseArray.get(complicationId));
+            }
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
             long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
+            TimeUtil.calculateHandDegrees(now, true, mHandDegrees);
 
             drawBackground(canvas);
             drawComplications(canvas, now);
@@ -660,14 +606,10 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
         }
 
         private void drawComplications(Canvas canvas, long currentTimeMillis) {
-            int complicationId;
-            ComplicationDrawable complicationDrawable;
-
-            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
-                complicationId = COMPLICATION_IDS[i];
-                complicationDrawable = mComplicationDrawableSparseArray.get(complicationId);
-
-                complicationDrawable.draw(canvas, currentTimeMillis);
+            // Each cache redraws its ComplicationDrawable only when something it shows changed.
+            for (int i = 0; i < mComplicationIds.length; i++) {
+                mComplicationRenderCacheSparseArray.get(mComplicationIds[i])
+                        .draw(canvas, currentTimeMillis);
             }
         }
 
@@ -694,17 +636,12 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             }
 
             /*
-             * These calculations reflect the rotation in degrees per unit of time, e.g.,
-             * 360 / 60 = 6 and 360 / 12 = 30.
+             * The rotations of all three hands include the fraction of the current second, so
+             * they sweep smoothly.
              */
-            final float seconds =
-                    (mCalendar.get(Calendar.SECOND) + mCalendar.get(Calendar.MILLISECOND) / 1000f);
-            final float secondsRotation = seconds * 6f;
-
-            final float minutesRotation = mCalendar.get(Calendar.MINUTE) * 6f;
-
-            final float hourHandOffset = mCalendar.get(Calendar.MINUTE) / 2f;
-            final float hoursRotation = (mCalendar.get(Calendar.HOUR) * 30) + hourHandOffset;
+            final float secondsRotation = mHandDegrees[TimeUtil.INDEX_SECOND];
+            final float minutesRotation = mHandDegrees[TimeUtil.INDEX_MINUTE];
+            final float hoursRotation = mHandDegrees[TimeUtil.INDEX_HOUR];
 
             /*
              * Save the canvas state before we can begin to rotate it.
@@ -767,14 +704,14 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
 
                 registerReceiver();
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                TimeUtil.invalidateTimeZone();
                 invalidate();
             } else {
                 unregisterReceiver();
             }
 
             /* Check and trigger whether or not timer should be running (only in active mode). */
-            updateTimer();
+            mFrameScheduler.onStateChanged();
         }
 
         @Override
@@ -806,23 +743,5 @@ public class AnalogComplicationWatchFaceService extends CanvasWatchFaceService {
             mRegisteredTimeZoneReceiver = false;
             AnalogComplicationWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
         }
-
-        /**
-         * Starts/stops the {@link #mUpdateTimeHandler} timer based on the state of the watch face.
-         */
-        private void updateTimer() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
-        }
-
-        /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
-         * only run in active mode.
-         */
-        private boolean shouldTimerBeRunning() {
-            return isVisible() && !mAmbient;
-        }
     }
 }
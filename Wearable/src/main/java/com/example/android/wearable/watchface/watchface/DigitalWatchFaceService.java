@@ -26,8 +26,6 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
@@ -39,6 +37,10 @@ import android.view.WindowInsets;
 import androidx.core.content.ContextCompat;
 
 import com.example.android.wearable.watchface.R;
+import com.example.android.wearable.watchface.mobvoi.DigitAtlas;
+import com.example.android.wearable.watchface.mobvoi.DirtyRegionRenderer;
+import com.example.android.wearable.watchface.mobvoi.FrameScheduler;
+import com.example.android.wearable.watchface.mobvoi.TimeUtil;
 import com.example.android.wearable.watchface.util.DigitalWatchFaceUtil;
 import com.google.android.gms.wearable.DataClient;
 import com.google.android.gms.wearable.DataEvent;
@@ -89,9 +91,7 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
     }
 
     private class Engine extends CanvasWatchFaceService.Engine implements
-            DataClient.OnDataChangedListener {
-
-        static final String COLON_STRING = ":";
+            DataClient.OnDataChangedListener, FrameScheduler.Host {
 
         /** Alpha value for drawing time when in mute mode. */
         static final int MUTE_ALPHA = 100;
@@ -99,31 +99,13 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
         /** Alpha value for drawing time when not in mute mode. */
         static final int NORMAL_ALPHA = 255;
 
-        static final int MSG_UPDATE_TIME = 0;
-
-        /** How often {@link #mUpdateTimeHandler} ticks in milliseconds. */
-        long mInteractiveUpdateRateMs = NORMAL_UPDATE_RATE_MS;
-
-        /** Handler to update the time periodically in interactive mode. */
-        final Handler mUpdateTimeHandler = new Handler() {
-            @Override
-            public void handleMessage(Message message) {
-                switch (message.what) {
-                    case MSG_UPDATE_TIME:
-                        if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                            Log.v(TAG, "updating time");
-                        }
-                        invalidate();
-                        if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
-                            long delayMs =
-                                    mInteractiveUpdateRateMs - (timeMs % mInteractiveUpdateRateMs);
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                        }
-                        break;
-                }
-            }
-        };
+        /**
+         * Drives interactive redraws. Runs at {@link #NORMAL_UPDATE_RATE_MS}, or
+         * {@link #MUTE_UPDATE_RATE_MS} in mute mode, and stops by itself when not visible or in
+         * ambient mode.
+         */
+        FrameScheduler mFrameScheduler;
+        FrameScheduler.Channel mTimeChannel;
 
         /**
          * Handles time zone and locale changes.
@@ -132,6 +114,7 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                TimeUtil.invalidateTimeZone();
                 initFormats();
                 invalidate();
             }
@@ -154,7 +137,27 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
         SimpleDateFormat mDayOfWeekFormat;
         java.text.DateFormat mDateFormat;
 
+        /** Day of week and date strings, formatted once per day rather than once per frame. */
+        String mDayOfWeekString;
+        String mDateString;
+        int mDateStringsDay = -1;
+
+        /**
+         * Pre-rasterized glyphs for the time. The hours use their own atlas because their
+         * typeface differs from the minutes; seconds and colons share the minutes' atlas.
+         */
+        DigitAtlas mHourAtlas;
+        DigitAtlas mMinuteAtlas;
+        DigitAtlas mAmPmAtlas;
+
         boolean mShouldDrawColons;
+        boolean mIs24Hour;
+
+        /**
+         * Caches the rendered face so each tick only repaints the time row; the background and
+         * date are redrawn on full redraws and once a day.
+         */
+        final DirtyRegionRenderer mDirtyRegionRenderer = new DirtyRegionRenderer();
         float mXOffset;
         float mYOffset;
         float mLineHeight;
@@ -207,15 +210,34 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
             mColonPaint = createTextPaint(
                     ContextCompat.getColor(getApplicationContext(), R.color.digital_colons));
 
+            mHourAtlas = new DigitAtlas();
+            mMinuteAtlas = new DigitAtlas();
+            mAmPmAtlas = new DigitAtlas(mAmString, mPmString);
+
             mCalendar = Calendar.getInstance();
             mDate = new Date();
 
             initFormats();
+
+            mDirtyRegionRenderer.addElement(new BackgroundElement());
+            mDirtyRegionRenderer.addElement(new TimeElement());
+            mDirtyRegionRenderer.addElement(new DateElement());
+
+            mFrameScheduler = new FrameScheduler(this);
+            mTimeChannel = mFrameScheduler.register(NORMAL_UPDATE_RATE_MS, timeMs -> {
+                if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                    Log.v(TAG, "updating time");
+                }
+            });
         }
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mFrameScheduler.release();
+            mDirtyRegionRenderer.release();
+            mHourAtlas.release();
+            mMinuteAtlas.release();
+            mAmPmAtlas.release();
             super.onDestroy();
         }
 
@@ -262,7 +284,7 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
 
             // Whether the timer should be running depends on whether we're visible (as well as
             // whether we're in ambient mode), so we may need to start or stop the timer.
-            updateTimer();
+            mFrameScheduler.onStateChanged();
         }
 
         private void initFormats() {
@@ -270,6 +292,9 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
             mDayOfWeekFormat.setCalendar(mCalendar);
             mDateFormat = DateFormat.getDateFormat(DigitalWatchFaceService.this);
             mDateFormat.setCalendar(mCalendar);
+            mDateStringsDay = -1;
+            // The cached date line must be redrawn with the new format.
+            mDirtyRegionRenderer.invalidate();
         }
 
         private void registerTimeZoneReceiver() {
@@ -314,7 +339,8 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
             mAmPmPaint.setTextSize(amPmSize);
             mColonPaint.setTextSize(textSize);
 
-            mColonWidth = mColonPaint.measureText(COLON_STRING);
+            mColonWidth = mMinuteAtlas.getColonWidth(mColonPaint);
+            mDirtyRegionRenderer.invalidate();
         }
 
         @Override
@@ -323,6 +349,7 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
 
             boolean burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
             mHourPaint.setTypeface(burnInProtection ? NORMAL_TYPEFACE : BOLD_TYPEFACE);
+            mDirtyRegionRenderer.invalidate();
 
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
 
@@ -367,11 +394,12 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
                 mAmPmPaint.setAntiAlias(antiAlias);
                 mColonPaint.setAntiAlias(antiAlias);
             }
+            mDirtyRegionRenderer.setAmbient(inAmbientMode);
             invalidate();
 
             // Whether the timer should be running depends on whether we're in ambient mode (as well
             // as whether we're visible), so we may need to start or stop the timer.
-            updateTimer();
+            mFrameScheduler.onStateChanged();
         }
 
         private void adjustPaintColorToCurrentMode(
@@ -400,25 +428,20 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
                 mMinutePaint.setAlpha(alpha);
                 mColonPaint.setAlpha(alpha);
                 mAmPmPaint.setAlpha(alpha);
+                mDirtyRegionRenderer.invalidate();
                 invalidate();
             }
         }
 
         public void setInteractiveUpdateRateMs(long updateRateMs) {
-            if (updateRateMs == mInteractiveUpdateRateMs) {
-                return;
-            }
-            mInteractiveUpdateRateMs = updateRateMs;
-
-            // Stop and restart the timer so the new update rate takes effect immediately.
-            if (shouldTimerBeRunning()) {
-                updateTimer();
-            }
+            // The scheduler restarts the channel so the new update rate takes effect immediately.
+            mTimeChannel.setPeriod(updateRateMs);
         }
 
         private void updatePaintIfInteractive(Paint paint, int interactiveColor) {
             if (!isInAmbientMode() && paint != null) {
                 paint.setColor(interactiveColor);
+                mDirtyRegionRenderer.invalidate();
             }
         }
 
@@ -442,100 +465,138 @@ public class DigitalWatchFaceService extends CanvasWatchFaceService {
             updatePaintIfInteractive(mSecondPaint, color);
         }
 
-        private String formatTwoDigitNumber(int hour) {
-            return String.format("%02d", hour);
-        }
-
-        private String getAmPmString(int amPm) {
-            return amPm == Calendar.AM ? mAmString : mPmString;
-        }
-
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
             mDate.setTime(now);
-            boolean is24Hour = DateFormat.is24HourFormat(DigitalWatchFaceService.this);
+            mIs24Hour = DateFormat.is24HourFormat(DigitalWatchFaceService.this);
 
             // Show colons for the first half of each second so the colons blink on when the time
             // updates.
-            mShouldDrawColons = (System.currentTimeMillis() % 1000) < 500;
+            mShouldDrawColons = (now % 1000) < 500;
+
+            // The date only changes once a day, so only format it then.
+            int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+            if (day != mDateStringsDay) {
+                mDayOfWeekString = mDayOfWeekFormat.format(mDate);
+                mDateString = mDateFormat.format(mDate);
+                mDateStringsDay = day;
+            }
 
-            // Draw the background.
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+            // Only the elements whose time unit changed since the last frame are redrawn.
+            mDirtyRegionRenderer.draw(canvas, now);
+        }
 
-            // Draw the hours.
-            float x = mXOffset;
-            String hourString;
-            if (is24Hour) {
-                hourString = formatTwoDigitNumber(mCalendar.get(Calendar.HOUR_OF_DAY));
-            } else {
-                int hour = mCalendar.get(Calendar.HOUR);
-                if (hour == 0) {
-                    hour = 12;
-                }
-                hourString = String.valueOf(hour);
+        /** The background, only drawn on full redraws. */
+        private class BackgroundElement implements DirtyRegionRenderer.Element {
+            @Override
+            public long getPeriod(boolean ambient) {
+                return DirtyRegionRenderer.PERIOD_STATIC;
             }
-            canvas.drawText(hourString, x, mYOffset, mHourPaint);
-            x += mHourPaint.measureText(hourString);
 
-            // In ambient and mute modes, always draw the first colon. Otherwise, draw the
-            // first colon for the first half of each second.
-            if (isInAmbientMode() || mMute || mShouldDrawColons) {
-                canvas.drawText(COLON_STRING, x, mYOffset, mColonPaint);
+            @Override
+            public void getBounds(long timeMs, int width, int height, boolean ambient,
+                    Rect outBounds) {
+                outBounds.set(0, 0, width, height);
             }
-            x += mColonWidth;
-
-            // Draw the minutes.
-            String minuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
-            canvas.drawText(minuteString, x, mYOffset, mMinutePaint);
-            x += mMinutePaint.measureText(minuteString);
 
-            // In unmuted interactive mode, draw a second blinking colon followed by the seconds.
-            // Otherwise, if we're in 12-hour mode, draw AM/PM
-            if (!isInAmbientMode() && !mMute) {
-                if (mShouldDrawColons) {
-                    canvas.drawText(COLON_STRING, x, mYOffset, mColonPaint);
-                }
-                x += mColonWidth;
-                canvas.drawText(formatTwoDigitNumber(
-                        mCalendar.get(Calendar.SECOND)), x, mYOffset, mSecondPaint);
-            } else if (!is24Hour) {
-                x += mColonWidth;
-                canvas.drawText(getAmPmString(
-                        mCalendar.get(Calendar.AM_PM)), x, mYOffset, mAmPmPaint);
-            }
-
-            // Day of week
-            canvas.drawText(
-                    mDayOfWeekFormat.format(mDate),
-                    mXOffset, mYOffset + mLineHeight, mDatePaint);
-            // Date
-            canvas.drawText(
-                    mDateFormat.format(mDate),
-                    mXOffset, mYOffset + mLineHeight * 2, mDatePaint);
+            @Override
+            public void draw(Canvas canvas, long timeMs, boolean ambient) {
+                canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mBackgroundPaint);
+            }
         }
 
         /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
-         * or stops it if it shouldn't be running but currently is.
+         * The time row. Changes every half second while the colons blink, otherwise once a
+         * minute.
          */
-        private void updateTimer() {
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "updateTimer");
+        private class TimeElement implements DirtyRegionRenderer.Element {
+            @Override
+            public long getPeriod(boolean ambient) {
+                return ambient || mMute
+                        ? DirtyRegionRenderer.PERIOD_MINUTE : NORMAL_UPDATE_RATE_MS;
+            }
+
+            @Override
+            public void getBounds(long timeMs, int width, int height, boolean ambient,
+                    Rect outBounds) {
+                // The row spans the full width; its height is the tallest of the time paints.
+                float top = Math.min(mHourPaint.ascent(), mMinutePaint.ascent());
+                float bottom = Math.max(mHourPaint.descent(), mMinutePaint.descent());
+                int padding = (int) Math.ceil(mHourPaint.getTextSize() * 0.1f) + 1;
+                outBounds.set(0, (int) Math.floor(mYOffset + top) - padding,
+                        width, (int) Math.ceil(mYOffset + bottom) + padding);
             }
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+
+            @Override
+            public void draw(Canvas canvas, long timeMs, boolean ambient) {
+                // Draw the hours.
+                float x = mXOffset;
+                if (mIs24Hour) {
+                    x = mHourAtlas.drawTwoDigits(
+                            canvas, mCalendar.get(Calendar.HOUR_OF_DAY), x, mYOffset, mHourPaint);
+                } else {
+                    int hour = mCalendar.get(Calendar.HOUR);
+                    if (hour == 0) {
+                        hour = 12;
+                    }
+                    x = mHourAtlas.drawNumber(canvas, hour, x, mYOffset, mHourPaint);
+                }
+
+                // In ambient and mute modes, always draw the first colon. Otherwise, draw the
+                // first colon for the first half of each second.
+                if (ambient || mMute || mShouldDrawColons) {
+                    mMinuteAtlas.drawColon(canvas, x, mYOffset, mColonPaint);
+                }
+                x += mColonWidth;
+
+                // Draw the minutes.
+                x = mMinuteAtlas.drawTwoDigits(
+                        canvas, mCalendar.get(Calendar.MINUTE), x, mYOffset, mMinutePaint);
+
+                // In unmuted interactive mode, draw a second blinking colon followed by the
+                // seconds. Otherwise, if we're in 12-hour mode, draw AM/PM
+                if (!ambient && !mMute) {
+                    if (mShouldDrawColons) {
+                        mMinuteAtlas.drawColon(canvas, x, mYOffset, mColonPaint);
+                    }
+                    x += mColonWidth;
+                    mMinuteAtlas.drawTwoDigits(
+                            canvas, mCalendar.get(Calendar.SECOND), x, mYOffset, mSecondPaint);
+                } else if (!mIs24Hour) {
+                    x += mColonWidth;
+                    mAmPmAtlas.drawAmPm(canvas, mCalendar.get(Calendar.AM_PM) == Calendar.AM,
+                            x, mYOffset, mAmPmPaint);
+                }
             }
         }
 
-        /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
-         * only run when we're visible and in interactive mode.
-         */
-        private boolean shouldTimerBeRunning() {
-            return isVisible() && !isInAmbientMode();
+        /** The day of week and date lines, changing once a day. */
+        private class DateElement implements DirtyRegionRenderer.Element {
+            @Override
+            public long getPeriod(boolean ambient) {
+                return DirtyRegionRenderer.PERIOD_DAY;
+            }
+
+            @Override
+            public void getBounds(long timeMs, int width, int height, boolean ambient,
+                    Rect outBounds) {
+                int padding = (int) Math.ceil(mDatePaint.getTextSize() * 0.1f) + 1;
+                outBounds.set(0,
+                        (int) Math.floor(mYOffset + mLineHeight + mDatePaint.ascent()) - padding,
+                        width,
+                        (int) Math.ceil(mYOffset + mLineHeight * 2 + mDatePaint.descent())
+                                + padding);
+            }
+
+            @Override
+            public void draw(Canvas canvas, long timeMs, boolean ambient) {
+                // Day of week
+                canvas.drawText(mDayOfWeekString, mXOffset, mYOffset + mLineHeight, mDatePaint);
+                // Date
+                canvas.drawText(mDateString, mXOffset, mYOffset + mLineHeight * 2, mDatePaint);
+            }
         }
 
         /*
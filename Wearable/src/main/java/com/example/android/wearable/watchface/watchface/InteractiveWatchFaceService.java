@@ -67,6 +67,9 @@ public class InteractiveWatchFaceService extends CanvasWatchFaceService {
         private int mTouchCoordinateX;
         private int mTouchCoordinateY;
 
+        // Reused by onDraw() to format the counters without allocating a String per line.
+        private final StringBuilder mTextBuilder = new StringBuilder();
+
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
@@ -186,30 +189,33 @@ public class InteractiveWatchFaceService extends CanvasWatchFaceService {
             // Draws background
             canvas.drawColor(Color.BLACK);
 
-            canvas.drawText(
-                    "TAP: " + String.valueOf(mTapCommandTotal),
-                    mXOffset,
-                    mYOffset,
-                    mTextPaint);
+            mTextBuilder.setLength(0);
+            mTextBuilder.append("TAP: ").append(mTapCommandTotal);
+            drawLine(canvas, 0);
 
-            canvas.drawText(
-                    "CANCEL: " + String.valueOf(mTouchCancelCommandTotal),
-                    mXOffset,
-                    mYOffset + mTextSpacingHeight,
-                    mTextPaint);
+            mTextBuilder.setLength(0);
+            mTextBuilder.append("CANCEL: ").append(mTouchCancelCommandTotal);
+            drawLine(canvas, 1);
 
-            canvas.drawText(
-                    "TOUCH: " + String.valueOf(mTouchCommandTotal),
-                    mXOffset,
-                    mYOffset + (mTextSpacingHeight * 2),
-                    mTextPaint);
+            mTextBuilder.setLength(0);
+            mTextBuilder.append("TOUCH: ").append(mTouchCommandTotal);
+            drawLine(canvas, 2);
 
+            mTextBuilder.setLength(0);
+            mTextBuilder.append("X, Y: ").append(mTouchCoordinateX).append(", ")
+                    .append(mTouchCoordinateY);
+            drawLine(canvas, 3);
+        }
+
+        /** Draws the contents of mTextBuilder on the given line without copying it to a String. */
+        private void drawLine(Canvas canvas, int line) {
             canvas.drawText(
-                    "X, Y: " + mTouchCoordinateX + ", " + mTouchCoordinateY,
+                    mTextBuilder,
+                    0,
+                    mTextBuilder.length(),
                     mXOffset,
-                    mYOffset + (mTextSpacingHeight * 3),
-                    mTextPaint
-            );
+                    mYOffset + (mTextSpacingHeight * line),
+                    mTextPaint);
         }
     }
 }
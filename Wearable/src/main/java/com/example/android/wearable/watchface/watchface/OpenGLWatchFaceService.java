@@ -28,15 +28,15 @@ import android.util.Log;
 import android.view.Gravity;
 import android.view.SurfaceHolder;
 
-import com.example.android.wearable.watchface.util.Gles2ColoredTriangleList;
+import com.example.android.wearable.watchface.mobvoi.FrameScheduler;
+import com.example.android.wearable.watchface.mobvoi.TimeUtil;
+import com.example.android.wearable.watchface.util.Gles2ColoredMesh;
 
-import java.util.Calendar;
-import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Sample watch face using OpenGL. The watch face is rendered using
- * {@link Gles2ColoredTriangleList}s. The camera moves around in interactive mode and stops moving
+ * Sample watch face using OpenGL. The watch face is rendered from a single
+ * {@link Gles2ColoredMesh}. The camera moves around in interactive mode and stops moving
  * when the watch enters ambient mode.
  */
 public class OpenGLWatchFaceService extends Gles2WatchFaceService {
@@ -57,13 +57,16 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
         return new Engine();
     }
 
-    private class Engine extends Gles2WatchFaceService.Engine {
+    private class Engine extends Gles2WatchFaceService.Engine implements FrameScheduler.Host {
         /** Cycle time before the camera motion repeats. */
         private static final long CYCLE_PERIOD_SECONDS = 5;
 
         /** Number of camera angles to precompute. */
         private final int mNumCameraAngles = (int) (CYCLE_PERIOD_SECONDS * FPS);
 
+        /** Redraws once per {@link #FRAME_PERIOD_MS} in interactive mode. */
+        private FrameScheduler mFrameScheduler;
+
         /** Projection transformation matrix. Converts from 3D to 2D. */
         private final float[] mProjectionMatrix = new float[16];
 
@@ -97,22 +100,26 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
          */
         private final float[] mMvpMatrix = new float[16];
 
-        /** Triangles for the 4 major ticks. These are grouped together to speed up rendering. */
-        private Gles2ColoredTriangleList mMajorTickTriangles;
+        /** Vertices of the whole watch face, in one GPU-resident buffer. */
+        private Gles2ColoredMesh mMesh;
 
-        /** Triangles for the 8 minor ticks. These are grouped together to speed up rendering. */
-        private Gles2ColoredTriangleList mMinorTickTriangles;
+        /**
+         * The 4 major and 8 minor ticks. These don't move relative to each other, so they are
+         * drawn together with one draw call.
+         */
+        private Gles2ColoredMesh.Range mDial;
 
         /** Triangle for the second hand. */
-        private Gles2ColoredTriangleList mSecondHandTriangle;
+        private Gles2ColoredMesh.Range mSecondHand;
 
         /** Triangle for the minute hand. */
-        private Gles2ColoredTriangleList mMinuteHandTriangle;
+        private Gles2ColoredMesh.Range mMinuteHand;
 
         /** Triangle for the hour hand. */
-        private Gles2ColoredTriangleList mHourHandTriangle;
+        private Gles2ColoredMesh.Range mHourHand;
 
-        private Calendar mCalendar = Calendar.getInstance();
+        /** Hour, minute and second hand rotations in degrees, filled by {@link TimeUtil}. */
+        private final float[] mHandDegrees = new float[3];
 
         /** Whether we've registered {@link #mTimeZoneReceiver}. */
         private boolean mRegisteredTimeZoneReceiver;
@@ -120,7 +127,7 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
         private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                TimeUtil.invalidateTimeZone();
                 invalidate();
             }
         };
@@ -134,6 +141,14 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
             setWatchFaceStyle(new WatchFaceStyle.Builder(OpenGLWatchFaceService.this)
                     .setStatusBarGravity(Gravity.RIGHT | Gravity.TOP)
                     .build());
+            mFrameScheduler = new FrameScheduler(this);
+            mFrameScheduler.register(FRAME_PERIOD_MS, null);
+        }
+
+        @Override
+        public void onDestroy() {
+            mFrameScheduler.release();
+            super.onDestroy();
         }
 
         @Override
@@ -144,21 +159,26 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
             super.onGlContextCreated();
 
             // Create program for drawing triangles.
-            Gles2ColoredTriangleList.Program triangleProgram =
-                    new Gles2ColoredTriangleList.Program();
+            Gles2ColoredMesh.Program meshProgram = new Gles2ColoredMesh.Program();
 
             // We only draw triangles which all use the same program so we don't need to switch
             // programs mid-frame. This means we can tell OpenGL to use this program only once
             // rather than having to do so for each frame. This makes OpenGL draw faster.
-            triangleProgram.use();
+            meshProgram.use();
+
+            // All ticks and hands share one GPU-resident vertex buffer with per-vertex colors, so
+            // the vertex attribute pointers are set once and new dial elements don't add draws.
+            Gles2ColoredMesh.Builder builder = new Gles2ColoredMesh.Builder();
 
             // Create triangles for the ticks.
-            mMajorTickTriangles = createMajorTicks(triangleProgram);
-            mMinorTickTriangles = createMinorTicks(triangleProgram);
+            builder.startRange();
+            addMajorTicks(builder);
+            addMinorTicks(builder);
+            mDial = builder.endRange();
 
             // Create triangles for the hands.
-            mSecondHandTriangle = createHand(
-                    triangleProgram,
+            mSecondHand = addHand(
+                    builder,
                     0.02f /* width */,
                     1.0f /* height */,
                     new float[]{
@@ -168,8 +188,8 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
                             1.0f /* alpha */
                     }
             );
-            mMinuteHandTriangle = createHand(
-                    triangleProgram,
+            mMinuteHand = addHand(
+                    builder,
                     0.06f /* width */,
                     1f /* height */,
                     new float[]{
@@ -179,8 +199,8 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
                             1.0f /* alpha */
                     }
             );
-            mHourHandTriangle = createHand(
-                    triangleProgram,
+            mHourHand = addHand(
+                    builder,
                     0.1f /* width */,
                     0.6f /* height */,
                     new float[]{
@@ -190,6 +210,7 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
                             1.0f /* alpha */
                     }
             );
+            mMesh = builder.build(meshProgram);
 
             // Precompute the clock angles.
             for (int i = 0; i < mModelMatrices.length; ++i) {
@@ -246,12 +267,12 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
         /**
          * Creates a triangle for a hand on the watch face.
          *
-         * @param program program for drawing triangles
+         * @param builder mesh builder the hand's vertices are added to
          * @param width width of base of triangle
          * @param length length of triangle
          * @param color color in RGBA order, each in the range [0, 1]
          */
-        private Gles2ColoredTriangleList createHand(Gles2ColoredTriangleList.Program program,
+        private Gles2ColoredMesh.Range addHand(Gles2ColoredMesh.Builder builder,
                 float width, float length, float[] color) {
             // Create the data for the VBO.
             float[] triangleCoords = new float[]{
@@ -260,16 +281,15 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
                     -width / 2, 0, 0,   // bottom left
                     width / 2, 0, 0    // bottom right
             };
-            return new Gles2ColoredTriangleList(program, triangleCoords, color);
+            return builder.add(triangleCoords, color);
         }
 
         /**
-         * Creates a triangle list for the major ticks on the watch face.
+         * Adds triangles for the major ticks on the watch face.
          *
-         * @param program program for drawing triangles
+         * @param builder mesh builder the ticks' vertices are added to
          */
-        private Gles2ColoredTriangleList createMajorTicks(
-                Gles2ColoredTriangleList.Program program) {
+        private void addMajorTicks(Gles2ColoredMesh.Builder builder) {
             // Create the data for the VBO.
             float[] trianglesCoords = new float[9 * 4];
             for (int i = 0; i < 4; i++) {
@@ -277,7 +297,7 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
                 System.arraycopy(triangleCoords, 0, trianglesCoords, i * 9, triangleCoords.length);
             }
 
-            return new Gles2ColoredTriangleList(program, trianglesCoords,
+            builder.add(trianglesCoords,
                     new float[]{
                             1.0f /* red */,
                             1.0f /* green */,
@@ -288,12 +308,11 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
         }
 
         /**
-         * Creates a triangle list for the minor ticks on the watch face.
+         * Adds triangles for the minor ticks on the watch face.
          *
-         * @param program program for drawing triangles
+         * @param builder mesh builder the ticks' vertices are added to
          */
-        private Gles2ColoredTriangleList createMinorTicks(
-                Gles2ColoredTriangleList.Program program) {
+        private void addMinorTicks(Gles2ColoredMesh.Builder builder) {
             // Create the data for the VBO.
             float[] trianglesCoords = new float[9 * (12 - 4)];
             int index = 0;
@@ -307,7 +326,7 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
                 index += 9;
             }
 
-            return new Gles2ColoredTriangleList(program, trianglesCoords,
+            builder.add(trianglesCoords,
                     new float[]{
                             0.5f /* red */,
                             0.5f /* green */,
@@ -367,6 +386,7 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
             }
             super.onAmbientModeChanged(inAmbientMode);
             invalidate();
+            mFrameScheduler.onStateChanged();
         }
 
         @Override
@@ -379,12 +399,13 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we were detached.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                TimeUtil.invalidateTimeZone();
 
                 invalidate();
             } else {
                 unregisterReceiver();
             }
+            mFrameScheduler.onStateChanged();
         }
 
         private void registerReceiver() {
@@ -419,6 +440,7 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
                 Log.v(TAG, "onDraw");
             }
             super.onDraw();
+            Gles2ColoredMesh.resetCallCounts();
             final float[] vpMatrix;
 
             // Draw background color and select the appropriate view projection matrix. The
@@ -436,14 +458,11 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
             GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
             // Compute angle indices for the three hands.
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
-            float seconds =
-                    mCalendar.get(Calendar.SECOND) + mCalendar.get(Calendar.MILLISECOND) / 1000f;
-            float minutes = mCalendar.get(Calendar.MINUTE) + seconds / 60f;
-            float hours = mCalendar.get(Calendar.HOUR) + minutes / 60f;
-            final int secIndex = (int) (seconds / 60f * 360f);
-            final int minIndex = (int) (minutes / 60f * 360f);
-            final int hoursIndex = (int) (hours / 12f * 360f);
+            // Float rounding can turn 359.99... into 360, so wrap the indices.
+            TimeUtil.calculateHandDegrees(System.currentTimeMillis(), true, mHandDegrees);
+            final int secIndex = (int) mHandDegrees[TimeUtil.INDEX_SECOND] % 360;
+            final int minIndex = (int) mHandDegrees[TimeUtil.INDEX_MINUTE] % 360;
+            final int hoursIndex = (int) mHandDegrees[TimeUtil.INDEX_HOUR] % 360;
 
             // Draw triangles from back to front. Don't draw the second hand in ambient mode.
 
@@ -451,28 +470,27 @@ public class OpenGLWatchFaceService extends Gles2WatchFaceService {
             Matrix.multiplyMM(mMvpMatrix, 0, vpMatrix, 0, mModelMatrices[hoursIndex], 0);
 
             // Draw the triangle.
-            mHourHandTriangle.draw(mMvpMatrix);
+            mMesh.draw(mMvpMatrix, mHourHand);
 
             // Combine the model matrix with the projection and camera view.
             Matrix.multiplyMM(mMvpMatrix, 0, vpMatrix, 0, mModelMatrices[minIndex], 0);
 
             // Draw the triangle.
-            mMinuteHandTriangle.draw(mMvpMatrix);
+            mMesh.draw(mMvpMatrix, mMinuteHand);
             if (!isInAmbientMode()) {
                 // Combine the model matrix with the projection and camera view.
                 Matrix.multiplyMM(mMvpMatrix, 0, vpMatrix, 0, mModelMatrices[secIndex], 0);
 
                 // Draw the triangle.
-                mSecondHandTriangle.draw(mMvpMatrix);
+                mMesh.draw(mMvpMatrix, mSecondHand);
             }
 
             // Draw the major and minor ticks.
-            mMajorTickTriangles.draw(vpMatrix);
-            mMinorTickTriangles.draw(vpMatrix);
+            mMesh.draw(vpMatrix, mDial);
 
-            // Draw every frame as long as we're visible and in interactive mode.
-            if (isVisible() && !isInAmbientMode()) {
-                invalidate();
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "GL calls: draw = " + Gles2ColoredMesh.getDrawCallCount()
+                        + ", state = " + Gles2ColoredMesh.getStateCallCount());
             }
         }
     }
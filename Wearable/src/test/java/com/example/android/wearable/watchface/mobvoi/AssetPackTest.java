@@ -0,0 +1,118 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import com.example.android.wearable.watchface.build.FacePackWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用 packFaceAssets 使用的 {@link FacePackWriter} 写出图片包，再用 {@link AssetPack} 读回，
+ * 检查索引中的尺寸、偏移量和预乘后的像素
+ */
+public class AssetPackTest {
+    // 不透明、半透明、全透明各一个像素
+    private static final int[] PIXELS = {0xFF336699, 0x80FF8000, 0x00FFFFFF};
+    private static final byte[] PREMULTIPLIED = {
+            0x33, 0x66, (byte) 0x99, (byte) 0xFF,
+            (byte) 0x80, 0x40, 0x00, (byte) 0x80,
+            0x00, 0x00, 0x00, 0x00};
+
+    private byte[] mFile;
+    private AssetPack mPack;
+
+    @Before
+    public void setUp() throws IOException {
+        // 名字长度不同，索引结束的位置不是 4 的倍数，第一张图片前需要补齐
+        mFile = write(
+                new FacePackWriter.Image("bg", 3, 1, PIXELS),
+                new FacePackWriter.Image("poi_hour", 1, 3, PIXELS),
+                new FacePackWriter.Image("表盘", 2, 2, new int[]{1, 2, 3, 4}));
+        mPack = AssetPack.wrap(ByteBuffer.wrap(mFile));
+    }
+
+    @Test
+    public void sizes() {
+        assertEquals(new HashSet<>(Arrays.asList("bg", "poi_hour", "表盘")), mPack.getNames());
+        assertEquals(3, mPack.getWidth("bg"));
+        assertEquals(1, mPack.getHeight("bg"));
+        assertEquals(1, mPack.getWidth("poi_hour"));
+        assertEquals(3, mPack.getHeight("poi_hour"));
+        assertEquals(2, mPack.getWidth("表盘"));
+        assertEquals(2, mPack.getHeight("表盘"));
+        assertFalse(mPack.contains("frame1"));
+        assertEquals(0, mPack.getWidth("frame1"));
+        assertNull(mPack.getPixels("frame1"));
+    }
+
+    @Test
+    public void offsets() {
+        // 切片的 arrayOffset 就是像素在文件中的偏移量
+        int bg = mPack.getPixels("bg").arrayOffset();
+        int hour = mPack.getPixels("poi_hour").arrayOffset();
+        int face = mPack.getPixels("表盘").arrayOffset();
+        int indexEnd = 12 + (2 + 2 + 12) + (2 + 8 + 12)
+                + (2 + "表盘".getBytes(StandardCharsets.UTF_8).length + 12);
+        assertEquals((indexEnd + 3) & ~3, bg);
+        assertTrue(bg > indexEnd);
+        assertEquals(bg + 3 * 4, hour);
+        assertEquals(hour + 3 * 4, face);
+        assertEquals(face + 4 * 4, mFile.length);
+        for (int offset : new int[]{bg, hour, face}) {
+            assertEquals(0, offset % 4);
+        }
+    }
+
+    @Test
+    public void pixels() {
+        assertArrayEquals(PREMULTIPLIED, read(mPack.getPixels("bg")));
+        assertArrayEquals(PREMULTIPLIED, read(mPack.getPixels("poi_hour")));
+        // alpha 为 0 时颜色也预乘为 0
+        assertArrayEquals(new byte[16], read(mPack.getPixels("表盘")));
+    }
+
+    @Test
+    public void premultiplyRoundsToNearest() {
+        for (int alpha = 0; alpha <= 255; alpha++) {
+            for (int channel = 0; channel <= 255; channel++) {
+                assertEquals(alpha + " " + channel, Math.round(channel * alpha / 255f),
+                        FacePackWriter.premultiply(channel, alpha));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badMagic() {
+        mFile[0] = 0;
+        AssetPack.wrap(ByteBuffer.wrap(mFile));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncated() {
+        AssetPack.wrap(ByteBuffer.wrap(Arrays.copyOf(mFile, mFile.length - 1)));
+    }
+
+    private static byte[] write(FacePackWriter.Image... images) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FacePackWriter.write(Arrays.asList(images), out);
+        return out.toByteArray();
+    }
+
+    private static byte[] read(ByteBuffer pixels) {
+        byte[] bytes = new byte[pixels.remaining()];
+        pixels.get(bytes);
+        return bytes;
+    }
+}
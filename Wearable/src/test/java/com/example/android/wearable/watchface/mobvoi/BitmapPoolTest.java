@@ -0,0 +1,52 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * {@link BitmapPool#put} 只接收可变的图片，不可变的图片可能还在别处绘制，不能被 recycle
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class BitmapPoolTest {
+    private final BitmapPool mPool = new BitmapPool(1 << 20);
+
+    @Test
+    public void immutableBitmapIsIgnored() {
+        Bitmap mutable = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap immutable = mutable.copy(Bitmap.Config.ARGB_8888, false);
+        assertFalse(immutable.isMutable());
+
+        mPool.put(immutable);
+        assertFalse(immutable.isRecycled());
+        assertEquals(0, mPool.getPutCount());
+        assertEquals(0, mPool.getSize());
+    }
+
+    @Test
+    public void mutableBitmapIsReused() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        mPool.put(bitmap);
+        assertEquals(1, mPool.getPutCount());
+        assertSame(bitmap, mPool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(1, mPool.getHitCount());
+    }
+
+    @Test
+    public void recycledBitmapIsIgnored() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        bitmap.recycle();
+        mPool.put(bitmap);
+        assertEquals(0, mPool.getPutCount());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 检查 {@link FrameScheduler#nextDeadline} 的对齐方式
+ */
+public class FrameSchedulerTest {
+    // 2021-03-14 07:00:00 UTC，整秒
+    private static final long SECOND = 1615705200000L;
+
+    @Test
+    public void subSecondPeriodRestartsEverySecond() {
+        // 1000 不是 16 的整数倍，最后一帧之后直接到下一个整秒
+        assertEquals(SECOND + 16, FrameScheduler.nextDeadline(SECOND, 16));
+        assertEquals(SECOND + 16, FrameScheduler.nextDeadline(SECOND + 15, 16));
+        assertEquals(SECOND + 992, FrameScheduler.nextDeadline(SECOND + 990, 16));
+        assertEquals(SECOND + 1000, FrameScheduler.nextDeadline(SECOND + 992, 16));
+        assertEquals(SECOND + 1016, FrameScheduler.nextDeadline(SECOND + 1000, 16));
+    }
+
+    @Test
+    public void channelsMeetOnEverySecond() {
+        // AnimateService 的 1 秒和 300 毫秒通道每个整秒都一起到期
+        long time = SECOND;
+        int meetings = 0;
+        for (int i = 0; i < 40; i++) {
+            time = FrameScheduler.nextDeadline(time, 300);
+            if (time % 1000 == 0) {
+                assertEquals(time, FrameScheduler.nextDeadline(time - 1, 1000));
+                meetings++;
+            }
+        }
+        assertEquals(10, meetings);
+    }
+
+    @Test
+    public void longPeriodsAlignToWallClock() {
+        assertEquals(SECOND + 1000, FrameScheduler.nextDeadline(SECOND, 1000));
+        assertEquals(SECOND + 1000, FrameScheduler.nextDeadline(SECOND + 1, 1000));
+        long minute = FrameScheduler.nextDeadline(SECOND + 1, 60 * 1000);
+        assertEquals(0, minute % (60 * 1000));
+        assertTrue(minute > SECOND + 1 && minute <= SECOND + 1 + 60 * 1000);
+    }
+
+    @Test
+    public void neverMoreThanOnePeriodAhead() {
+        for (long period : new long[]{16, 33, 300, 999, 1000, 5000}) {
+            for (long time = SECOND; time < SECOND + 3000; time += 7) {
+                long next = FrameScheduler.nextDeadline(time, period);
+                assertTrue(period + " " + time, next > time && next <= time + period);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.android.wearable.watchface.mobvoi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 对照 Calendar 检查 {@link TimeUtil#calculateHandDegrees} 在夏令时切换和时区变化时的结果，
+ * 对照 String.format 检查 {@link TimeUtil#appendDistance} 的舍入
+ */
+public class TimeUtilTest {
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final float DELTA = 1e-3f;
+    // 逐米对比的范围，覆盖 100 千米以内的所有值
+    private static final int MAX_METERS = 100 * 1000;
+
+    private TimeZone mDefaultTimeZone;
+    private final float[] mDegrees = new float[3];
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        TimeUtil.invalidateTimeZone();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+        TimeUtil.invalidateTimeZone();
+    }
+
+    @Test
+    public void springForward() {
+        // 2021-03-14 02:00 EST 跳到 03:00 EDT，即 07:00 UTC
+        checkAroundTransition("America/New_York", 1615705200000L);
+    }
+
+    @Test
+    public void fallBack() {
+        // 2021-11-07 02:00 EDT 退回 01:00 EST，即 06:00 UTC
+        checkAroundTransition("America/New_York", 1636264800000L);
+    }
+
+    @Test
+    public void halfHourTransition() {
+        // Lord Howe 岛夏令时只调整 30 分钟，2021-04-04 02:00 退回 01:30，即 15:00 UTC
+        checkAroundTransition("Australia/Lord_Howe", 1617462000000L);
+    }
+
+    @Test
+    public void timeZoneChange() {
+        long time = 1615705200000L;
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Shanghai"));
+        TimeUtil.calculateHandDegrees(time, mDegrees);
+        assertHandDegrees("Asia/Shanghai", time, false);
+
+        // 偏移量按分钟缓存，时区变化后需要 invalidateTimeZone 才生效
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        TimeUtil.calculateHandDegrees(time, mDegrees);
+        assertEquals(TimeZone.getTimeZone("Asia/Shanghai").getOffset(time),
+                TimeUtil.getZoneOffset(time));
+
+        TimeUtil.invalidateTimeZone();
+        assertEquals(TimeZone.getTimeZone("Asia/Kolkata").getOffset(time),
+                TimeUtil.getZoneOffset(time));
+        TimeUtil.calculateHandDegrees(time, mDegrees);
+        assertHandDegrees("Asia/Kolkata", time, false);
+    }
+
+    @Test
+    public void timeGoesBackwards() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        long transition = 1636264800000L;
+        // 先算切换之后，再算切换之前，缓存的偏移量不能沿用
+        for (long time : new long[]{transition + MINUTE, transition - MINUTE, transition,
+                transition - HOUR, transition + HOUR}) {
+            TimeUtil.calculateHandDegrees(time, mDegrees);
+            assertHandDegrees("America/New_York", time, false);
+        }
+    }
+
+    @Test
+    public void appendDistanceMatchesFormat() {
+        StringBuilder buffer = new StringBuilder();
+        for (int meters = 0; meters <= MAX_METERS; meters++) {
+            assertDistance(buffer, meters);
+        }
+        // 更大的值按步长抽样，步长取奇数以覆盖不同的末位
+        for (int meters = MAX_METERS; meters > 0 && meters < Integer.MAX_VALUE / 2;
+             meters += 9973) {
+            assertDistance(buffer, meters);
+        }
+    }
+
+    @Test
+    public void appendDistanceRoundsHalfUp() {
+        // 0.125 和 0.375 可以被 double 精确表示，String.format 按 HALF_UP 进位
+        StringBuilder buffer = new StringBuilder();
+        TimeUtil.appendDistance(buffer, 125, true, 2);
+        assertEquals(TimeUtil.getDistance(125, true), buffer.toString());
+        buffer.setLength(0);
+        TimeUtil.appendDistance(buffer, 375, true, 2);
+        assertEquals(TimeUtil.getDistance(375, true), buffer.toString());
+        // 0.6214 × 0.25 = 0.15535，最短十进制表示以 5 结尾
+        buffer.setLength(0);
+        TimeUtil.appendDistance(buffer, 250, false, 4);
+        assertEquals(String.format(Locale.getDefault(), "%.4f", 250 * 0.6214 / (float) 1000),
+                buffer.toString());
+    }
+
+    private static void assertDistance(StringBuilder buffer, int meters) {
+        buffer.setLength(0);
+        TimeUtil.appendDistance(buffer, meters, true, 2);
+        assertEquals("metric " + meters, TimeUtil.getDistance(meters, true), buffer.toString());
+        buffer.setLength(0);
+        TimeUtil.appendDistance(buffer, meters, false, 2);
+        assertEquals("imperial " + meters, TimeUtil.getDistance(meters, false),
+                buffer.toString());
+        buffer.setLength(0);
+        TimeUtil.appendDistance(buffer, meters, true, 1);
+        assertEquals("metric one " + meters, TimeUtil.getDistanceOne(meters, true),
+                buffer.toString());
+        buffer.setLength(0);
+        TimeUtil.appendDistance(buffer, meters, false, 1);
+        assertEquals("imperial one " + meters, TimeUtil.getDistanceOne(meters, false),
+                buffer.toString());
+    }
+
+    /**
+     * 从切换前两小时到切换后两小时，每分钟取几个不同的秒和毫秒，依次对比
+     */
+    private void checkAroundTransition(String zoneId, long transition) {
+        TimeZone.setDefault(TimeZone.getTimeZone(zoneId));
+        for (long minute = transition - 2 * HOUR; minute <= transition + 2 * HOUR;
+             minute += MINUTE) {
+            for (long millis : new long[]{0, 999, 30500, 59999}) {
+                long time = minute + millis;
+                TimeUtil.calculateHandDegrees(time, mDegrees);
+                assertHandDegrees(zoneId, time, false);
+                TimeUtil.calculateHandDegrees(time, true, mDegrees);
+                assertHandDegrees(zoneId, time, true);
+            }
+        }
+    }
+
+    /**
+     * 按 Calendar 在该时区的字段计算期望的角度，与 mDegrees 对比
+     */
+    private void assertHandDegrees(String zoneId, long time, boolean smooth) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(zoneId));
+        calendar.setTimeInMillis(time);
+        int hour = calendar.get(Calendar.HOUR);
+        int minute = calendar.get(Calendar.MINUTE);
+        float seconds = calendar.get(Calendar.SECOND);
+        if (smooth) {
+            seconds += calendar.get(Calendar.MILLISECOND) / 1000f;
+        }
+        float minutes = minute + seconds / 60;
+        String message = zoneId + " " + time + (smooth ? " smooth" : "");
+        assertEquals(message + " hour", 30 * (hour + (smooth ? minutes : minute) / 60),
+                mDegrees[TimeUtil.INDEX_HOUR], DELTA);
+        assertEquals(message + " minute", 6 * minutes, mDegrees[TimeUtil.INDEX_MINUTE], DELTA);
+        assertEquals(message + " second", 6 * seconds, mDegrees[TimeUtil.INDEX_SECOND], DELTA);
+    }
+}
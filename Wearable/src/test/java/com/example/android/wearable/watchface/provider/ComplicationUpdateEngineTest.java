@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.provider;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks how {@link ComplicationUpdateEngine} batches update requests and when it answers them
+ * with noUpdateRequired().
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ComplicationUpdateEngineTest {
+
+    private static final int ID = 1;
+    private static final Duration COALESCE_WINDOW = Duration.ofMillis(50);
+
+    private Context mContext;
+    private ComplicationUpdateEngine mEngine;
+    private ComplicationManager mManager;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        mEngine = new ComplicationUpdateEngine(mContext);
+        mManager = mock(ComplicationManager.class);
+    }
+
+    @Test
+    public void requestsWithinWindowAreBatched() {
+        mEngine.requestUpdate(ID, ComplicationData.TYPE_RANGED_VALUE, mManager);
+        idleFor(Duration.ofMillis(30));
+        mEngine.requestUpdate(ID + 1, ComplicationData.TYPE_SHORT_TEXT, mManager);
+        idleFor(Duration.ofMillis(19));
+        verifyNoInteractions(mManager);
+
+        // The window starts with the first request, not the last one.
+        idleFor(Duration.ofMillis(1));
+        verify(mManager).updateComplicationData(eq(ID), any(ComplicationData.class));
+        verify(mManager).updateComplicationData(eq(ID + 1), any(ComplicationData.class));
+        assertTrue(mEngine.getStats(), mEngine.getStats().contains("batches=1,"));
+
+        mEngine.requestUpdate(ID, ComplicationData.TYPE_RANGED_VALUE, mManager);
+        idleFor(COALESCE_WINDOW);
+        assertTrue(mEngine.getStats(), mEngine.getStats().contains("batches=2,"));
+    }
+
+    @Test
+    public void unchangedNumberIsNotSentAgain() {
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        assertEquals(0, sentValue(ID), 0);
+
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        verify(mManager).noUpdateRequired(ID);
+        verifyNoMoreInteractions(mManager);
+    }
+
+    @Test
+    public void changedTypeIsSent() {
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        requestAndWait(ID, ComplicationData.TYPE_SHORT_TEXT);
+        verify(mManager, never()).noUpdateRequired(anyInt());
+    }
+
+    @Test
+    public void incrementLeadsToUpdate() {
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        mEngine.increment(ID);
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        verify(mManager, never()).noUpdateRequired(anyInt());
+        assertEquals(1, sentValue(ID), 0);
+        assertEquals(1, getStoredNumber(ID, -1));
+    }
+
+    @Test
+    public void incrementWrapsAround() {
+        for (int i = 0; i < ComplicationToggleReceiver.MAX_NUMBER; i++) {
+            mEngine.increment(ID);
+        }
+        assertEquals(0, getStoredNumber(ID, -1));
+    }
+
+    @Test
+    public void flushAnswersQueuedRequests() {
+        mEngine.requestUpdate(ID, ComplicationData.TYPE_RANGED_VALUE, mManager);
+        mEngine.requestUpdate(ID + 1, ComplicationData.TYPE_LONG_TEXT, mManager);
+        mEngine.flush();
+        verify(mManager).updateComplicationData(eq(ID), any(ComplicationData.class));
+        verify(mManager).updateComplicationData(eq(ID + 1), any(ComplicationData.class));
+
+        // The delayed flush was cancelled, so nothing is answered twice.
+        idleFor(COALESCE_WINDOW);
+        verifyNoMoreInteractions(mManager);
+        mEngine.flush();
+        verifyNoMoreInteractions(mManager);
+    }
+
+    @Test
+    public void unsupportedTypeIsAnsweredWithNoUpdateRequired() {
+        requestAndWait(ID, ComplicationData.TYPE_ICON);
+        verify(mManager).noUpdateRequired(ID);
+        verifyNoMoreInteractions(mManager);
+    }
+
+    @Test
+    public void activationSendsDataAgain() {
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        mEngine.onComplicationActivated(ID);
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        verify(mManager, never()).noUpdateRequired(anyInt());
+    }
+
+    @Test
+    public void deactivationReloadsNumber() {
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        mEngine.onComplicationDeactivated(ID);
+        // The number is read from the preferences again when the complication is next seen.
+        getPreferences().edit().putInt(getPreferenceKey(ID), 7).commit();
+        requestAndWait(ID, ComplicationData.TYPE_RANGED_VALUE);
+        verify(mManager, never()).noUpdateRequired(anyInt());
+        assertEquals(7, sentValue(ID), 0);
+    }
+
+    private void requestAndWait(int complicationId, int dataType) {
+        mEngine.requestUpdate(complicationId, dataType, mManager);
+        idleFor(COALESCE_WINDOW);
+    }
+
+    private static void idleFor(Duration duration) {
+        shadowOf(Looper.getMainLooper()).idleFor(duration);
+    }
+
+    /** Value of the last ranged value data sent to the complication. */
+    private float sentValue(int complicationId) {
+        ArgumentCaptor<ComplicationData> captor = ArgumentCaptor.forClass(ComplicationData.class);
+        verify(mManager, atLeastOnce())
+                .updateComplicationData(eq(complicationId), captor.capture());
+        return captor.getValue().getValue();
+    }
+
+    private int getStoredNumber(int complicationId, int defaultValue) {
+        return getPreferences().getInt(getPreferenceKey(complicationId), defaultValue);
+    }
+
+    private SharedPreferences getPreferences() {
+        return mContext.getSharedPreferences(
+                ComplicationToggleReceiver.COMPLICATION_PROVIDER_PREFERENCES_FILE_KEY, 0);
+    }
+
+    private String getPreferenceKey(int complicationId) {
+        return ComplicationToggleReceiver.getPreferenceKey(
+                new ComponentName(mContext, IncrementingNumberComplicationProviderService.class),
+                complicationId);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import android.graphics.drawable.Icon;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which updates {@link ComplicationDataDiffer} drops. The active window and icon checks
+ * rely on the parcel layout of the support library's ComplicationData and Icon, so these tests
+ * also catch a library update that changes it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ComplicationDataDifferTest {
+
+    private static final int ID = 1;
+    private static final String PACKAGE = "com.example.android.wearable.watchface";
+
+    private ComplicationDataDiffer mDiffer;
+
+    @Before
+    public void setUp() {
+        mDiffer = new ComplicationDataDiffer(RuntimeEnvironment.getApplication());
+    }
+
+    @Test
+    public void firstUpdateIsApplied() {
+        assertTrue(mDiffer.shouldApply(ID, null));
+        assertTrue(mDiffer.shouldApply(ID + 1, rangedValue(5).build()));
+    }
+
+    @Test
+    public void identicalDataIsDropped() {
+        assertTrue(mDiffer.shouldApply(ID, rangedValue(5).build()));
+        assertFalse(mDiffer.shouldApply(ID, rangedValue(5).build()));
+        assertFalse(mDiffer.shouldApply(ID, rangedValue(5).build()));
+        assertEquals(1, mDiffer.getAppliedCount(ID));
+        assertEquals(2, mDiffer.getDroppedCount(ID));
+    }
+
+    @Test
+    public void changedValueIsApplied() {
+        assertTrue(mDiffer.shouldApply(ID, rangedValue(5).build()));
+        assertTrue(mDiffer.shouldApply(ID, rangedValue(6).build()));
+        assertTrue(
+                mDiffer.shouldApply(
+                        ID, rangedValue(6).setShortText(ComplicationText.plainText("7")).build()));
+        assertTrue(mDiffer.shouldApply(ID, null));
+        assertFalse(mDiffer.shouldApply(ID, null));
+    }
+
+    @Test
+    public void changedTypeIsApplied() {
+        assertTrue(mDiffer.shouldApply(ID, shortText("5").build()));
+        assertTrue(
+                mDiffer.shouldApply(
+                        ID,
+                        new ComplicationData.Builder(ComplicationData.TYPE_LONG_TEXT)
+                                .setLongText(ComplicationText.plainText("5"))
+                                .build()));
+    }
+
+    @Test
+    public void changedActiveWindowIsApplied() {
+        long now = System.currentTimeMillis();
+        assertTrue(mDiffer.shouldApply(ID, shortText("5").build()));
+        // Both are active now, but the second one expires.
+        assertTrue(mDiffer.shouldApply(ID, shortText("5").setEndTime(now + 60 * 1000).build()));
+        assertFalse(mDiffer.shouldApply(ID, shortText("5").setEndTime(now + 60 * 1000).build()));
+        assertTrue(mDiffer.shouldApply(ID, shortText("5").setEndTime(now + 120 * 1000).build()));
+        // Not active yet, with the same end time.
+        assertTrue(
+                mDiffer.shouldApply(
+                        ID,
+                        shortText("5")
+                                .setStartTime(now + 30 * 1000)
+                                .setEndTime(now + 120 * 1000)
+                                .build()));
+    }
+
+    @Test
+    public void timeDependentTextIsAlwaysApplied() {
+        ComplicationText countdown =
+                new ComplicationText.TimeDifferenceBuilder()
+                        .setReferencePeriodStart(System.currentTimeMillis() + 60 * 60 * 1000)
+                        .setReferencePeriodEnd(System.currentTimeMillis() + 60 * 60 * 1000)
+                        .setStyle(ComplicationText.DIFFERENCE_STYLE_SHORT_DUAL_UNIT)
+                        .build();
+        ComplicationData data =
+                new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                        .setShortText(countdown)
+                        .build();
+        assertTrue(mDiffer.shouldApply(ID, data));
+        assertTrue(mDiffer.shouldApply(ID, data));
+    }
+
+    @Test
+    public void iconsAreComparedByContent() {
+        assertTrue(mDiffer.shouldApply(ID, shortText("5").setIcon(icon(1)).build()));
+        assertFalse(mDiffer.shouldApply(ID, shortText("5").setIcon(icon(1)).build()));
+        assertTrue(mDiffer.shouldApply(ID, shortText("5").setIcon(icon(2)).build()));
+        assertTrue(mDiffer.shouldApply(ID, shortText("5").build()));
+    }
+
+    private static ComplicationData.Builder rangedValue(float value) {
+        return new ComplicationData.Builder(ComplicationData.TYPE_RANGED_VALUE)
+                .setValue(value)
+                .setMinValue(0)
+                .setMaxValue(10)
+                .setShortText(ComplicationText.plainText("5"));
+    }
+
+    private static ComplicationData.Builder shortText(String text) {
+        return new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                .setShortText(ComplicationText.plainText(text));
+    }
+
+    private static Icon icon(int resId) {
+        return Icon.createWithResource(PACKAGE, resId);
+    }
+}
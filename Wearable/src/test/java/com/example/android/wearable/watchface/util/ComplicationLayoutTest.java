@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.res.XmlResourceParser;
+import android.graphics.Rect;
+import android.support.wearable.complications.ComplicationData;
+import android.util.Xml;
+
+import com.example.android.wearable.watchface.R;
+import com.example.android.wearable.watchface.mobvoi.WfConstants;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parses {@code R.xml.analog_complication_slots} and checks it against the bounds and providers
+ * that AnalogComplicationWatchFaceService used to hard-code, plus malformed slots parsed from
+ * inline XML.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ComplicationLayoutTest {
+
+    private static final int[] SIDE_TYPES = {
+        ComplicationData.TYPE_RANGED_VALUE,
+        ComplicationData.TYPE_ICON,
+        ComplicationData.TYPE_SHORT_TEXT,
+        ComplicationData.TYPE_SMALL_IMAGE
+    };
+
+    private static final String VALID_SLOT =
+            "id=\"1\" location=\"LEFT\" left=\"0\" top=\"0\" right=\"0.5\" bottom=\"0.5\" "
+                    + "supportedTypes=\"short_text\" ";
+
+    private Context mContext;
+    private ComplicationLayout mLayout;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        mLayout = ComplicationLayout.get(mContext, R.xml.analog_complication_slots);
+    }
+
+    @Test
+    public void slotIdsAndTypes() {
+        assertArrayEquals(new int[] {0, 100, 101}, mLayout.getComplicationIds());
+        assertSlot(mLayout.getSlots().get(0), 0, "BACKGROUND");
+        assertSlot(mLayout.getSlots().get(1), 100, "LEFT");
+        assertSlot(mLayout.getSlots().get(2), 101, "RIGHT");
+        assertArrayEquals(
+                new int[] {ComplicationData.TYPE_LARGE_IMAGE},
+                mLayout.findSlotById(0).getSupportedTypes());
+        assertArrayEquals(SIDE_TYPES, mLayout.findSlotByLocation("LEFT").getSupportedTypes());
+        assertArrayEquals(SIDE_TYPES, mLayout.findSlotByLocation("RIGHT").getSupportedTypes());
+        assertNull(mLayout.findSlotById(1));
+        assertNull(mLayout.findSlotByLocation("TOP"));
+    }
+
+    @Test
+    public void defaultProvidersFromStringResources() {
+        ComplicationLayout.Slot background = mLayout.findSlotById(0);
+        assertNull(background.getDefaultProvider());
+        assertEquals(ComplicationData.TYPE_EMPTY, background.getDefaultType());
+
+        ComplicationLayout.Slot left = mLayout.findSlotById(100);
+        assertEquals(WfConstants.STEP_PROVIDER, left.getDefaultProvider());
+        assertEquals(ComplicationData.TYPE_RANGED_VALUE, left.getDefaultType());
+
+        ComplicationLayout.Slot right = mLayout.findSlotById(101);
+        assertEquals(WfConstants.HEART_RATE_PROVIDER, right.getDefaultProvider());
+        assertEquals(ComplicationData.TYPE_RANGED_VALUE, right.getDefaultType());
+    }
+
+    @Test
+    public void boundsMatchOldArithmetic() {
+        // Sizes divisible by 8 give the same pixels as the old width / 4 integer arithmetic.
+        for (int size : new int[] {320, 360, 400, 480}) {
+            assertBounds(size, 0);
+        }
+    }
+
+    @Test
+    public void boundsAreRounded() {
+        // 0.125 * 454 = 56.75, 0.375 * 454 = 170.25, 0.625 * 454 = 283.75.
+        Rect bounds = new Rect();
+        mLayout.findSlotById(100).getBounds(454, 454, bounds);
+        assertEquals(new Rect(57, 170, 170, 284), bounds);
+        mLayout.findSlotById(101).getBounds(454, 454, bounds);
+        assertEquals(new Rect(284, 170, 397, 284), bounds);
+        mLayout.findSlotById(0).getBounds(454, 400, bounds);
+        assertEquals(new Rect(0, 0, 454, 400), bounds);
+
+        // The old arithmetic truncated at every step, so other even sizes may differ by a pixel.
+        for (int size = 300; size <= 500; size += 2) {
+            assertBounds(size, 1);
+        }
+    }
+
+    @Test
+    public void literalDefaultProvider() {
+        List<ComplicationLayout.Slot> slots =
+                parse(
+                        "<slot " + VALID_SLOT
+                                + "defaultProvider=\"com.example/.StepService\" "
+                                + "defaultType=\"short_text\"/>");
+        assertEquals(1, slots.size());
+        assertEquals(
+                new ComponentName("com.example", "com.example.StepService"),
+                slots.get(0).getDefaultProvider());
+        assertEquals(ComplicationData.TYPE_SHORT_TEXT, slots.get(0).getDefaultType());
+    }
+
+    @Test
+    public void stringResourceDefaultProvider() {
+        List<ComplicationLayout.Slot> slots =
+                parse(
+                        "<slot " + VALID_SLOT
+                                + "defaultProvider=\"@string/health_provider_heart_rate\" "
+                                + "defaultType=\"short_text\"/>");
+        assertEquals(WfConstants.HEART_RATE_PROVIDER, slots.get(0).getDefaultProvider());
+    }
+
+    @Test
+    public void invalidSlotsAreRejected() {
+        assertRejected("<slot " + VALID_SLOT.replace("id=\"1\" ", "") + "/>", "Missing id");
+        assertRejected(
+                "<slot " + VALID_SLOT.replace("top=\"0\" ", "") + "/>", "Missing top");
+        assertRejected(
+                "<slot " + VALID_SLOT.replace("short_text", "short_text|tiny_text") + "/>",
+                "Unknown complication type: tiny_text");
+        assertRejected(
+                "<slot " + VALID_SLOT + "defaultProvider=\"com.example/.Step\"/>",
+                "Missing defaultType");
+        assertRejected(
+                "<slot " + VALID_SLOT
+                        + "defaultProvider=\"StepService\" defaultType=\"short_text\"/>",
+                "Invalid defaultProvider: StepService");
+        assertRejected(
+                "<slot " + VALID_SLOT
+                        + "defaultProvider=\"com.example/.Step\" defaultType=\"text\"/>",
+                "Unknown complication type: text");
+    }
+
+    private static void assertSlot(ComplicationLayout.Slot slot, int id, String location) {
+        assertEquals(id, slot.getId());
+        assertEquals(location, slot.getLocation());
+    }
+
+    /**
+     * Compares the slots at a square surface of the given size with the bounds
+     * AnalogComplicationWatchFaceService used to compute from width / 4.
+     */
+    private void assertBounds(int size, int tolerance) {
+        int sizeOfComplication = size / 4;
+        int midpointOfScreen = size / 2;
+        int horizontalOffset = (midpointOfScreen - sizeOfComplication) / 2;
+        int verticalOffset = midpointOfScreen - (sizeOfComplication / 2);
+        Rect left =
+                new Rect(
+                        horizontalOffset,
+                        verticalOffset,
+                        horizontalOffset + sizeOfComplication,
+                        verticalOffset + sizeOfComplication);
+        Rect right =
+                new Rect(
+                        midpointOfScreen + horizontalOffset,
+                        verticalOffset,
+                        midpointOfScreen + horizontalOffset + sizeOfComplication,
+                        verticalOffset + sizeOfComplication);
+
+        Rect bounds = new Rect();
+        mLayout.findSlotById(0).getBounds(size, size, bounds);
+        assertEquals(new Rect(0, 0, size, size), bounds);
+        mLayout.findSlotById(100).getBounds(size, size, bounds);
+        assertNear(size, left, bounds, tolerance);
+        mLayout.findSlotById(101).getBounds(size, size, bounds);
+        assertNear(size, right, bounds, tolerance);
+    }
+
+    private static void assertNear(int size, Rect expected, Rect actual, int tolerance) {
+        String message = size + " px: expected " + expected + ", got " + actual;
+        assertTrue(message, Math.abs(expected.left - actual.left) <= tolerance);
+        assertTrue(message, Math.abs(expected.top - actual.top) <= tolerance);
+        assertTrue(message, Math.abs(expected.right - actual.right) <= tolerance);
+        assertTrue(message, Math.abs(expected.bottom - actual.bottom) <= tolerance);
+    }
+
+    private void assertRejected(String slot, String message) {
+        try {
+            parse(slot);
+            fail("Expected IllegalStateException for " + slot);
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    private List<ComplicationLayout.Slot> parse(String slots) {
+        return ComplicationLayout.parseSlots(
+                mContext, newParser("<complication-slots>" + slots + "</complication-slots>"));
+    }
+
+    /**
+     * Wraps a parser of plain XML text. Only compiled resources resolve references, so
+     * {@code @string/} attribute values are looked up by name here.
+     */
+    private XmlResourceParser newParser(String xml) {
+        XmlPullParser parser = Xml.newPullParser();
+        try {
+            parser.setInput(new StringReader(xml));
+        } catch (XmlPullParserException e) {
+            throw new AssertionError(e);
+        }
+        return (XmlResourceParser)
+                Proxy.newProxyInstance(
+                        getClass().getClassLoader(),
+                        new Class<?>[] {XmlResourceParser.class},
+                        (proxy, method, args) -> {
+                            switch (method.getName()) {
+                                case "close":
+                                    return null;
+                                case "getAttributeResourceValue":
+                                    String value =
+                                            parser.getAttributeValue(
+                                                    (String) args[0], (String) args[1]);
+                                    return value != null && value.startsWith("@string/")
+                                            ? mContext.getResources()
+                                                    .getIdentifier(
+                                                            value.substring(1),
+                                                            null,
+                                                            mContext.getPackageName())
+                                            : args[2];
+                                default:
+                                    try {
+                                        return XmlPullParser.class
+                                                .getMethod(
+                                                        method.getName(),
+                                                        method.getParameterTypes())
+                                                .invoke(parser, args);
+                                    } catch (InvocationTargetException e) {
+                                        throw e.getCause();
+                                    }
+                            }
+                        });
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks when {@link ComplicationRenderCache} renders again and when it reuses its bitmap. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ComplicationRenderCacheTest {
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    // 2021-03-14 07:00:00 UTC, a whole minute.
+    private static final long NOW = 1615705200000L;
+
+    private TimeZone mDefaultTimeZone;
+    private ComplicationDrawable mDrawable;
+    private ComplicationRenderCache mCache;
+    private Canvas mCanvas;
+    private int mInvalidateCount;
+
+    @Before
+    public void setUp() {
+        // Time format texts change on local minute boundaries.
+        mDefaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        mDrawable = new ComplicationDrawable(RuntimeEnvironment.getApplication());
+        mDrawable.setBounds(10, 20, 110, 120);
+        mCache = new ComplicationRenderCache(1, mDrawable, () -> mInvalidateCount++);
+        mCanvas = new Canvas(Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888));
+    }
+
+    @After
+    public void tearDown() {
+        mCache.release();
+        TimeZone.setDefault(mDefaultTimeZone);
+    }
+
+    @Test
+    public void reusesBitmapUntilSomethingChanges() {
+        mCache.setComplicationData(shortText("1"));
+        drawAt(NOW);
+        drawAt(NOW + SECOND);
+        drawAt(NOW + 2 * SECOND);
+        assertCounts(1, 2);
+    }
+
+    @Test
+    public void rendersNewData() {
+        mCache.setComplicationData(shortText("1"));
+        drawAt(NOW);
+        mCache.setComplicationData(shortText("2"));
+        drawAt(NOW + SECOND);
+        drawAt(NOW + 2 * SECOND);
+        assertCounts(2, 1);
+    }
+
+    @Test
+    public void rendersOnAmbientChangeOnly() {
+        mCache.setComplicationData(shortText("1"));
+        drawAt(NOW);
+        mCache.setInAmbientMode(false);
+        drawAt(NOW + SECOND);
+        assertCounts(1, 1);
+
+        mCache.setInAmbientMode(true);
+        drawAt(NOW + 2 * SECOND);
+        mCache.setInAmbientMode(true);
+        drawAt(NOW + 3 * SECOND);
+        assertCounts(2, 2);
+    }
+
+    @Test
+    public void rendersWhenActiveWindowStartsAndEnds() {
+        mCache.setComplicationData(
+                new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                        .setShortText(ComplicationText.plainText("1"))
+                        .setStartTime(NOW + 10 * SECOND)
+                        .setEndTime(NOW + 20 * SECOND)
+                        .build());
+        drawAt(NOW);
+        drawAt(NOW + 9 * SECOND);
+        assertCounts(1, 1);
+
+        drawAt(NOW + 10 * SECOND);
+        drawAt(NOW + 19 * SECOND);
+        assertCounts(2, 2);
+
+        drawAt(NOW + 20 * SECOND);
+        drawAt(NOW + 30 * SECOND);
+        assertCounts(3, 3);
+    }
+
+    @Test
+    public void rendersWhenTimeDependentTextChanges() {
+        mCache.setComplicationData(
+                new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                        .setShortText(
+                                new ComplicationText.TimeFormatBuilder().setFormat("HH:mm")
+                                        .build())
+                        .build());
+        drawAt(NOW + 10 * SECOND);
+        drawAt(NOW + 59 * SECOND);
+        assertCounts(1, 1);
+
+        drawAt(NOW + MINUTE);
+        drawAt(NOW + MINUTE + 30 * SECOND);
+        assertCounts(2, 2);
+    }
+
+    @Test
+    public void rendersWhenTimeGoesBackwards() {
+        mCache.setComplicationData(shortText("1"));
+        drawAt(NOW);
+        drawAt(NOW - SECOND);
+        assertCounts(2, 0);
+    }
+
+    @Test
+    public void rendersOnBoundsChange() {
+        mCache.setComplicationData(shortText("1"));
+        drawAt(NOW);
+        mDrawable.setBounds(10, 20, 90, 100);
+        drawAt(NOW + SECOND);
+        drawAt(NOW + 2 * SECOND);
+        assertCounts(2, 1);
+    }
+
+    @Test
+    public void rendersAfterDrawableInvalidatesItself() {
+        mCache.setComplicationData(shortText("1"));
+        drawAt(NOW);
+        int invalidateCount = mInvalidateCount;
+        mDrawable.invalidateSelf();
+        assertEquals(invalidateCount + 1, mInvalidateCount);
+        drawAt(NOW + SECOND);
+        assertCounts(2, 0);
+    }
+
+    private static ComplicationData shortText(String text) {
+        return new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                .setShortText(ComplicationText.plainText(text))
+                .build();
+    }
+
+    private void drawAt(long time) {
+        mCache.draw(mCanvas, time);
+    }
+
+    private void assertCounts(int renderCount, int reuseCount) {
+        assertEquals("render", renderCount, mCache.getRenderCount());
+        assertEquals("reuse", reuseCount, mCache.getReuseCount());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.wearable.watchface.util;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks the grid boundaries, stacking and tap fall-through of {@link ComplicationTapRouter}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ComplicationTapRouterTest {
+
+    private static final int NONE = ComplicationTapRouter.NO_TARGET;
+
+    private Context mContext;
+    private ComplicationTapRouter mRouter;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        mRouter = new ComplicationTapRouter();
+    }
+
+    @Test
+    public void boundsAlignedToCells() {
+        // 400 px in 8 cells: the slot covers exactly the cell from 50 to 99.
+        mRouter.setSurfaceSize(400, 400);
+        mRouter.add(1, drawable(50, 50, 100, 100, true));
+        assertEquals(1, mRouter.findTarget(50, 50));
+        assertEquals(1, mRouter.findTarget(99, 99));
+        assertEquals(NONE, mRouter.findTarget(49, 50));
+        assertEquals(NONE, mRouter.findTarget(100, 99));
+        assertEquals(NONE, mRouter.findTarget(99, 100));
+    }
+
+    @Test
+    public void boundsBetweenCells() {
+        // 454 px in 8 cells of 56.75 px: the slot edges fall inside cells.
+        mRouter.setSurfaceSize(454, 454);
+        mRouter.add(1, drawable(57, 57, 114, 114, true));
+        assertEquals(1, mRouter.findTarget(57, 57));
+        assertEquals(1, mRouter.findTarget(113, 113));
+        assertEquals(NONE, mRouter.findTarget(56, 56));
+        assertEquals(NONE, mRouter.findTarget(114, 114));
+    }
+
+    @Test
+    public void lastPixelRowAndColumn() {
+        mRouter.setSurfaceSize(454, 454);
+        mRouter.add(1, drawable(400, 400, 454, 454, true));
+        // Clipped to the surface.
+        mRouter.add(2, drawable(-20, 300, 40, 600, true));
+        assertEquals(1, mRouter.findTarget(453, 453));
+        assertEquals(1, mRouter.findTarget(453, 400));
+        assertEquals(2, mRouter.findTarget(0, 453));
+        assertEquals(2, mRouter.findTarget(39, 300));
+        assertEquals(NONE, mRouter.findTarget(454, 453));
+        assertEquals(NONE, mRouter.findTarget(453, 454));
+        assertEquals(NONE, mRouter.findTarget(-1, 400));
+    }
+
+    @Test
+    public void overlappingSlotsResolveToTopmost() {
+        mRouter.setSurfaceSize(400, 400);
+        mRouter.add(1, drawable(0, 0, 200, 200, true));
+        mRouter.add(2, drawable(100, 100, 300, 300, true));
+        assertEquals(1, mRouter.findTarget(50, 50));
+        assertEquals(2, mRouter.findTarget(150, 150));
+        assertEquals(2, mRouter.findTarget(250, 250));
+        assertEquals(1, mRouter.findTarget(199, 99));
+    }
+
+    @Test
+    public void manySlotsInOneCell() {
+        // More than the initial capacity of a cell's list.
+        mRouter.setSurfaceSize(400, 400);
+        for (int id = 0; id < 10; id++) {
+            mRouter.add(id, drawable(10 + id, 10, 40, 40, true));
+        }
+        assertEquals(9, mRouter.findTarget(20, 20));
+        assertEquals(0, mRouter.findTarget(10, 20));
+        assertEquals(4, mRouter.findTarget(14, 20));
+    }
+
+    @Test
+    public void tapFallsThroughToBackground() {
+        mRouter.setSurfaceSize(400, 400);
+        mRouter.add(0, drawable(0, 0, 400, 400, true));
+        mRouter.add(1, drawable(100, 100, 200, 200, false));
+        mRouter.add(2, drawable(250, 250, 350, 350, true));
+        // Complication 1 has no tap action, so the background handles its taps.
+        assertEquals(1, mRouter.findTarget(150, 150));
+        assertEquals(0, mRouter.dispatchTap(150, 150));
+        assertEquals(2, mRouter.dispatchTap(300, 300));
+        assertEquals(0, mRouter.dispatchTap(10, 10));
+        assertEquals(NONE, mRouter.dispatchTap(400, 10));
+    }
+
+    @Test
+    public void noTargetWithoutTapAction() {
+        mRouter.setSurfaceSize(400, 400);
+        mRouter.add(1, drawable(100, 100, 200, 200, false));
+        assertEquals(NONE, mRouter.dispatchTap(150, 150));
+    }
+
+    @Test
+    public void setSurfaceSizeClearsTargets() {
+        mRouter.setSurfaceSize(400, 400);
+        mRouter.add(1, drawable(0, 0, 100, 100, true));
+        mRouter.setSurfaceSize(400, 400);
+        assertEquals(NONE, mRouter.findTarget(50, 50));
+        mRouter.add(2, drawable(0, 0, 100, 100, true));
+        assertEquals(2, mRouter.findTarget(50, 50));
+    }
+
+    @Test
+    public void slotOutsideSurfaceIsIgnored() {
+        mRouter.setSurfaceSize(400, 400);
+        mRouter.add(1, drawable(400, 0, 500, 100, true));
+        mRouter.add(2, drawable(0, 0, 0, 100, true));
+        assertEquals(NONE, mRouter.findTarget(399, 50));
+        assertEquals(NONE, mRouter.findTarget(0, 50));
+    }
+
+    private ComplicationDrawable drawable(
+            int left, int top, int right, int bottom, boolean withTapAction) {
+        ComplicationData.Builder builder =
+                new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                        .setShortText(ComplicationText.plainText("1"));
+        if (withTapAction) {
+            builder.setTapAction(
+                    PendingIntent.getBroadcast(mContext, 0, new Intent("tap"), 0));
+        }
+        ComplicationDrawable drawable = new ComplicationDrawable(mContext);
+        drawable.setComplicationData(builder.build());
+        drawable.setBounds(left, top, right, bottom);
+        return drawable;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.android.wearable.watchface.build;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the face image pack read by AssetPack at runtime.
+ *
+ * <p>The writer only deals with decoded pixels, so it runs both in the packFaceAssets task, which
+ * decodes and scales the PNGs, and in the JVM unit tests, which check that AssetPack reads back
+ * what was written. The format, big-endian:
+ * <pre>
+ * "WFPK" | int version | int count
+ * count index entries: short nameLength | name (UTF-8) | int width | int height | int offset
+ * pixels: width * height * 4 bytes per image, premultiplied R G B A, offsets 4-byte aligned
+ * </pre>
+ */
+public final class FacePackWriter {
+    public static final int MAGIC = 0x5746504B; // "WFPK"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /** One image to pack, as non-premultiplied ARGB pixels in row order. */
+    public static final class Image {
+        final byte[] mName;
+        final int mWidth;
+        final int mHeight;
+        final int[] mArgb;
+
+        public Image(String name, int width, int height, int[] argb) {
+            if (width <= 0 || height <= 0 || argb.length != width * height) {
+                throw new IllegalArgumentException(
+                        "Bad size for " + name + ": " + width + "x" + height);
+            }
+            mName = name.getBytes(StandardCharsets.UTF_8);
+            mWidth = width;
+            mHeight = height;
+            mArgb = argb;
+        }
+    }
+
+    private FacePackWriter() {
+    }
+
+    public static void write(List<Image> images, File outFile) throws IOException {
+        File parent = outFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(outFile)) {
+            write(images, out);
+        }
+    }
+
+    public static void write(List<Image> images, OutputStream stream) throws IOException {
+        int headerSize = HEADER_SIZE;
+        for (Image image : images) {
+            headerSize += 2 + image.mName.length + 12;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(images.size());
+        int offset = align(headerSize);
+        for (Image image : images) {
+            out.writeShort(image.mName.length);
+            out.write(image.mName);
+            out.writeInt(image.mWidth);
+            out.writeInt(image.mHeight);
+            out.writeInt(offset);
+            offset = align(offset + image.mWidth * image.mHeight * BYTES_PER_PIXEL);
+        }
+        int written = headerSize;
+        for (Image image : images) {
+            written = pad(out, written);
+            written += writePixels(out, image);
+        }
+        out.flush();
+    }
+
+    /** Writes premultiplied RGBA bytes, the in-memory layout of an ARGB_8888 Bitmap. */
+    private static int writePixels(DataOutputStream out, Image image) throws IOException {
+        int[] argb = image.mArgb;
+        byte[] rgba = new byte[argb.length * BYTES_PER_PIXEL];
+        for (int i = 0; i < argb.length; i++) {
+            int pixel = argb[i];
+            int a = pixel >>> 24;
+            rgba[i * 4] = (byte) premultiply((pixel >> 16) & 0xff, a);
+            rgba[i * 4 + 1] = (byte) premultiply((pixel >> 8) & 0xff, a);
+            rgba[i * 4 + 2] = (byte) premultiply(pixel & 0xff, a);
+            rgba[i * 4 + 3] = (byte) a;
+        }
+        out.write(rgba);
+        return rgba.length;
+    }
+
+    /** Rounds channel * alpha / 255 to the nearest integer. */
+    public static int premultiply(int channel, int alpha) {
+        return (channel * alpha + 127) / 255;
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    private static int pad(DataOutputStream out, int written) throws IOException {
+        int aligned = align(written);
+        for (int i = written; i < aligned; i++) {
+            out.writeByte(0);
+        }
+        return aligned;
+    }
+}